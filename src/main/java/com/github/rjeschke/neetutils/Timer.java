@@ -15,72 +15,68 @@
  */
 package com.github.rjeschke.neetutils;
 
+import com.github.rjeschke.neetutils.concurrent.Scheduler;
+
 /**
+ * Periodic, drift-free timer. Timers are multiplexed onto the threads of a
+ * {@link Scheduler} (the shared one by default) instead of using a thread per
+ * timer.
  *
  * @author René Jeschke (rene_jeschke@yahoo.de)
  */
-public class Timer implements Runnable
+public class Timer
 {
-    private final long           delay;
-    private final Timer.Callback callback;
-    private volatile boolean     running = true;
+    private final Scheduler.Task task;
 
-    private Timer(final double freq, final Timer.Callback callback)
+    private Timer(final Scheduler.Task task)
     {
-        this.delay = (long)(1000000000.0 / freq);
-        this.callback = callback;
+        this.task = task;
     }
 
-    // TODO here's stuff missing
+    /**
+     * Starts a timer on the shared scheduler. The first callback happens
+     * immediately.
+     *
+     * @param freq
+     *            Frequency in Hz.
+     * @param callback
+     *            The callback.
+     * @return The timer.
+     */
     public static Timer start(final double freq, final Timer.Callback callback)
     {
-        final Timer t = new Timer(freq, callback);
-        final Thread th = new Thread(t);
-        th.setDaemon(true);
-        th.start();
-        return t;
+        return start(Scheduler.shared(), freq, callback);
     }
 
-    public void stop()
+    /**
+     * Starts a timer on the given scheduler. The first callback happens
+     * immediately.
+     *
+     * @param scheduler
+     *            The scheduler.
+     * @param freq
+     *            Frequency in Hz.
+     * @param callback
+     *            The callback.
+     * @return The timer.
+     */
+    public static Timer start(final Scheduler scheduler, final double freq, final Timer.Callback callback)
     {
-        this.running = false;
+        return new Timer(scheduler.scheduleAtFrequency(callback, freq));
     }
 
-    public static interface Callback
+    public void stop()
     {
-        public void timerCallback();
+        this.task.cancel();
     }
 
-    @Override
-    public void run()
+    public boolean isRunning()
     {
-        final Object sleeper = new Object();
-        long t0;
-        long toWait = 0;
-        t0 = System.nanoTime();
-        try
-        {
-            while (this.running)
-            {
-                this.callback.timerCallback();
-                final long t1 = System.nanoTime() - t0;
-                synchronized (sleeper)
-                {
-                    toWait += this.delay - t1;
-                    final long millis = toWait / 1000000L;
-                    if (millis >= 0)
-                    {
-                        sleeper.wait(millis);
-                        toWait -= millis * 1000000L;
-                    }
-                }
-                t0 += this.delay;
-            }
-        }
-        catch (final InterruptedException e)
-        {
-            // exit
-        }
+        return !this.task.isCancelled();
     }
 
+    public static interface Callback
+    {
+        public void timerCallback();
+    }
 }
@@ -28,6 +28,9 @@ import java.util.RandomAccess;
 import java.util.TreeMap;
 import java.util.Vector;
 
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeReducer;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
 import com.github.rjeschke.neetutils.fn.FnCombine;
 import com.github.rjeschke.neetutils.fn.FnEquals;
 import com.github.rjeschke.neetutils.fn.FnFoldStep;
@@ -682,6 +685,240 @@ public final class Colls
         return b;
     }
 
+    private final static <A> List<? extends A> randomAccess(final List<? extends A> coll)
+    {
+        return coll instanceof RandomAccess ? coll : new ArrayList<A>(coll);
+    }
+
+    /**
+     * Parallel version of {@link #map(Collection, FnMapping)} using the shared
+     * fork-join pool and the default grain size.
+     *
+     * @param coll
+     *            The input list.
+     * @param fn
+     *            The (thread-safe) mapping.
+     * @return The mapped list, in input order.
+     * @see Parallel
+     */
+    public final static <A, B> List<B> parMap(final List<? extends A> coll, final FnMapping<? super A, B> fn)
+    {
+        return parMap(coll, fn, 0);
+    }
+
+    /**
+     * Parallel version of {@link #map(Collection, FnMapping)}.
+     *
+     * @param coll
+     *            The input list.
+     * @param fn
+     *            The (thread-safe) mapping.
+     * @param grain
+     *            Maximum number of elements per task, <code>0</code> for
+     *            default.
+     * @return The mapped list, in input order.
+     * @see Parallel
+     */
+    @SuppressWarnings("unchecked")
+    public final static <A, B> List<B> parMap(final List<? extends A> coll, final FnMapping<? super A, B> fn, final int grain)
+    {
+        final List<? extends A> in = randomAccess(coll);
+        final Object[] out = new Object[in.size()];
+        Parallel.forRange(0, out.length, grain, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    out[i] = fn.applyMapping(in.get(i));
+                }
+            }
+        });
+        return list((B[])out);
+    }
+
+    /**
+     * Parallel version of {@link #filter(Iterable, FnPredicate)} using the
+     * default grain size.
+     *
+     * @param coll
+     *            The input list.
+     * @param fn
+     *            The (thread-safe) predicate.
+     * @return The filtered list, in input order.
+     */
+    public final static <A> List<A> parFilter(final List<? extends A> coll, final FnPredicate<? super A> fn)
+    {
+        return parFilter(coll, fn, 0);
+    }
+
+    /**
+     * Parallel version of {@link #filter(Iterable, FnPredicate)}.
+     *
+     * @param coll
+     *            The input list.
+     * @param fn
+     *            The (thread-safe) predicate.
+     * @param grain
+     *            Maximum number of elements per task, <code>0</code> for
+     *            default.
+     * @return The filtered list, in input order.
+     */
+    public final static <A> List<A> parFilter(final List<? extends A> coll, final FnPredicate<? super A> fn, final int grain)
+    {
+        final List<? extends A> in = randomAccess(coll);
+        final boolean[] keep = new boolean[in.size()];
+        final int count = Parallel.reduceRange(0, keep.length, grain, new RangeReducer<Integer>()
+        {
+            @Override
+            public Integer reduce(final int from, final int to)
+            {
+                int n = 0;
+                for (int i = from; i < to; i++)
+                {
+                    if (keep[i] = fn.applyPredicate(in.get(i))) n++;
+                }
+                return n;
+            }
+
+            @Override
+            public Integer combine(final Integer lower, final Integer upper)
+            {
+                return lower + upper;
+            }
+        });
+        final List<A> l = list(count);
+        for (int i = 0; i < keep.length; i++)
+        {
+            if (keep[i]) l.add(in.get(i));
+        }
+        return l;
+    }
+
+    /**
+     * Parallel version of
+     * {@link #mapReduce(Iterable, FnMapping, FnFoldStep, Object)} using the
+     * default grain size.
+     *
+     * @param coll
+     *            The input list.
+     * @param fnMap
+     *            The (thread-safe) mapping.
+     * @param fnReduce
+     *            Fold step used inside a task.
+     * @param fnCombine
+     *            Associative combiner for partial results (lower, upper).
+     * @param initial
+     *            Initial value for each task, must be the identity of
+     *            <code>fnCombine</code>.
+     * @return The result.
+     */
+    public final static <A, B, C> C parMapReduce(final List<? extends A> coll, final FnMapping<? super A, B> fnMap, final FnFoldStep<? super B, C> fnReduce,
+            final FnCombine<C, C, C> fnCombine, final C initial)
+    {
+        return parFilterMapReduce(coll, null, fnMap, fnReduce, fnCombine, initial, 0);
+    }
+
+    /**
+     * Parallel version of
+     * {@link #mapReduce(Iterable, FnMapping, FnFoldStep, Object)}.
+     *
+     * @see #parMapReduce(List, FnMapping, FnFoldStep, FnCombine, Object)
+     */
+    public final static <A, B, C> C parMapReduce(final List<? extends A> coll, final FnMapping<? super A, B> fnMap, final FnFoldStep<? super B, C> fnReduce,
+            final FnCombine<C, C, C> fnCombine, final C initial, final int grain)
+    {
+        return parFilterMapReduce(coll, null, fnMap, fnReduce, fnCombine, initial, grain);
+    }
+
+    /**
+     * Parallel version of
+     * {@link #filterMapReduce(Iterable, FnPredicate, FnMapping, FnFoldStep, Object)}
+     * using the default grain size.
+     *
+     * @see #parMapReduce(List, FnMapping, FnFoldStep, FnCombine, Object)
+     */
+    public final static <A, B, C> C parFilterMapReduce(final List<? extends A> coll, final FnPredicate<? super A> fnPredicate, final FnMapping<? super A, B> fnMap,
+            final FnFoldStep<? super B, C> fnReduce, final FnCombine<C, C, C> fnCombine, final C initial)
+    {
+        return parFilterMapReduce(coll, fnPredicate, fnMap, fnReduce, fnCombine, initial, 0);
+    }
+
+    /**
+     * Parallel version of
+     * {@link #filterMapReduce(Iterable, FnPredicate, FnMapping, FnFoldStep, Object)}
+     * .
+     *
+     * @see #parMapReduce(List, FnMapping, FnFoldStep, FnCombine, Object)
+     */
+    public final static <A, B, C> C parFilterMapReduce(final List<? extends A> coll, final FnPredicate<? super A> fnPredicate, final FnMapping<? super A, B> fnMap,
+            final FnFoldStep<? super B, C> fnReduce, final FnCombine<C, C, C> fnCombine, final C initial, final int grain)
+    {
+        final List<? extends A> in = randomAccess(coll);
+        return Parallel.reduceRange(0, in.size(), grain, new RangeReducer<C>()
+        {
+            @Override
+            public C reduce(final int from, final int to)
+            {
+                C c = initial;
+                for (int i = from; i < to; i++)
+                {
+                    final A a = in.get(i);
+                    if (fnPredicate == null || fnPredicate.applyPredicate(a)) c = fnReduce.applyFoldStep(fnMap.applyMapping(a), c);
+                }
+                return c;
+            }
+
+            @Override
+            public C combine(final C lower, final C upper)
+            {
+                return fnCombine.applyCombine(lower, upper);
+            }
+        });
+    }
+
+    /**
+     * Parallel version of {@link #reduce(List, FnFoldStep, Object)} using the
+     * default grain size.
+     *
+     * @see #parMapReduce(List, FnMapping, FnFoldStep, FnCombine, Object)
+     */
+    public final static <A, B> B parReduce(final List<? extends A> coll, final FnFoldStep<? super A, B> fn, final FnCombine<B, B, B> fnCombine, final B initial)
+    {
+        return parReduce(coll, fn, fnCombine, initial, 0);
+    }
+
+    /**
+     * Parallel version of {@link #reduce(List, FnFoldStep, Object)}.
+     *
+     * @see #parMapReduce(List, FnMapping, FnFoldStep, FnCombine, Object)
+     */
+    public final static <A, B> B parReduce(final List<? extends A> coll, final FnFoldStep<? super A, B> fn, final FnCombine<B, B, B> fnCombine, final B initial,
+            final int grain)
+    {
+        final List<? extends A> in = randomAccess(coll);
+        return Parallel.reduceRange(0, in.size(), grain, new RangeReducer<B>()
+        {
+            @Override
+            public B reduce(final int from, final int to)
+            {
+                B b = initial;
+                for (int i = from; i < to; i++)
+                {
+                    b = fn.applyFoldStep(in.get(i), b);
+                }
+                return b;
+            }
+
+            @Override
+            public B combine(final B lower, final B upper)
+            {
+                return fnCombine.applyCombine(lower, upper);
+            }
+        });
+    }
+
     /**
      * Zips the two given collections into a list of tuples.
      *
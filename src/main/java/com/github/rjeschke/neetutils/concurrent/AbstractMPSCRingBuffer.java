@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Index handling for multi-producer/single-consumer ring buffers of
+ * primitives.
+ *
+ * <p>
+ * Producers claim slots with a CAS on the (padded) tail index. As primitive
+ * slots have no 'empty' value, each slot has a sequence number which the
+ * producer sets to <code>position + 1</code> (using an ordered store) after
+ * writing the element; the consumer only reads slots whose sequence number
+ * matches.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+abstract class AbstractMPSCRingBuffer
+{
+    private final static int      HEAD    = 8;
+    private final static int      TAIL    = 16;
+    private final AtomicLongArray indices = new AtomicLongArray(25);
+    private final AtomicLongArray sequences;
+    private long                  head    = 0;
+    final int                     capacity;
+    final int                     mask;
+    final WaitStrategy            waitStrategy;
+
+    AbstractMPSCRingBuffer(final int capacity, final WaitStrategy waitStrategy)
+    {
+        if (capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int c = 1;
+        while (c < capacity)
+            c <<= 1;
+        this.capacity = c;
+        this.mask = c - 1;
+        this.waitStrategy = waitStrategy;
+        this.sequences = new AtomicLongArray(c);
+    }
+
+    /**
+     * @return The capacity (a power of two).
+     */
+    public final int capacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * @return The (approximate) number of elements in this buffer.
+     */
+    public final int size()
+    {
+        final long h = this.indices.get(HEAD);
+        return (int)Math.max(0, Math.min(this.capacity, this.indices.get(TAIL) - h));
+    }
+
+    public final boolean isEmpty()
+    {
+        return this.indices.get(TAIL) == this.indices.get(HEAD);
+    }
+
+    /** Producer: current tail position. */
+    final long tail()
+    {
+        return this.indices.get(TAIL);
+    }
+
+    /** Producer: returns the number of free slots at <code>tail</code>, up to <code>n</code>. */
+    final int free(final long tail, final int n)
+    {
+        return (int)Math.max(0, Math.min(n, this.capacity - (tail - this.indices.get(HEAD))));
+    }
+
+    /** Producer: tries to claim <code>n</code> slots starting at <code>tail</code>. */
+    final boolean claim(final long tail, final int n)
+    {
+        return this.indices.compareAndSet(TAIL, tail, tail + n);
+    }
+
+    /** Producer: publishes the written slot at <code>position</code>. */
+    final void publish(final long position)
+    {
+        this.sequences.lazySet((int)position & this.mask, position + 1);
+    }
+
+    /**
+     * Consumer: returns the number of consecutive published elements, up to
+     * <code>n</code>.
+     */
+    final int available(final int n)
+    {
+        int avail = 0;
+        while (avail < n && this.sequences.get((int)(this.head + avail) & this.mask) == this.head + avail + 1)
+            avail++;
+        return avail;
+    }
+
+    /** Consumer: index of the next element. */
+    final int headIndex()
+    {
+        return (int)this.head & this.mask;
+    }
+
+    /** Consumer: releases <code>n</code> consumed slots. */
+    final void release(final int n)
+    {
+        this.head += n;
+        this.indices.lazySet(HEAD, this.head);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Index handling for single-producer/single-consumer ring buffers.
+ *
+ * <p>
+ * Head and tail live 64 bytes apart in an AtomicLongArray and are published
+ * using ordered stores (<code>lazySet</code>). Each side keeps a cached copy of
+ * the opposite index (in a separate padded array) and only rereads the shared
+ * one when the cached value says the buffer is full/empty.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+abstract class AbstractSPSCRingBuffer
+{
+    private final static int      HEAD       = 8;
+    private final static int      TAIL       = 16;
+    private final static int      P_TAIL     = 8;
+    private final static int      P_HEAD     = 9;
+    private final static int      C_HEAD     = 24;
+    private final static int      C_TAIL     = 25;
+    private final AtomicLongArray indices    = new AtomicLongArray(25);
+    private final long[]          local      = new long[34];
+    final int                     capacity;
+    final int                     mask;
+    final WaitStrategy            waitStrategy;
+
+    AbstractSPSCRingBuffer(final int capacity, final WaitStrategy waitStrategy)
+    {
+        if (capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int c = 1;
+        while (c < capacity)
+            c <<= 1;
+        this.capacity = c;
+        this.mask = c - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @return The capacity (a power of two).
+     */
+    public final int capacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * @return The (approximate) number of elements in this buffer.
+     */
+    public final int size()
+    {
+        final long head = this.indices.get(HEAD);
+        return (int)Math.max(0, Math.min(this.capacity, this.indices.get(TAIL) - head));
+    }
+
+    public final boolean isEmpty()
+    {
+        return this.indices.get(TAIL) == this.indices.get(HEAD);
+    }
+
+    /** Producer: returns the number of free slots, up to <code>n</code>. */
+    final int free(final int n)
+    {
+        final long tail = this.local[P_TAIL];
+        long free = this.capacity - (tail - this.local[P_HEAD]);
+        if (free < n)
+        {
+            this.local[P_HEAD] = this.indices.get(HEAD);
+            free = this.capacity - (tail - this.local[P_HEAD]);
+        }
+        return (int)Math.min(free, n);
+    }
+
+    /** Producer: index of the next free slot. */
+    final int tailIndex()
+    {
+        return (int)this.local[P_TAIL] & this.mask;
+    }
+
+    /** Producer: publishes <code>n</code> written slots. */
+    final void publish(final int n)
+    {
+        final long tail = this.local[P_TAIL] + n;
+        this.local[P_TAIL] = tail;
+        this.indices.lazySet(TAIL, tail);
+    }
+
+    /** Consumer: returns the number of available elements, up to <code>n</code>. */
+    final int available(final int n)
+    {
+        final long head = this.local[C_HEAD];
+        long avail = this.local[C_TAIL] - head;
+        if (avail < n)
+        {
+            this.local[C_TAIL] = this.indices.get(TAIL);
+            avail = this.local[C_TAIL] - head;
+        }
+        return (int)Math.min(avail, n);
+    }
+
+    /** Consumer: index of the next element. */
+    final int headIndex()
+    {
+        return (int)this.local[C_HEAD] & this.mask;
+    }
+
+    /** Consumer: releases <code>n</code> consumed slots. */
+    final void release(final int n)
+    {
+        final long head = this.local[C_HEAD] + n;
+        this.local[C_HEAD] = head;
+        this.indices.lazySet(HEAD, head);
+    }
+}
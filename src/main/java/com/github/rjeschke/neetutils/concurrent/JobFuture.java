@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.github.rjeschke.neetutils.WrappedCheckedException;
+
+/**
+ * Lightweight completable Future.
+ *
+ * <p>
+ * A JobFuture either wraps a job (submitted via
+ * {@link ThreadPool#submit(Callable)}) or gets completed manually using
+ * {@link #complete(Object)} and {@link #fail(Throwable)}. Completion is a
+ * single CAS plus an uncontended monitor, callbacks get invoked on the
+ * completing thread, so stages can be chained without additional threads.
+ * </p>
+ *
+ * <p>
+ * Running jobs are never interrupted, {@link #cancel(boolean)} only marks the
+ * future as cancelled.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <T>
+ */
+public class JobFuture<T> implements RunnableFuture<T>
+{
+    private final static int                                  PENDING    = 0;
+    private final static int                                  RUNNING    = 1;
+    private final static int                                  COMPLETING = 2;
+    private final static int                                  DONE       = 3;
+    private final static int                                  FAILED     = 4;
+    private final static int                                  CANCELLED  = 5;
+
+    @SuppressWarnings("rawtypes")
+    private final static AtomicIntegerFieldUpdater<JobFuture> STATE      = AtomicIntegerFieldUpdater.newUpdater(JobFuture.class, "state");
+
+    private volatile int                                      state      = PENDING;
+    private Object                                            task;
+    private Object                                            result;
+    private Listener<T>                                       listeners  = null;
+
+    /**
+     * Constructor for a manually completed future.
+     */
+    public JobFuture()
+    {
+        this.task = null;
+    }
+
+    JobFuture(final Callable<T> task)
+    {
+        this.task = task;
+    }
+
+    JobFuture(final Runnable task)
+    {
+        this.task = task;
+    }
+
+    /**
+     * Creates an already completed future.
+     *
+     * @param value
+     *            The result.
+     * @return The future.
+     */
+    public static <T> JobFuture<T> completed(final T value)
+    {
+        final JobFuture<T> f = new JobFuture<>();
+        f.complete(value);
+        return f;
+    }
+
+    /**
+     * Creates a future which completes when all given futures have completed.
+     * The resulting list holds the results in the order of the given futures.
+     * If any of the futures fails or gets cancelled, the returned future
+     * fails/gets cancelled as well.
+     *
+     * @param futures
+     *            The futures to wait for.
+     * @return The fan-in future.
+     */
+    public static <T> JobFuture<List<T>> all(final List<JobFuture<T>> futures)
+    {
+        final JobFuture<List<T>> ret = new JobFuture<>();
+        final int count = futures.size();
+        if (count == 0)
+        {
+            ret.complete(new ArrayList<T>(0));
+            return ret;
+        }
+
+        final AtomicInteger pending = new AtomicInteger(count);
+        final JobCallback<T> callback = new JobCallback<T>()
+        {
+            @Override
+            public void jobCallback(final JobFuture<T> future)
+            {
+                if (future.state != DONE)
+                {
+                    ret.completeFrom(future);
+                }
+                else if (pending.decrementAndGet() == 0)
+                {
+                    final List<T> results = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++)
+                        results.add(futures.get(i).value());
+                    ret.complete(results);
+                }
+            }
+        };
+
+        for (int i = 0; i < count; i++)
+            futures.get(i).addCallback(callback);
+
+        return ret;
+    }
+
+    @Override
+    public void run()
+    {
+        if (this.state != PENDING || !STATE.compareAndSet(this, PENDING, RUNNING)) return;
+
+        final T value;
+        try
+        {
+            value = this.call();
+        }
+        catch (final Throwable t)
+        {
+            this.finish(FAILED, t);
+            return;
+        }
+        this.finish(DONE, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T call() throws Exception
+    {
+        if (this.task instanceof Callable)
+            return ((Callable<T>)this.task).call();
+        if (this.task != null)
+            ((Runnable)this.task).run();
+        return null;
+    }
+
+    /**
+     * Completes this future with the given value.
+     *
+     * @param value
+     *            The result.
+     * @return {@code true} if this call completed the future.
+     */
+    public boolean complete(final T value)
+    {
+        return this.finish(DONE, value);
+    }
+
+    /**
+     * Completes this future exceptionally.
+     *
+     * @param t
+     *            The cause.
+     * @return {@code true} if this call completed the future.
+     */
+    public boolean fail(final Throwable t)
+    {
+        if (t == null) throw new NullPointerException("A null Throwable is not permitted");
+        return this.finish(FAILED, t);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        return this.finish(CANCELLED, null);
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return this.state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return this.state > COMPLETING;
+    }
+
+    /**
+     * @return {@code true} if the job threw an exception.
+     */
+    public boolean isFailed()
+    {
+        return this.state == FAILED;
+    }
+
+    /**
+     * @return The Throwable the job failed with or {@code null}.
+     */
+    public Throwable getThrowable()
+    {
+        return this.state == FAILED ? (Throwable)this.result : null;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException
+    {
+        if (this.state <= COMPLETING)
+        {
+            synchronized (this)
+            {
+                while (this.state <= COMPLETING)
+                    this.wait();
+            }
+        }
+        return this.report();
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (this.state <= COMPLETING)
+        {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this)
+            {
+                while (this.state <= COMPLETING)
+                {
+                    final long left = deadline - System.nanoTime();
+                    if (left <= 0) throw new TimeoutException();
+                    this.wait(left / 1000000L, (int)(left % 1000000L));
+                }
+            }
+        }
+        return this.report();
+    }
+
+    /**
+     * Uninterruptibly waits for completion and returns the result. Unchecked
+     * exceptions thrown by the job are rethrown, checked exceptions get
+     * wrapped into a {@link WrappedCheckedException}, any other Throwable
+     * into a RuntimeException.
+     *
+     * @return The result.
+     * @throws CancellationException
+     *             if this future was cancelled.
+     */
+    public T join()
+    {
+        boolean interrupted = false;
+        if (this.state <= COMPLETING)
+        {
+            synchronized (this)
+            {
+                while (this.state <= COMPLETING)
+                {
+                    try
+                    {
+                        this.wait();
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        switch (this.state)
+        {
+        case FAILED:
+            final Throwable t = (Throwable)this.result;
+            if (t instanceof RuntimeException) throw (RuntimeException)t;
+            if (t instanceof Error) throw (Error)t;
+            if (t instanceof Exception) throw new WrappedCheckedException((Exception)t);
+            throw new RuntimeException(t);
+        case CANCELLED:
+            throw new CancellationException();
+        default:
+            return this.value();
+        }
+    }
+
+    /**
+     * Adds a completion callback. If this future is already completed the
+     * callback gets invoked immediately on the calling thread.
+     *
+     * @param callback
+     *            The callback.
+     * @return this
+     */
+    public JobFuture<T> addCallback(final JobCallback<T> callback)
+    {
+        if (callback == null) throw new NullPointerException("A null JobCallback is not permitted");
+
+        synchronized (this)
+        {
+            if (this.state <= COMPLETING)
+            {
+                this.listeners = new Listener<>(callback, this.listeners);
+                return this;
+            }
+        }
+        this.invoke(callback);
+        return this;
+    }
+
+    /**
+     * Chains a mapping stage which gets executed on the thread completing this
+     * future. Failures and cancellation are propagated.
+     *
+     * @param worker
+     *            The mapping.
+     * @return A future for the mapped result.
+     */
+    public <B> JobFuture<B> then(final MapWorker<? super T, B> worker)
+    {
+        return this.then(null, worker);
+    }
+
+    /**
+     * Chains a mapping stage which gets enqueued into the given pool once this
+     * future completes successfully. Failures and cancellation are propagated
+     * without touching the pool.
+     *
+     * @param pool
+     *            The pool to run the mapping on, or {@code null} to run it on
+     *            the completing thread.
+     * @param worker
+     *            The mapping.
+     * @return A future for the mapped result.
+     */
+    public <B> JobFuture<B> then(final ThreadPool pool, final MapWorker<? super T, B> worker)
+    {
+        if (worker == null) throw new NullPointerException("A null MapWorker is not permitted");
+
+        final JobFuture<B> next = new JobFuture<>();
+        this.addCallback(new JobCallback<T>()
+        {
+            @Override
+            public void jobCallback(final JobFuture<T> future)
+            {
+                if (future.state != DONE)
+                {
+                    next.completeFrom(future);
+                    return;
+                }
+                final Runnable stage = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        final B b;
+                        try
+                        {
+                            b = worker.run(future.value());
+                        }
+                        catch (final Throwable t)
+                        {
+                            next.fail(t);
+                            return;
+                        }
+                        next.complete(b);
+                    }
+                };
+                if (pool != null)
+                    pool.enqueue(stage);
+                else
+                    stage.run();
+            }
+        });
+        return next;
+    }
+
+    @SuppressWarnings("unchecked")
+    final T value()
+    {
+        return (T)this.result;
+    }
+
+    final void completeFrom(final JobFuture<?> other)
+    {
+        if (other.state == FAILED)
+            this.finish(FAILED, other.result);
+        else
+            this.finish(CANCELLED, null);
+    }
+
+    private T report() throws ExecutionException
+    {
+        switch (this.state)
+        {
+        case FAILED:
+            throw new ExecutionException((Throwable)this.result);
+        case CANCELLED:
+            throw new CancellationException();
+        default:
+            return this.value();
+        }
+    }
+
+    private boolean finish(final int newState, final Object value)
+    {
+        for (;;)
+        {
+            final int s = this.state;
+            if (s >= COMPLETING) return false;
+            if (STATE.compareAndSet(this, s, COMPLETING)) break;
+        }
+
+        this.result = value;
+        this.task = null;
+
+        Listener<T> l;
+        synchronized (this)
+        {
+            this.state = newState;
+            l = this.listeners;
+            this.listeners = null;
+            this.notifyAll();
+        }
+
+        // Listeners are stored in reverse order
+        Listener<T> r = null;
+        while (l != null)
+        {
+            final Listener<T> n = l.next;
+            l.next = r;
+            r = l;
+            l = n;
+        }
+        for (; r != null; r = r.next)
+            this.invoke(r.callback);
+
+        return true;
+    }
+
+    private void invoke(final JobCallback<T> callback)
+    {
+        try
+        {
+            callback.jobCallback(this);
+        }
+        catch (final Throwable t)
+        {
+            t.printStackTrace();
+        }
+    }
+
+    private final static class Listener<T>
+    {
+        final JobCallback<T> callback;
+        Listener<T>          next;
+
+        public Listener(final JobCallback<T> callback, final Listener<T> next)
+        {
+            this.callback = callback;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,695 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.rjeschke.neetutils.fn.FnMapping;
+
+/**
+ * Concurrent, size or weight bounded LRU cache with single-flight loading.
+ *
+ * <p>
+ * The cache is split into lock striped segments, each one holding its own
+ * LRU list and an equal share of the maximum weight, so eviction is only LRU
+ * per segment. Concurrent loads of the same key are coalesced: only one thread
+ * runs the loader, all other threads wait for its result. <code>null</code>
+ * values are never cached. Entries may optionally expire a fixed time after
+ * they were written.
+ * </p>
+ *
+ * <pre>
+ * final LruCache&lt;String, Image&gt; cache = LruCache.&lt;String, Image&gt; builder().maximumSize(1000).expireAfterWrite(10, TimeUnit.MINUTES)
+ *         .build();
+ * final Image img = cache.get(name, loader);
+ * </pre>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <K>
+ *            Key type.
+ * @param <V>
+ *            Value type.
+ * @see com.github.rjeschke.neetutils.fn.Fns#memoize(FnMapping, LruCache)
+ */
+public final class LruCache<K, V>
+{
+    private final Segment<K, V>[]                   segments;
+    private final int                               shift;
+    private final Weigher<? super K, ? super V>     weigher;
+    private final long                              expireNanos;
+    private final FnMapping<? super K, ? extends V> loader;
+    final StripedCounter                            hits         = new StripedCounter();
+    final StripedCounter                            misses       = new StripedCounter();
+    final StripedCounter                            loadFailures = new StripedCounter();
+    final StripedCounter                            evictions    = new StripedCounter();
+    final StripedCounter                            expirations  = new StripedCounter();
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    LruCache(final Builder<K, V> builder)
+    {
+        this.weigher = builder.weigher;
+        this.expireNanos = builder.expireNanos;
+        this.loader = builder.loader;
+
+        // Keep at least 16 units of weight per segment
+        final long maxSegments = Math.max(1, builder.maximumWeight / 16);
+        int n = 1, bits = 0;
+        while (n < builder.concurrencyLevel && n * 2 <= maxSegments)
+        {
+            n <<= 1;
+            bits++;
+        }
+        this.shift = 32 - bits;
+        this.segments = new Segment[n];
+        final long share = builder.maximumWeight / n, rest = builder.maximumWeight % n;
+        for (int i = 0; i < n; i++)
+            this.segments[i] = new Segment<>(this, share + (i < rest ? 1 : 0));
+    }
+
+    /**
+     * Creates a new cache builder.
+     *
+     * @return The builder.
+     */
+    public static <K, V> Builder<K, V> builder()
+    {
+        return new Builder<>();
+    }
+
+    private static int hash(final Object key)
+    {
+        // Spread bits, segments are selected by the upper ones
+        final int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<K, V> segmentFor(final int hash)
+    {
+        return this.shift == 32 ? this.segments[0] : this.segments[hash >>> this.shift];
+    }
+
+    private boolean isExpired(final Node<K, V> node, final long now)
+    {
+        return this.expireNanos > 0 && now - node.writeTime >= this.expireNanos;
+    }
+
+    private int weigh(final K key, final V value)
+    {
+        if (this.weigher == null) return 1;
+        final int w = this.weigher.weigh(key, value);
+        if (w < 0) throw new IllegalStateException("Negative weight for key: " + key);
+        return w;
+    }
+
+    /**
+     * Returns the cached value for the given key, without loading.
+     *
+     * @param key
+     *            The key.
+     * @return The value or <code>null</code>.
+     */
+    public V getIfPresent(final K key)
+    {
+        final Segment<K, V> seg = this.segmentFor(hash(key));
+        final long now = this.expireNanos > 0 ? System.nanoTime() : 0;
+        seg.lock();
+        try
+        {
+            final Node<K, V> node = seg.map.get(key);
+            if (node != null && node.loading == null)
+            {
+                if (this.isExpired(node, now))
+                {
+                    seg.remove(node);
+                    this.expirations.increment();
+                }
+                else
+                {
+                    seg.touch(node);
+                    this.hits.increment();
+                    return node.value;
+                }
+            }
+        }
+        finally
+        {
+            seg.unlock();
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns the cached value for the given key, loading it using the
+     * builder's loader if necessary.
+     *
+     * @param key
+     *            The key.
+     * @return The value.
+     * @see #get(Object, FnMapping)
+     */
+    public V get(final K key)
+    {
+        if (this.loader == null) throw new IllegalStateException("No default loader set");
+        return this.get(key, this.loader);
+    }
+
+    /**
+     * Returns the cached value for the given key, loading it if necessary.
+     * Concurrent calls for the same key wait for a single load. Exceptions
+     * thrown by the loader are propagated to all waiting threads, nothing gets
+     * cached in this case.
+     *
+     * @param key
+     *            The key.
+     * @param loader
+     *            The loader, may return <code>null</code>, which doesn't get
+     *            cached.
+     * @return The value.
+     */
+    public V get(final K key, final FnMapping<? super K, ? extends V> loader)
+    {
+        if (key == null) throw new NullPointerException("A null key is not permitted");
+
+        final int hash = hash(key);
+        final Segment<K, V> seg = this.segmentFor(hash);
+        final long now = this.expireNanos > 0 ? System.nanoTime() : 0;
+        final JobFuture<V> pending;
+        final Node<K, V> node;
+
+        seg.lock();
+        try
+        {
+            Node<K, V> n = seg.map.get(key);
+            if (n != null && n.loading == null && this.isExpired(n, now))
+            {
+                seg.remove(n);
+                this.expirations.increment();
+                n = null;
+            }
+            if (n == null)
+            {
+                node = new Node<>(key);
+                node.loading = new JobFuture<>();
+                seg.map.put(key, node);
+                pending = null;
+            }
+            else if (n.loading != null)
+            {
+                node = null;
+                pending = n.loading;
+            }
+            else
+            {
+                seg.touch(n);
+                this.hits.increment();
+                return n.value;
+            }
+        }
+        finally
+        {
+            seg.unlock();
+        }
+
+        if (pending != null)
+        {
+            // Somebody else is loading this key
+            this.hits.increment();
+            return pending.join();
+        }
+
+        this.misses.increment();
+        final V value;
+        final int weight;
+        try
+        {
+            value = loader.applyMapping(key);
+            weight = value != null ? this.weigh(key, value) : 0;
+        }
+        catch (final RuntimeException | Error e)
+        {
+            this.loadFailures.increment();
+            seg.lock();
+            try
+            {
+                if (seg.map.get(key) == node) seg.map.remove(key);
+            }
+            finally
+            {
+                seg.unlock();
+            }
+            node.loading.fail(e);
+            throw e;
+        }
+
+        final JobFuture<V> future = node.loading;
+        seg.lock();
+        try
+        {
+            if (seg.map.get(key) == node)
+            {
+                if (value == null)
+                {
+                    seg.map.remove(key);
+                }
+                else
+                {
+                    node.value = value;
+                    node.weight = weight;
+                    node.writeTime = this.expireNanos > 0 ? System.nanoTime() : 0;
+                    node.loading = null;
+                    seg.link(node);
+                    seg.evict();
+                }
+            }
+        }
+        finally
+        {
+            seg.unlock();
+        }
+        future.complete(value);
+        return value;
+    }
+
+    /**
+     * Puts a value into this cache, replacing any existing one. Threads
+     * waiting for a concurrent load of the same key still receive the loaded
+     * value, which then doesn't get cached.
+     *
+     * @param key
+     *            The key.
+     * @param value
+     *            The value.
+     */
+    public void put(final K key, final V value)
+    {
+        if (key == null || value == null) throw new NullPointerException("Null keys or values are not permitted");
+
+        final Node<K, V> node = new Node<>(key);
+        node.value = value;
+        node.weight = this.weigh(key, value);
+        node.writeTime = this.expireNanos > 0 ? System.nanoTime() : 0;
+
+        final Segment<K, V> seg = this.segmentFor(hash(key));
+        seg.lock();
+        try
+        {
+            final Node<K, V> old = seg.map.get(key);
+            if (old != null) seg.remove(old);
+            seg.map.put(key, node);
+            seg.link(node);
+            seg.evict();
+        }
+        finally
+        {
+            seg.unlock();
+        }
+    }
+
+    /**
+     * Removes the given key.
+     *
+     * @param key
+     *            The key.
+     */
+    public void invalidate(final K key)
+    {
+        final Segment<K, V> seg = this.segmentFor(hash(key));
+        seg.lock();
+        try
+        {
+            final Node<K, V> node = seg.map.get(key);
+            if (node != null) seg.remove(node);
+        }
+        finally
+        {
+            seg.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll()
+    {
+        for (final Segment<K, V> seg : this.segments)
+        {
+            seg.lock();
+            try
+            {
+                seg.map.clear();
+                seg.head = seg.tail = null;
+                seg.weight = 0;
+            }
+            finally
+            {
+                seg.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries, including ones currently loading.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (final Segment<K, V> seg : this.segments)
+        {
+            seg.lock();
+            try
+            {
+                size += seg.map.size();
+            }
+            finally
+            {
+                seg.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The total weight of all entries.
+     */
+    public long weight()
+    {
+        long weight = 0;
+        for (final Segment<K, V> seg : this.segments)
+        {
+            seg.lock();
+            try
+            {
+                weight += seg.weight;
+            }
+            finally
+            {
+                seg.unlock();
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Takes a snapshot of this cache's counters.
+     *
+     * @return The statistics.
+     */
+    public Stats stats()
+    {
+        return new Stats(this);
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void resetStats()
+    {
+        this.hits.reset();
+        this.misses.reset();
+        this.loadFailures.reset();
+        this.evictions.reset();
+        this.expirations.reset();
+    }
+
+    /**
+     * Computes the weight of cache entries.
+     *
+     * @author René Jeschke (rene_jeschke@yahoo.de)
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public static interface Weigher<K, V>
+    {
+        /**
+         * @param key
+         *            The key.
+         * @param value
+         *            The value.
+         * @return The (non-negative) weight.
+         */
+        public int weigh(K key, V value);
+    }
+
+    private final static class Node<K, V>
+    {
+        final K      key;
+        V            value;
+        int          weight;
+        long         writeTime;
+        JobFuture<V> loading;
+        Node<K, V>   prev;
+        Node<K, V>   next;
+
+        public Node(final K key)
+        {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A lock guarded hash map plus LRU list, <code>head</code> being the most
+     * recently used entry. Loading entries are in the map but not in the list.
+     */
+    private final static class Segment<K, V> extends ReentrantLock
+    {
+        private static final long    serialVersionUID = -1915634387418498562L;
+        final LruCache<K, V>         cache;
+        final long                   maximumWeight;
+        final HashMap<K, Node<K, V>> map              = new HashMap<>();
+        Node<K, V>                   head             = null;
+        Node<K, V>                   tail             = null;
+        long                         weight           = 0;
+
+        public Segment(final LruCache<K, V> cache, final long maximumWeight)
+        {
+            this.cache = cache;
+            this.maximumWeight = maximumWeight;
+        }
+
+        void link(final Node<K, V> node)
+        {
+            node.prev = null;
+            node.next = this.head;
+            if (this.head != null)
+                this.head.prev = node;
+            else
+                this.tail = node;
+            this.head = node;
+            this.weight += node.weight;
+        }
+
+        void unlink(final Node<K, V> node)
+        {
+            if (node.prev != null)
+                node.prev.next = node.next;
+            else
+                this.head = node.next;
+            if (node.next != null)
+                node.next.prev = node.prev;
+            else
+                this.tail = node.prev;
+            node.prev = node.next = null;
+            this.weight -= node.weight;
+        }
+
+        void touch(final Node<K, V> node)
+        {
+            if (node != this.head)
+            {
+                this.unlink(node);
+                this.link(node);
+            }
+        }
+
+        void remove(final Node<K, V> node)
+        {
+            this.map.remove(node.key);
+            if (node.loading == null) this.unlink(node);
+        }
+
+        void evict()
+        {
+            while (this.weight > this.maximumWeight && this.tail != null)
+            {
+                this.remove(this.tail);
+                this.cache.evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Immutable copy of cache counters.
+     *
+     * @author René Jeschke (rene_jeschke@yahoo.de)
+     */
+    public final static class Stats
+    {
+        public final long hits;
+        public final long misses;
+        public final long loadFailures;
+        public final long evictions;
+        public final long expirations;
+
+        Stats(final LruCache<?, ?> cache)
+        {
+            this.hits = cache.hits.sum();
+            this.misses = cache.misses.sum();
+            this.loadFailures = cache.loadFailures.sum();
+            this.evictions = cache.evictions.sum();
+            this.expirations = cache.expirations.sum();
+        }
+
+        /**
+         * @return Number of lookups.
+         */
+        public long requests()
+        {
+            return this.hits + this.misses;
+        }
+
+        /**
+         * @return Ratio of hits to lookups, <code>1</code> if there were no
+         *         lookups.
+         */
+        public double hitRate()
+        {
+            final long r = this.requests();
+            return r == 0 ? 1.0 : (double)this.hits / r;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("hits: %d, misses: %d, hit rate: %.3f, load failures: %d, evictions: %d, expirations: %d", this.hits, this.misses,
+                    this.hitRate(), this.loadFailures, this.evictions, this.expirations);
+        }
+    }
+
+    /**
+     * Cache builder.
+     *
+     * @author René Jeschke (rene_jeschke@yahoo.de)
+     *
+     * @param <K>
+     *            Key type.
+     * @param <V>
+     *            Value type.
+     */
+    public final static class Builder<K, V>
+    {
+        long                              maximumWeight    = Long.MAX_VALUE;
+        Weigher<? super K, ? super V>     weigher          = null;
+        long                              expireNanos      = 0;
+        int                               concurrencyLevel = ThreadPool.availableProcessors() * 2;
+        FnMapping<? super K, ? extends V> loader           = null;
+
+        Builder()
+        {
+            // empty
+        }
+
+        /**
+         * Sets the maximum number of entries.
+         *
+         * @param size
+         *            The maximum size.
+         * @return this
+         */
+        public Builder<K, V> maximumSize(final long size)
+        {
+            if (size < 0) throw new IllegalArgumentException("Size must not be negative");
+            this.maximumWeight = size;
+            this.weigher = null;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total weight of all entries.
+         *
+         * @param weight
+         *            The maximum weight.
+         * @param weigher
+         *            Computes the weight of an entry, gets called once per
+         *            write.
+         * @return this
+         */
+        public Builder<K, V> maximumWeight(final long weight, final Weigher<? super K, ? super V> weigher)
+        {
+            if (weight < 0) throw new IllegalArgumentException("Weight must not be negative");
+            if (weigher == null) throw new NullPointerException("A null Weigher is not permitted");
+            this.maximumWeight = weight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Lets entries expire the given time after they were written.
+         *
+         * @param duration
+         *            The duration, <code>0</code> disables expiry.
+         * @param unit
+         *            Unit of <code>duration</code>.
+         * @return this
+         */
+        public Builder<K, V> expireAfterWrite(final long duration, final TimeUnit unit)
+        {
+            if (duration < 0) throw new IllegalArgumentException("Duration must not be negative");
+            this.expireNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the number of lock stripes, gets rounded up to a power of two.
+         *
+         * @param level
+         *            Expected number of concurrently accessing threads.
+         * @return this
+         */
+        public Builder<K, V> concurrencyLevel(final int level)
+        {
+            this.concurrencyLevel = ThreadPool.defaultThreadcount(level);
+            return this;
+        }
+
+        /**
+         * Sets the default loader used by {@link LruCache#get(Object)}.
+         *
+         * @param loader
+         *            The loader.
+         * @return this
+         */
+        public Builder<K, V> loader(final FnMapping<? super K, ? extends V> loader)
+        {
+            this.loader = loader;
+            return this;
+        }
+
+        /**
+         * Creates the cache.
+         *
+         * @return The cache.
+         */
+        public LruCache<K, V> build()
+        {
+            return new LruCache<>(this);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+/**
+ * Lock-free multi-producer/single-consumer ring buffer for <code>float</code>
+ * values. Any number of threads may call the producer methods (offer,
+ * offerAll, put, putAll), exactly one thread the consumer methods (take,
+ * drainTo).
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public class MPSCFloatRingBuffer extends AbstractMPSCRingBuffer
+{
+    private final float[] data;
+
+    /**
+     * Creates a buffer using {@link WaitStrategy#PARK}.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     */
+    public MPSCFloatRingBuffer(final int capacity)
+    {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     * @param waitStrategy
+     *            Strategy used by the blocking methods.
+     */
+    public MPSCFloatRingBuffer(final int capacity, final WaitStrategy waitStrategy)
+    {
+        super(capacity, waitStrategy);
+        this.data = new float[this.capacity];
+    }
+
+    /**
+     * Adds a value if there is space left.
+     *
+     * @param value
+     *            The value.
+     * @return {@code true} on success.
+     */
+    public boolean offer(final float value)
+    {
+        for (;;)
+        {
+            final long tail = this.tail();
+            if (this.free(tail, 1) == 0) return false;
+            if (this.claim(tail, 1))
+            {
+                this.data[(int)tail & this.mask] = value;
+                this.publish(tail);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds a value, waiting for space if necessary.
+     *
+     * @param value
+     *            The value.
+     */
+    public void put(final float value)
+    {
+        for (int round = 0; !this.offer(value); round++)
+            this.waitStrategy.idle(round);
+    }
+
+    /**
+     * Adds as many values as possible from the given array, using a single
+     * CAS.
+     *
+     * @param src
+     *            Source array.
+     * @param offset
+     *            Offset into <code>src</code>.
+     * @param length
+     *            Maximum number of values.
+     * @return The number of values added.
+     */
+    public int offerAll(final float[] src, final int offset, final int length)
+    {
+        for (;;)
+        {
+            final long tail = this.tail();
+            final int n = this.free(tail, length);
+            if (n == 0) return 0;
+            if (this.claim(tail, n))
+            {
+                for (int i = 0; i < n; i++)
+                {
+                    this.data[(int)(tail + i) & this.mask] = src[offset + i];
+                    this.publish(tail + i);
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Adds all values from the given array, waiting for space if necessary.
+     *
+     * @param src
+     *            Source array.
+     * @param offset
+     *            Offset into <code>src</code>.
+     * @param length
+     *            Number of values.
+     */
+    public void putAll(final float[] src, final int offset, final int length)
+    {
+        int done = 0;
+        for (int round = 0; done < length;)
+        {
+            final int n = this.offerAll(src, offset + done, length - done);
+            if (n == 0)
+            {
+                this.waitStrategy.idle(round++);
+            }
+            else
+            {
+                done += n;
+                round = 0;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the next value, waiting if necessary.
+     *
+     * @return The value.
+     */
+    public float take()
+    {
+        for (int round = 0; this.available(1) == 0; round++)
+            this.waitStrategy.idle(round);
+        final float value = this.data[this.headIndex()];
+        this.release(1);
+        return value;
+    }
+
+    /**
+     * Removes up to <code>length</code> values without waiting.
+     *
+     * @param dst
+     *            Destination array.
+     * @param offset
+     *            Offset into <code>dst</code>.
+     * @param length
+     *            Maximum number of values.
+     * @return The number of values removed.
+     */
+    public int drainTo(final float[] dst, final int offset, final int length)
+    {
+        final int n = this.available(length);
+        if (n == 0) return 0;
+        final int h = this.headIndex();
+        final int first = Math.min(n, this.capacity - h);
+        System.arraycopy(this.data, h, dst, offset, first);
+        if (first < n) System.arraycopy(this.data, 0, dst, offset + first, n - first);
+        this.release(n);
+        return n;
+    }
+}
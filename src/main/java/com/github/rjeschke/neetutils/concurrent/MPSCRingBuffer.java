@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free multi-producer/single-consumer ring buffer. Any number of threads
+ * may call the producer methods (offer, offerAll, put), exactly one thread the
+ * consumer methods (poll, take, drainTo). <code>null</code> elements are not
+ * permitted.
+ *
+ * <p>
+ * Producers claim slots with a CAS on the (padded) tail index and publish
+ * elements with an ordered store into the slot, the consumer detects
+ * published slots by their non-null content.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <T>
+ */
+public class MPSCRingBuffer<T>
+{
+    private final static int              HEAD    = 8;
+    private final static int              TAIL    = 16;
+    private final AtomicLongArray         indices = new AtomicLongArray(25);
+    private final AtomicReferenceArray<T> data;
+    private final int                     capacity;
+    private final int                     mask;
+    private final WaitStrategy            waitStrategy;
+    private long                          head    = 0;
+
+    /**
+     * Creates a buffer using {@link WaitStrategy#PARK}.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     */
+    public MPSCRingBuffer(final int capacity)
+    {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     * @param waitStrategy
+     *            Strategy used by the blocking methods.
+     */
+    public MPSCRingBuffer(final int capacity, final WaitStrategy waitStrategy)
+    {
+        if (capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int c = 1;
+        while (c < capacity)
+            c <<= 1;
+        this.capacity = c;
+        this.mask = c - 1;
+        this.waitStrategy = waitStrategy;
+        this.data = new AtomicReferenceArray<>(c);
+    }
+
+    /**
+     * @return The capacity (a power of two).
+     */
+    public int capacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * @return The (approximate) number of elements in this buffer.
+     */
+    public int size()
+    {
+        final long h = this.indices.get(HEAD);
+        return (int)Math.max(0, Math.min(this.capacity, this.indices.get(TAIL) - h));
+    }
+
+    public boolean isEmpty()
+    {
+        return this.indices.get(TAIL) == this.indices.get(HEAD);
+    }
+
+    /**
+     * @return The total number of elements ever claimed by producers.
+     */
+    long produced()
+    {
+        return this.indices.get(TAIL);
+    }
+
+    /**
+     * Adds an element if there is space left.
+     *
+     * @param element
+     *            The element.
+     * @return {@code true} on success.
+     */
+    public boolean offer(final T element)
+    {
+        if (element == null) throw new NullPointerException("A null element is not permitted");
+        for (;;)
+        {
+            final long tail = this.indices.get(TAIL);
+            if (tail - this.indices.get(HEAD) >= this.capacity) return false;
+            if (this.indices.compareAndSet(TAIL, tail, tail + 1))
+            {
+                this.data.lazySet((int)tail & this.mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds an element, waiting for space if necessary.
+     *
+     * @param element
+     *            The element.
+     */
+    public void put(final T element)
+    {
+        for (int round = 0; !this.offer(element); round++)
+            this.waitStrategy.idle(round);
+    }
+
+    /**
+     * Adds as many elements as possible from the given array, using a single
+     * CAS.
+     *
+     * @param src
+     *            Source array.
+     * @param offset
+     *            Offset into <code>src</code>.
+     * @param length
+     *            Maximum number of elements.
+     * @return The number of elements added.
+     */
+    public int offerAll(final T[] src, final int offset, final int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (src[offset + i] == null) throw new NullPointerException("A null element is not permitted");
+        }
+        for (;;)
+        {
+            final long tail = this.indices.get(TAIL);
+            final int n = (int)Math.min(length, this.capacity - (tail - this.indices.get(HEAD)));
+            if (n <= 0) return 0;
+            if (this.indices.compareAndSet(TAIL, tail, tail + n))
+            {
+                for (int i = 0; i < n; i++)
+                    this.data.lazySet((int)(tail + i) & this.mask, src[offset + i]);
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the next element.
+     *
+     * @return The element or {@code null} if this buffer is empty (or the
+     *         next element is not yet fully published).
+     */
+    public T poll()
+    {
+        final int i = (int)this.head & this.mask;
+        final T element = this.data.get(i);
+        if (element == null) return null;
+        this.data.lazySet(i, null);
+        this.indices.lazySet(HEAD, ++this.head);
+        return element;
+    }
+
+    /**
+     * Removes and returns the next element, waiting if necessary.
+     *
+     * @return The element.
+     */
+    public T take()
+    {
+        T element;
+        for (int round = 0; (element = this.poll()) == null; round++)
+            this.waitStrategy.idle(round);
+        return element;
+    }
+
+    /**
+     * Removes up to <code>max</code> elements without waiting.
+     *
+     * @param coll
+     *            Destination collection.
+     * @param max
+     *            Maximum number of elements.
+     * @return The number of elements removed.
+     */
+    public int drainTo(final Collection<? super T> coll, final int max)
+    {
+        long h = this.head;
+        int n = 0;
+        for (; n < max; n++)
+        {
+            final int i = (int)h & this.mask;
+            final T element = this.data.get(i);
+            if (element == null) break;
+            this.data.lazySet(i, null);
+            coll.add(element);
+            h++;
+        }
+        if (n > 0)
+        {
+            this.head = h;
+            this.indices.lazySet(HEAD, h);
+        }
+        return n;
+    }
+}
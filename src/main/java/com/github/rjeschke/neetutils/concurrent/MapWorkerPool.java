@@ -42,6 +42,7 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
     private final Thread[]                                  threads;
     private Thread                                          callbackThread = null;
     private RequeueWatcher<Job<A, B>, ThreadWorker<A, B>>   watcher;
+    volatile PoolMetrics                                    metrics        = null;
 
     private MapWorkerPool(final MapWorkerCallback<A, B> callback, final int threads, final int queueLimit, final boolean serialCallbacks)
     {
@@ -105,14 +106,47 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
         return this.numThreads;
     }
 
+    /**
+     * Enables metrics collection for this pool.
+     *
+     * @param timing
+     *            Whether to record time-in-queue and execution times.
+     * @return The metrics.
+     */
+    public PoolMetrics enableMetrics(final boolean timing)
+    {
+        final PoolMetrics m = new PoolMetrics("MapWorkerPool", this.numThreads, timing, this.jobs.size());
+        this.metrics = m;
+        return m;
+    }
+
+    /**
+     * Disables metrics collection.
+     */
+    public void disableMetrics()
+    {
+        this.metrics = null;
+    }
+
+    /**
+     * @return The current metrics or {@code null} if disabled.
+     */
+    public PoolMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
     public void enqueue(final MapWorker<A, B> worker, final A object)
     {
         if (worker == null) throw new NullPointerException("A null Worker is not permitted");
 
         final ThreadWorker<A, B> w = this.workers.poll();
         final Job<A, B> job = new Job<>(worker, object);
+        final PoolMetrics m = worker instanceof StopWorker ? null : this.metrics;
+        if (m != null) job.enqueueTime = m.timestamp();
         if (w != null)
         {
+            if (m != null) m.jobEnqueued(false);
             w.setWorkLoad(job);
         }
         else
@@ -124,6 +158,7 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
                     SysUtils.fineSleep(5);
             }
 
+            if (m != null) m.jobEnqueued(true);
             this.jobs.offer(job);
         }
     }
@@ -132,9 +167,20 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
     {
         final Job<A, B> job = this.jobs.poll();
         if (job != null)
+        {
+            this.dequeued();
             w.setWorkLoad(job);
+        }
         else
+        {
             this.workers.offer(w);
+        }
+    }
+
+    private void dequeued()
+    {
+        final PoolMetrics m = this.metrics;
+        if (m != null) m.jobDequeued();
     }
 
     void doCallback(final ThreadWorker<A, B> threadWorker, final MapWorker<A, B> worker, final WorkerStatus status, final A input, final B output)
@@ -253,10 +299,14 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
                 boolean ok = true;
                 Throwable ta = null;
                 B output = null;
+                PoolMetrics m = null;
+                long t0 = 0;
                 try
                 {
                     this.sync.acquireUninterruptibly();
                     if (this.workload.worker instanceof StopWorker) break;
+                    m = this.pool.metrics;
+                    if (m != null) t0 = m.jobStarted(this.workload.enqueueTime);
                     output = this.workload.worker.run(this.workload.input);
                 }
                 catch (final Throwable t)
@@ -264,6 +314,7 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
                     ta = t;
                     ok = false;
                 }
+                if (m != null) m.jobFinished(t0, ok);
 
                 this.pool.doCallback(this, this.workload.worker, ok ? WorkerStatus.OK : new WorkerStatus(ta), this.workload.input, output);
             }
@@ -274,6 +325,7 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
     {
         public final MapWorker<A, B> worker;
         public final A               input;
+        long                         enqueueTime;
 
         public Job(final MapWorker<A, B> worker, final A input)
         {
@@ -315,6 +367,7 @@ public class MapWorkerPool<A, B> implements Runnable, RequeueWatcherCallback<Map
     @Override
     public void requeue(final ThreadWorker<A, B> worker, final Job<A, B> job)
     {
+        this.dequeued();
         worker.setWorkLoad(job);
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join helpers for data parallel loops over index ranges, running on a
+ * shared, lazily created {@link ForkJoinPool}.
+ *
+ * <p>
+ * Ranges get split in halves until they are not larger than the given
+ * granularity ('grain'). A grain of <code>0</code> or less selects
+ * {@link #defaultGrain(int)}.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class Parallel
+{
+    private Parallel()
+    {
+        //
+    }
+
+    private final static class Holder
+    {
+        final static ForkJoinPool POOL = new ForkJoinPool(ThreadPool.availableProcessors());
+    }
+
+    /**
+     * @return The shared ForkJoinPool.
+     */
+    public final static ForkJoinPool pool()
+    {
+        return Holder.POOL;
+    }
+
+    /**
+     * @return The parallelism level of the shared pool.
+     */
+    public final static int parallelism()
+    {
+        return Holder.POOL.getParallelism();
+    }
+
+    /**
+     * Returns a grain size resulting in about four tasks per thread.
+     *
+     * @param size
+     *            Size of the range.
+     * @return The grain size.
+     */
+    public final static int defaultGrain(final int size)
+    {
+        return Math.max(1, size / (parallelism() * 4));
+    }
+
+    private static int grain(final int grain, final int size)
+    {
+        return grain < 1 ? defaultGrain(size) : grain;
+    }
+
+    private static <T> T invoke(final ForkJoinTask<T> task)
+    {
+        return ForkJoinTask.inForkJoinPool() ? task.invoke() : Holder.POOL.invoke(task);
+    }
+
+    /**
+     * Runs the worker over [from, to) in parallel using the default grain
+     * size.
+     *
+     * @param from
+     *            Start index (inclusive).
+     * @param to
+     *            End index (exclusive).
+     * @param worker
+     *            The worker.
+     */
+    public final static void forRange(final int from, final int to, final RangeWorker worker)
+    {
+        forRange(from, to, 0, worker);
+    }
+
+    /**
+     * Runs the worker over [from, to) in parallel.
+     *
+     * @param from
+     *            Start index (inclusive).
+     * @param to
+     *            End index (exclusive).
+     * @param grain
+     *            Maximum range size per task.
+     * @param worker
+     *            The worker.
+     */
+    public final static void forRange(final int from, final int to, final int grain, final RangeWorker worker)
+    {
+        if (to <= from) return;
+        final int g = grain(grain, to - from);
+        if (to - from <= g)
+            worker.run(from, to);
+        else
+            invoke(new RangeAction(from, to, g, worker));
+    }
+
+    /**
+     * Reduces [from, to) in parallel using the default grain size.
+     *
+     * @param from
+     *            Start index (inclusive).
+     * @param to
+     *            End index (exclusive).
+     * @param reducer
+     *            The reducer.
+     * @return The result.
+     */
+    public final static <T> T reduceRange(final int from, final int to, final RangeReducer<T> reducer)
+    {
+        return reduceRange(from, to, 0, reducer);
+    }
+
+    /**
+     * Reduces [from, to) in parallel.
+     *
+     * @param from
+     *            Start index (inclusive).
+     * @param to
+     *            End index (exclusive).
+     * @param grain
+     *            Maximum range size per task.
+     * @param reducer
+     *            The reducer.
+     * @return The result.
+     */
+    public final static <T> T reduceRange(final int from, final int to, final int grain, final RangeReducer<T> reducer)
+    {
+        final int g = grain(grain, Math.max(0, to - from));
+        if (to - from <= g) return reducer.reduce(from, Math.max(from, to));
+        return invoke(new RangeTask<>(from, to, g, reducer));
+    }
+
+    private final static class RangeAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = -3546404335512893340L;
+        private final int         from;
+        private final int         to;
+        private final int         grain;
+        private final RangeWorker worker;
+
+        public RangeAction(final int from, final int to, final int grain, final RangeWorker worker)
+        {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.worker = worker;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from <= this.grain)
+            {
+                this.worker.run(this.from, this.to);
+            }
+            else
+            {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(new RangeAction(this.from, mid, this.grain, this.worker), new RangeAction(mid, this.to, this.grain, this.worker));
+            }
+        }
+    }
+
+    private final static class RangeTask<T> extends RecursiveTask<T>
+    {
+        private static final long     serialVersionUID = 5110296224618316264L;
+        private final int             from;
+        private final int             to;
+        private final int             grain;
+        private final RangeReducer<T> reducer;
+
+        public RangeTask(final int from, final int to, final int grain, final RangeReducer<T> reducer)
+        {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.reducer = reducer;
+        }
+
+        @Override
+        protected T compute()
+        {
+            if (this.to - this.from <= this.grain) return this.reducer.reduce(this.from, this.to);
+
+            final int mid = (this.from + this.to) >>> 1;
+            final RangeTask<T> upper = new RangeTask<>(mid, this.to, this.grain, this.reducer);
+            upper.fork();
+            final T lower = new RangeTask<>(this.from, mid, this.grain, this.reducer).compute();
+            return this.reducer.combine(lower, upper.join());
+        }
+    }
+}
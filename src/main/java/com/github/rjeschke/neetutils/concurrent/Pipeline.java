@@ -0,0 +1,452 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Multi-stage dataflow pipeline running {@link MapWorker} stages on a single
+ * shared {@link Executor}.
+ *
+ * <p>
+ * Each stage has a bounded input queue and a maximum parallelism. A stage
+ * task reserves space in the next stage's queue <em>before</em> taking a batch
+ * from its own input, so executor threads never block on a full queue;
+ * backpressure is only applied to the thread calling {@link #put(Object)}.
+ * Stage tasks get scheduled on demand, i.e. idle stages do not occupy
+ * threads.
+ * </p>
+ *
+ * <p>
+ * Items are not kept in order across stages with a parallelism greater than
+ * one. A stage returning <code>null</code> drops the item. Exceptions thrown
+ * by a stage drop the item as well, the first one gets reported through
+ * {@link #completion()} at end-of-stream.
+ * </p>
+ *
+ * <pre>
+ * final Pipeline&lt;File, byte[]&gt; p = Pipeline.from(decoder, 2).then(filter, 8).then(encoder, 2).start(writer);
+ * for (final File f : files)
+ *     p.put(f);
+ * p.close();
+ * p.join();
+ * </pre>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <I>
+ *            Input type.
+ * @param <O>
+ *            Output type.
+ */
+public final class Pipeline<I, O>
+{
+    public final static int                  DEFAULT_QUEUE_CAPACITY = 256;
+    public final static int                  DEFAULT_BATCH_SIZE     = 16;
+    private final Stage[]                    stages;
+    private final Executor                   executor;
+    private final Worker<Object>             sink;
+    private final int                        batchSize;
+    private final AtomicLong                 inFlight               = new AtomicLong();
+    private final AtomicLong                 failed                 = new AtomicLong();
+    private final AtomicReference<Throwable> failure                = new AtomicReference<>();
+    private final JobFuture<Void>            completion             = new JobFuture<>();
+    private volatile boolean                 closed                 = false;
+
+    @SuppressWarnings("unchecked")
+    Pipeline(final Builder<I, O> builder, final Executor executor, final Worker<? super O> sink)
+    {
+        this.executor = executor;
+        this.sink = (Worker<Object>)sink;
+        this.batchSize = builder.batchSize;
+        final int n = builder.workers.size();
+        this.stages = new Stage[n];
+        for (int i = n - 1; i >= 0; i--)
+        {
+            final Stage next = i + 1 < n ? this.stages[i + 1] : null;
+            this.stages[i] = new Stage(this, builder.workers.get(i), builder.parallelism.get(i), builder.queueCapacity, next);
+        }
+        for (int i = 1; i < n; i++)
+            this.stages[i].prev = this.stages[i - 1];
+    }
+
+    /**
+     * Starts building a pipeline.
+     *
+     * @param worker
+     *            The first stage.
+     * @param parallelism
+     *            Maximum number of concurrent tasks for this stage.
+     * @return A builder.
+     */
+    public static <A, B> Builder<A, B> from(final MapWorker<? super A, ? extends B> worker, final int parallelism)
+    {
+        return new Builder<A, B>().add(worker, parallelism);
+    }
+
+    /**
+     * Adds an item, waiting for space in the first stage's queue if necessary.
+     *
+     * @param item
+     *            The item.
+     */
+    public void put(final I item)
+    {
+        if (item == null) throw new NullPointerException("A null item is not permitted");
+        if (this.closed) throw new IllegalStateException("Pipeline is closed");
+
+        final Stage first = this.stages[0];
+        this.inFlight.incrementAndGet();
+        first.space.acquireUninterruptibly();
+        first.input.offer(item);
+        first.trySchedule();
+    }
+
+    /**
+     * Adds an item if there is space in the first stage's queue.
+     *
+     * @param item
+     *            The item.
+     * @return {@code true} on success.
+     */
+    public boolean offer(final I item)
+    {
+        if (item == null) throw new NullPointerException("A null item is not permitted");
+        if (this.closed) throw new IllegalStateException("Pipeline is closed");
+
+        final Stage first = this.stages[0];
+        if (!first.space.tryAcquire()) return false;
+        this.inFlight.incrementAndGet();
+        first.input.offer(item);
+        first.trySchedule();
+        return true;
+    }
+
+    /**
+     * Signals end-of-stream. {@link #completion()} completes once all items
+     * passed (or dropped out of) the pipeline.
+     */
+    public void close()
+    {
+        this.closed = true;
+        if (this.inFlight.get() == 0) this.finish();
+    }
+
+    public boolean isClosed()
+    {
+        return this.closed;
+    }
+
+    /**
+     * @return The number of items currently inside the pipeline.
+     */
+    public long inFlight()
+    {
+        return this.inFlight.get();
+    }
+
+    /**
+     * @return The number of items dropped due to exceptions.
+     */
+    public long failedCount()
+    {
+        return this.failed.get();
+    }
+
+    /**
+     * Returns the completion future, which fails with the first exception
+     * thrown by any stage or the sink.
+     *
+     * @return The completion future.
+     */
+    public JobFuture<Void> completion()
+    {
+        return this.completion;
+    }
+
+    /**
+     * Closes this pipeline and waits for completion.
+     *
+     * @see JobFuture#join()
+     */
+    public void join()
+    {
+        this.close();
+        this.completion.join();
+    }
+
+    void itemDone()
+    {
+        if (this.inFlight.decrementAndGet() == 0 && this.closed) this.finish();
+    }
+
+    void itemFailed(final Throwable t)
+    {
+        this.failed.incrementAndGet();
+        this.failure.compareAndSet(null, t);
+        this.itemDone();
+    }
+
+    private void finish()
+    {
+        final Throwable t = this.failure.get();
+        if (t != null)
+            this.completion.fail(t);
+        else
+            this.completion.complete(null);
+    }
+
+    void emit(final Object output)
+    {
+        try
+        {
+            this.sink.run(output);
+        }
+        catch (final Throwable t)
+        {
+            this.itemFailed(t);
+            return;
+        }
+        this.itemDone();
+    }
+
+    private static int reserve(final Semaphore space, final int n)
+    {
+        for (;;)
+        {
+            final int k = Math.min(space.availablePermits(), n);
+            if (k <= 0) return 0;
+            if (space.tryAcquire(k)) return k;
+        }
+    }
+
+    private final static class Stage implements Runnable
+    {
+        final Pipeline<?, ?>                pipeline;
+        final MapWorker<Object, Object>     worker;
+        final int                           parallelism;
+        final ConcurrentLinkedQueue<Object> input  = new ConcurrentLinkedQueue<>();
+        final Semaphore                     space;
+        final AtomicInteger                 active = new AtomicInteger();
+        final Stage                         next;
+        Stage                               prev   = null;
+
+        public Stage(final Pipeline<?, ?> pipeline, final MapWorker<Object, Object> worker, final int parallelism, final int capacity,
+                final Stage next)
+        {
+            this.pipeline = pipeline;
+            this.worker = worker;
+            this.parallelism = parallelism;
+            this.space = new Semaphore(capacity);
+            this.next = next;
+        }
+
+        void trySchedule()
+        {
+            for (;;)
+            {
+                final int a = this.active.get();
+                if (a >= this.parallelism || this.input.isEmpty()) return;
+                if (this.next != null && this.next.space.availablePermits() == 0) return;
+                if (this.active.compareAndSet(a, a + 1))
+                {
+                    this.pipeline.executor.execute(this);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                final int max = this.pipeline.batchSize;
+                final int reserved = this.next != null ? reserve(this.next.space, max) : max;
+                if (reserved == 0) return;
+
+                final Object[] batch = new Object[reserved];
+                int count = 0;
+                Object o;
+                while (count < reserved && (o = this.input.poll()) != null)
+                    batch[count++] = o;
+
+                if (count > 0)
+                {
+                    this.space.release(count);
+                    if (this.prev != null) this.prev.trySchedule();
+                    // Fan out while there's more input
+                    if (!this.input.isEmpty()) this.trySchedule();
+                }
+
+                int emitted = 0;
+                for (int i = 0; i < count; i++)
+                {
+                    final Object out;
+                    try
+                    {
+                        out = this.worker.run(batch[i]);
+                    }
+                    catch (final Throwable t)
+                    {
+                        this.pipeline.itemFailed(t);
+                        continue;
+                    }
+
+                    if (out == null)
+                    {
+                        this.pipeline.itemDone();
+                    }
+                    else if (this.next != null)
+                    {
+                        this.next.input.offer(out);
+                        emitted++;
+                    }
+                    else
+                    {
+                        this.pipeline.emit(out);
+                    }
+                }
+
+                if (this.next != null)
+                {
+                    if (reserved > emitted) this.next.space.release(reserved - emitted);
+                    this.next.trySchedule();
+                }
+            }
+            finally
+            {
+                this.active.decrementAndGet();
+                this.trySchedule();
+            }
+        }
+    }
+
+    /**
+     * Pipeline builder.
+     *
+     * @author René Jeschke (rene_jeschke@yahoo.de)
+     *
+     * @param <I>
+     *            Input type.
+     * @param <O>
+     *            Output type of the last stage.
+     */
+    public final static class Builder<I, O>
+    {
+        final List<MapWorker<Object, Object>> workers       = new ArrayList<>();
+        final List<Integer>                   parallelism   = new ArrayList<>();
+        int                                   queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        int                                   batchSize     = DEFAULT_BATCH_SIZE;
+
+        Builder()
+        {
+            // empty
+        }
+
+        @SuppressWarnings("unchecked")
+        <A, B> Builder<A, B> add(final MapWorker<?, ?> worker, final int parallelism)
+        {
+            if (worker == null) throw new NullPointerException("A null MapWorker is not permitted");
+            this.workers.add((MapWorker<Object, Object>)worker);
+            this.parallelism.add(ThreadPool.defaultThreadcount(parallelism));
+            return (Builder<A, B>)this;
+        }
+
+        /**
+         * Appends a stage.
+         *
+         * @param worker
+         *            The stage.
+         * @param parallelism
+         *            Maximum number of concurrent tasks for this stage, values
+         *            less than 1 select the number of available processors.
+         * @return this
+         */
+        public <C> Builder<I, C> then(final MapWorker<? super O, ? extends C> worker, final int parallelism)
+        {
+            return this.add(worker, parallelism);
+        }
+
+        /**
+         * Sets the input queue capacity of each stage.
+         *
+         * @param capacity
+         *            The capacity.
+         * @return this
+         */
+        public Builder<I, O> queueCapacity(final int capacity)
+        {
+            if (capacity < 1) throw new IllegalArgumentException("Capacity must be greater than zero");
+            this.queueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of items a stage task processes at once.
+         *
+         * @param size
+         *            The batch size.
+         * @return this
+         */
+        public Builder<I, O> batchSize(final int size)
+        {
+            if (size < 1) throw new IllegalArgumentException("Batch size must be greater than zero");
+            this.batchSize = size;
+            return this;
+        }
+
+        /**
+         * Starts the pipeline on the shared fork-join pool.
+         *
+         * @param sink
+         *            Receives the outputs of the last stage, gets called
+         *            concurrently if the last stage has a parallelism greater
+         *            than one.
+         * @return The pipeline.
+         * @see Parallel#pool()
+         */
+        public Pipeline<I, O> start(final Worker<? super O> sink)
+        {
+            return this.start(Parallel.pool(), sink);
+        }
+
+        /**
+         * Starts the pipeline on the given executor, e.g. a
+         * {@link ThreadPool}.
+         *
+         * @param executor
+         *            The executor.
+         * @param sink
+         *            Receives the outputs of the last stage, gets called
+         *            concurrently if the last stage has a parallelism greater
+         *            than one.
+         * @return The pipeline.
+         */
+        public Pipeline<I, O> start(final Executor executor, final Worker<? super O> sink)
+        {
+            if (sink == null) throw new NullPointerException("A null sink is not permitted");
+            return new Pipeline<>(this, executor, sink);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.github.rjeschke.neetutils.WrappedCheckedException;
+
+/**
+ * Counters and optional latency histograms for {@link ThreadPool},
+ * {@link WorkerPool} and {@link MapWorkerPool}.
+ *
+ * <p>
+ * Metrics are disabled by default and get enabled per pool using
+ * <code>enableMetrics(timing)</code>. When disabled, the pools only pay for a
+ * single volatile read per job. Timing (time-in-queue, execution time and
+ * their histograms) requires two <code>System.nanoTime()</code> calls per job
+ * and is therefore optional.
+ * </p>
+ *
+ * <p>
+ * Histograms use power-of-two nanosecond buckets, i.e. percentiles are upper
+ * bounds with a maximum error of factor two.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class PoolMetrics implements PoolMetricsMBean
+{
+    final static int              BUCKETS    = 64;
+    private final String          type;
+    private final int             threads;
+    private final boolean         timing;
+    private final StripedCounter  enqueued   = new StripedCounter();
+    private final StripedCounter  completed  = new StripedCounter();
+    private final StripedCounter  failed     = new StripedCounter();
+    private final StripedCounter  queueNanos = new StripedCounter();
+    private final StripedCounter  execNanos  = new StripedCounter();
+    private final AtomicInteger   queueDepth = new AtomicInteger();
+    private final AtomicInteger   highWater  = new AtomicInteger();
+    private final AtomicInteger   active     = new AtomicInteger();
+    private final AtomicLongArray queueHistogram;
+    private final AtomicLongArray execHistogram;
+    private volatile long         resetTime  = System.nanoTime();
+    private ObjectName            objectName = null;
+
+    PoolMetrics(final String type, final int threads, final boolean timing, final int queueDepth)
+    {
+        this.type = type;
+        this.threads = threads;
+        this.timing = timing;
+        this.queueHistogram = timing ? new AtomicLongArray(BUCKETS) : null;
+        this.execHistogram = timing ? new AtomicLongArray(BUCKETS) : null;
+        this.queueDepth.set(queueDepth);
+        this.highWater.set(queueDepth);
+    }
+
+    /**
+     * @return {@code true} if time-in-queue and execution times get recorded.
+     */
+    public boolean isTiming()
+    {
+        return this.timing;
+    }
+
+    final long timestamp()
+    {
+        return this.timing ? System.nanoTime() : 0;
+    }
+
+    final void jobEnqueued(final boolean queued)
+    {
+        this.enqueued.increment();
+        if (queued)
+        {
+            final int depth = this.queueDepth.incrementAndGet();
+            for (;;)
+            {
+                final int hw = this.highWater.get();
+                if (depth <= hw || this.highWater.compareAndSet(hw, depth)) break;
+            }
+        }
+    }
+
+    final void jobDequeued()
+    {
+        this.queueDepth.decrementAndGet();
+    }
+
+    final long jobStarted(final long enqueueTime)
+    {
+        this.active.incrementAndGet();
+        if (!this.timing) return 0;
+
+        final long now = System.nanoTime();
+        if (enqueueTime != 0)
+        {
+            final long wait = now - enqueueTime;
+            this.queueNanos.add(wait);
+            record(this.queueHistogram, wait);
+        }
+        return now;
+    }
+
+    final void jobFinished(final long startTime, final boolean ok)
+    {
+        if (this.timing)
+        {
+            final long time = System.nanoTime() - startTime;
+            this.execNanos.add(time);
+            record(this.execHistogram, time);
+        }
+        if (ok)
+            this.completed.increment();
+        else
+            this.failed.increment();
+        this.active.decrementAndGet();
+    }
+
+    private static void record(final AtomicLongArray histogram, final long nanos)
+    {
+        histogram.getAndIncrement(nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos) - 1);
+    }
+
+    @Override
+    public int getThreadCount()
+    {
+        return this.threads;
+    }
+
+    @Override
+    public long getEnqueuedCount()
+    {
+        return this.enqueued.sum();
+    }
+
+    @Override
+    public long getCompletedCount()
+    {
+        return this.completed.sum();
+    }
+
+    @Override
+    public long getFailedCount()
+    {
+        return this.failed.sum();
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return Math.max(0, this.queueDepth.get());
+    }
+
+    @Override
+    public int getQueueDepthHighWaterMark()
+    {
+        return this.highWater.get();
+    }
+
+    @Override
+    public int getActiveWorkers()
+    {
+        return Math.max(0, this.active.get());
+    }
+
+    /**
+     * Returns the average worker utilization since creation or the last
+     * reset. Without timing this returns the current ratio of active workers.
+     *
+     * @return Utilization in the range [0, 1].
+     */
+    @Override
+    public double getUtilization()
+    {
+        if (!this.timing) return (double)this.getActiveWorkers() / this.threads;
+        final long elapsed = System.nanoTime() - this.resetTime;
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double)this.execNanos.sum() / ((double)elapsed * this.threads));
+    }
+
+    @Override
+    public double getAverageQueueTimeMillis()
+    {
+        final long n = this.completed.sum() + this.failed.sum();
+        return n == 0 ? 0 : this.queueNanos.sum() * 1e-6 / n;
+    }
+
+    @Override
+    public double getAverageExecutionTimeMillis()
+    {
+        final long n = this.completed.sum() + this.failed.sum();
+        return n == 0 ? 0 : this.execNanos.sum() * 1e-6 / n;
+    }
+
+    /**
+     * Resets all counters, the high-water mark and histograms. The current
+     * queue depth and active worker gauges are kept.
+     */
+    @Override
+    public void reset()
+    {
+        this.enqueued.reset();
+        this.completed.reset();
+        this.failed.reset();
+        this.queueNanos.reset();
+        this.execNanos.reset();
+        this.highWater.set(this.getQueueDepth());
+        if (this.timing)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                this.queueHistogram.set(i, 0);
+                this.execHistogram.set(i, 0);
+            }
+        }
+        this.resetTime = System.nanoTime();
+    }
+
+    /**
+     * Takes a snapshot of all values.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot()
+    {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Registers these metrics at the platform MBean server.
+     *
+     * @param name
+     *            Name of the pool, used as the 'name' key of the ObjectName.
+     * @return this
+     */
+    public synchronized PoolMetrics registerMBean(final String name)
+    {
+        this.unregisterMBean();
+        try
+        {
+            final ObjectName on = new ObjectName(PoolMetrics.class.getPackage().getName() + ":type=" + this.type + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            this.objectName = on;
+        }
+        catch (final JMException e)
+        {
+            throw new WrappedCheckedException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregisterMBean()
+    {
+        if (this.objectName == null) return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        }
+        catch (final JMException e)
+        {
+            // ignore
+        }
+        this.objectName = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.snapshot().toString();
+    }
+
+    /**
+     * Immutable copy of pool metrics.
+     *
+     * @author René Jeschke (rene_jeschke@yahoo.de)
+     */
+    public final static class Snapshot
+    {
+        public final int     threads;
+        public final long    enqueued;
+        public final long    completed;
+        public final long    failed;
+        public final int     queueDepth;
+        public final int     queueDepthHighWaterMark;
+        public final int     activeWorkers;
+        public final double  utilization;
+        public final double  averageQueueTimeMillis;
+        public final double  averageExecutionTimeMillis;
+        private final long[] queueHistogram;
+        private final long[] execHistogram;
+
+        Snapshot(final PoolMetrics m)
+        {
+            this.threads = m.threads;
+            this.enqueued = m.getEnqueuedCount();
+            this.completed = m.getCompletedCount();
+            this.failed = m.getFailedCount();
+            this.queueDepth = m.getQueueDepth();
+            this.queueDepthHighWaterMark = m.getQueueDepthHighWaterMark();
+            this.activeWorkers = m.getActiveWorkers();
+            this.utilization = m.getUtilization();
+            this.averageQueueTimeMillis = m.getAverageQueueTimeMillis();
+            this.averageExecutionTimeMillis = m.getAverageExecutionTimeMillis();
+            this.queueHistogram = copy(m.queueHistogram);
+            this.execHistogram = copy(m.execHistogram);
+        }
+
+        private static long[] copy(final AtomicLongArray histogram)
+        {
+            final long[] ret = new long[BUCKETS];
+            if (histogram != null)
+            {
+                for (int i = 0; i < BUCKETS; i++)
+                    ret[i] = histogram.get(i);
+            }
+            return ret;
+        }
+
+        private static double percentile(final long[] histogram, final double p)
+        {
+            long total = 0;
+            for (final long l : histogram)
+                total += l;
+            if (total == 0) return 0;
+
+            final long rank = (long)Math.ceil(Math.max(0, Math.min(1, p)) * total);
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                sum += histogram[i];
+                if (sum >= rank && sum > 0) return Math.scalb(1.0, i + 1) * 1e-6;
+            }
+            return Math.scalb(1.0, BUCKETS) * 1e-6;
+        }
+
+        /**
+         * Returns the (approximate, upper bound) time-in-queue percentile.
+         * Requires timing.
+         *
+         * @param p
+         *            Percentile in the range [0, 1].
+         * @return Time in milliseconds.
+         */
+        public double queueTimePercentileMillis(final double p)
+        {
+            return percentile(this.queueHistogram, p);
+        }
+
+        /**
+         * Returns the (approximate, upper bound) execution time percentile.
+         * Requires timing.
+         *
+         * @param p
+         *            Percentile in the range [0, 1].
+         * @return Time in milliseconds.
+         */
+        public double executionTimePercentileMillis(final double p)
+        {
+            return percentile(this.execHistogram, p);
+        }
+
+        /**
+         * Returns a copy of the time-in-queue histogram. Bucket <code>i</code>
+         * counts durations in the range [2^i, 2^(i+1)) nanoseconds.
+         *
+         * @return The histogram.
+         */
+        public long[] getQueueTimeHistogram()
+        {
+            return this.queueHistogram.clone();
+        }
+
+        /**
+         * Returns a copy of the execution time histogram. Bucket <code>i</code>
+         * counts durations in the range [2^i, 2^(i+1)) nanoseconds.
+         *
+         * @return The histogram.
+         */
+        public long[] getExecutionTimeHistogram()
+        {
+            return this.execHistogram.clone();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("threads: %d, enqueued: %d, completed: %d, failed: %d, queue: %d (max %d), active: %d, util: %.3f, queue time: %.3fms, exec time: %.3fms",
+                    this.threads, this.enqueued, this.completed, this.failed, this.queueDepth, this.queueDepthHighWaterMark, this.activeWorkers,
+                    this.utilization, this.averageQueueTimeMillis, this.averageExecutionTimeMillis);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+/**
+ * JMX interface of {@link PoolMetrics}.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public interface PoolMetricsMBean
+{
+    public int getThreadCount();
+
+    public long getEnqueuedCount();
+
+    public long getCompletedCount();
+
+    public long getFailedCount();
+
+    public int getQueueDepth();
+
+    public int getQueueDepthHighWaterMark();
+
+    public int getActiveWorkers();
+
+    public double getUtilization();
+
+    public double getAverageQueueTimeMillis();
+
+    public double getAverageExecutionTimeMillis();
+
+    public void reset();
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer for <code>double</code>
+ * values. Exactly one thread may call the producer methods (offer, put) and
+ * exactly one thread the consumer methods (take, drainTo) at any time.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public class SPSCDoubleRingBuffer extends AbstractSPSCRingBuffer
+{
+    private final double[] data;
+
+    /**
+     * Creates a buffer using {@link WaitStrategy#PARK}.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     */
+    public SPSCDoubleRingBuffer(final int capacity)
+    {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     * @param waitStrategy
+     *            Strategy used by the blocking methods.
+     */
+    public SPSCDoubleRingBuffer(final int capacity, final WaitStrategy waitStrategy)
+    {
+        super(capacity, waitStrategy);
+        this.data = new double[this.capacity];
+    }
+
+    /**
+     * Adds a value if there is space left.
+     *
+     * @param value
+     *            The value.
+     * @return {@code true} on success.
+     */
+    public boolean offer(final double value)
+    {
+        if (this.free(1) == 0) return false;
+        this.data[this.tailIndex()] = value;
+        this.publish(1);
+        return true;
+    }
+
+    /**
+     * Adds a value, waiting for space if necessary.
+     *
+     * @param value
+     *            The value.
+     */
+    public void put(final double value)
+    {
+        for (int round = 0; !this.offer(value); round++)
+            this.waitStrategy.idle(round);
+    }
+
+    /**
+     * Adds as many values as possible from the given array.
+     *
+     * @param src
+     *            Source array.
+     * @param offset
+     *            Offset into <code>src</code>.
+     * @param length
+     *            Maximum number of values.
+     * @return The number of values added.
+     */
+    public int offerAll(final double[] src, final int offset, final int length)
+    {
+        final int n = this.free(length);
+        if (n == 0) return 0;
+        final int t = this.tailIndex();
+        final int first = Math.min(n, this.capacity - t);
+        System.arraycopy(src, offset, this.data, t, first);
+        if (first < n) System.arraycopy(src, offset + first, this.data, 0, n - first);
+        this.publish(n);
+        return n;
+    }
+
+    /**
+     * Adds all values from the given array, waiting for space if necessary.
+     *
+     * @param src
+     *            Source array.
+     * @param offset
+     *            Offset into <code>src</code>.
+     * @param length
+     *            Number of values.
+     */
+    public void putAll(final double[] src, final int offset, final int length)
+    {
+        int done = 0;
+        for (int round = 0; done < length;)
+        {
+            final int n = this.offerAll(src, offset + done, length - done);
+            if (n == 0)
+            {
+                this.waitStrategy.idle(round++);
+            }
+            else
+            {
+                done += n;
+                round = 0;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the next value, waiting if necessary.
+     *
+     * @return The value.
+     */
+    public double take()
+    {
+        for (int round = 0; this.available(1) == 0; round++)
+            this.waitStrategy.idle(round);
+        final double value = this.data[this.headIndex()];
+        this.release(1);
+        return value;
+    }
+
+    /**
+     * Removes up to <code>length</code> values without waiting.
+     *
+     * @param dst
+     *            Destination array.
+     * @param offset
+     *            Offset into <code>dst</code>.
+     * @param length
+     *            Maximum number of values.
+     * @return The number of values removed.
+     */
+    public int drainTo(final double[] dst, final int offset, final int length)
+    {
+        final int n = this.available(length);
+        if (n == 0) return 0;
+        final int h = this.headIndex();
+        final int first = Math.min(n, this.capacity - h);
+        System.arraycopy(this.data, h, dst, offset, first);
+        if (first < n) System.arraycopy(this.data, 0, dst, offset + first, n - first);
+        this.release(n);
+        return n;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer. Exactly one thread
+ * may call the producer methods (offer, put) and exactly one thread the
+ * consumer methods (poll, take, drainTo) at any time. <code>null</code>
+ * elements are not permitted.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <T>
+ */
+public class SPSCRingBuffer<T> extends AbstractSPSCRingBuffer
+{
+    private final Object[] data;
+
+    /**
+     * Creates a buffer using {@link WaitStrategy#PARK}.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     */
+    public SPSCRingBuffer(final int capacity)
+    {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Minimum capacity, gets rounded up to the next power of two.
+     * @param waitStrategy
+     *            Strategy used by the blocking methods.
+     */
+    public SPSCRingBuffer(final int capacity, final WaitStrategy waitStrategy)
+    {
+        super(capacity, waitStrategy);
+        this.data = new Object[this.capacity];
+    }
+
+    /**
+     * Adds an element if there is space left.
+     *
+     * @param element
+     *            The element.
+     * @return {@code true} on success.
+     */
+    public boolean offer(final T element)
+    {
+        if (element == null) throw new NullPointerException("A null element is not permitted");
+        if (this.free(1) == 0) return false;
+        this.data[this.tailIndex()] = element;
+        this.publish(1);
+        return true;
+    }
+
+    /**
+     * Adds an element, waiting for space if necessary.
+     *
+     * @param element
+     *            The element.
+     */
+    public void put(final T element)
+    {
+        for (int round = 0; !this.offer(element); round++)
+            this.waitStrategy.idle(round);
+    }
+
+    /**
+     * Adds as many elements as possible from the given array.
+     *
+     * @param src
+     *            Source array.
+     * @param offset
+     *            Offset into <code>src</code>.
+     * @param length
+     *            Maximum number of elements.
+     * @return The number of elements added.
+     */
+    public int offerAll(final T[] src, final int offset, final int length)
+    {
+        final int n = this.free(length);
+        if (n == 0) return 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (src[offset + i] == null) throw new NullPointerException("A null element is not permitted");
+        }
+        final int t = this.tailIndex();
+        final int first = Math.min(n, this.capacity - t);
+        System.arraycopy(src, offset, this.data, t, first);
+        if (first < n) System.arraycopy(src, offset + first, this.data, 0, n - first);
+        this.publish(n);
+        return n;
+    }
+
+    /**
+     * Removes and returns the next element.
+     *
+     * @return The element or {@code null} if this buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll()
+    {
+        if (this.available(1) == 0) return null;
+        final int h = this.headIndex();
+        final T element = (T)this.data[h];
+        this.data[h] = null;
+        this.release(1);
+        return element;
+    }
+
+    /**
+     * Removes and returns the next element, waiting if necessary.
+     *
+     * @return The element.
+     */
+    public T take()
+    {
+        T element;
+        for (int round = 0; (element = this.poll()) == null; round++)
+            this.waitStrategy.idle(round);
+        return element;
+    }
+
+    /**
+     * Removes up to <code>length</code> elements without waiting.
+     *
+     * @param dst
+     *            Destination array.
+     * @param offset
+     *            Offset into <code>dst</code>.
+     * @param length
+     *            Maximum number of elements.
+     * @return The number of elements removed.
+     */
+    public int drainTo(final T[] dst, final int offset, final int length)
+    {
+        final int n = this.available(length);
+        if (n == 0) return 0;
+        final int h = this.headIndex();
+        final int first = Math.min(n, this.capacity - h);
+        System.arraycopy(this.data, h, dst, offset, first);
+        Arrays.fill(this.data, h, h + first, null);
+        if (first < n)
+        {
+            System.arraycopy(this.data, 0, dst, offset + first, n - first);
+            Arrays.fill(this.data, 0, n - first, null);
+        }
+        this.release(n);
+        return n;
+    }
+
+    /**
+     * Removes up to <code>max</code> elements without waiting.
+     *
+     * @param coll
+     *            Destination collection.
+     * @param max
+     *            Maximum number of elements.
+     * @return The number of elements removed.
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(final Collection<? super T> coll, final int max)
+    {
+        final int n = this.available(max);
+        int h = this.headIndex();
+        for (int i = 0; i < n; i++)
+        {
+            coll.add((T)this.data[h]);
+            this.data[h] = null;
+            h = (h + 1) & this.mask;
+        }
+        if (n > 0) this.release(n);
+        return n;
+    }
+}
@@ -0,0 +1,812 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.github.rjeschke.neetutils.fn.FnDoubleFoldStep;
+import com.github.rjeschke.neetutils.fn.FnFloatFoldStep;
+import com.github.rjeschke.neetutils.fn.FnFoldStep;
+import com.github.rjeschke.neetutils.fn.FnIntFoldStep;
+import com.github.rjeschke.neetutils.fn.FnLongFoldStep;
+import com.github.rjeschke.neetutils.lists.DoubleList;
+import com.github.rjeschke.neetutils.lists.FloatList;
+import com.github.rjeschke.neetutils.lists.IntList;
+import com.github.rjeschke.neetutils.lists.LongList;
+
+/**
+ * Parallel prefix scans (running folds) and segmented reductions.
+ *
+ * <p>
+ * Scans use a blocked up/down sweep: the input gets split into blocks, the
+ * totals of all blocks are folded in parallel, turned into block offsets
+ * sequentially and each block then gets rescanned in parallel seeded with its
+ * offset. This requires an <em>associative</em> fold step, i.e.
+ * <code>op(x, op(y, acc)) == op(op(x, y), acc)</code>; it does not need to be
+ * commutative. Each element gets folded twice, so scans only pay off for
+ * large inputs and cheap steps on more than two cores. Floating point results
+ * may differ from a sequential scan in the last bits due to the different
+ * evaluation order.
+ * </p>
+ *
+ * <p>
+ * The result of a scan contains the running fold <em>after</em> each element,
+ * i.e. <code>out[i] = op(in[i], out[i - 1])</code> with
+ * <code>out[-1] = initial</code>. Segmented reductions fold each segment
+ * sequentially and process segments in parallel.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ * @see com.github.rjeschke.neetutils.iterables.ParallelXIterable#scan(FnFoldStep)
+ */
+public final class Scans
+{
+    /** Minimum default block size. */
+    public final static int MIN_BLOCK_SIZE = 4096;
+
+    private Scans()
+    {
+        //
+    }
+
+    private static int blockSize(final int grain, final int size)
+    {
+        return grain < 1 ? Math.max(MIN_BLOCK_SIZE, Parallel.defaultGrain(size)) : grain;
+    }
+
+    private static int segmentGrain(final int values, final int segments)
+    {
+        if (segments == 0) return 1;
+        // Aim for about MIN_BLOCK_SIZE elements per task
+        return Math.max(1, Math.min(Parallel.defaultGrain(segments), (int)((long)MIN_BLOCK_SIZE * segments / Math.max(1, values))));
+    }
+
+    /**
+     * Parallel inclusive scan.
+     *
+     * @param list
+     *            The input list.
+     * @param op
+     *            Associative (thread-safe) fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new list containing the running folds.
+     */
+    public final static <A> List<A> scan(final List<? extends A> list, final FnFoldStep<? super A, A> op, final A initial)
+    {
+        return scan(list, op, initial, 0);
+    }
+
+    /**
+     * Parallel inclusive scan.
+     *
+     * @param list
+     *            The input list.
+     * @param op
+     *            Associative (thread-safe) fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @param grain
+     *            Block size, <code>0</code> for default.
+     * @return A new list containing the running folds.
+     */
+    @SuppressWarnings("unchecked")
+    public final static <A> List<A> scan(final List<? extends A> list, final FnFoldStep<? super A, A> op, final A initial, final int grain)
+    {
+        final List<? extends A> in = list instanceof RandomAccess ? list : new ArrayList<A>(list);
+        final Object[] out = new Object[in.size()];
+        scan(in, 0, out, 0, op, initial, grain);
+        return (List<A>)Arrays.asList(out);
+    }
+
+    /**
+     * Parallel inclusive scan of <code>in[from, size)</code> into
+     * <code>out[at, ...)</code>.
+     *
+     * @param in
+     *            The input, should be a RandomAccess list.
+     * @param from
+     *            Start index in <code>in</code>.
+     * @param out
+     *            The output.
+     * @param at
+     *            Start index in <code>out</code>.
+     * @param op
+     *            Associative (thread-safe) fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @param grain
+     *            Block size, <code>0</code> for default.
+     */
+    @SuppressWarnings("unchecked")
+    public final static <A> void scan(final List<? extends A> in, final int from, final Object[] out, final int at, final FnFoldStep<? super A, A> op,
+            final A initial, final int grain)
+    {
+        final int n = in.size() - from;
+        final int block = blockSize(grain, n);
+        final int blocks = (n + block - 1) / block;
+
+        if (blocks < 2)
+        {
+            A acc = initial;
+            for (int i = 0; i < n; i++)
+                out[at + i] = acc = op.applyFoldStep(in.get(from + i), acc);
+            return;
+        }
+
+        final Object[] offsets = new Object[blocks];
+        Parallel.forRange(0, blocks - 1, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int lo, final int hi)
+            {
+                for (int b = lo; b < hi; b++)
+                {
+                    final int end = from + Math.min(n, (b + 1) * block);
+                    int i = from + b * block;
+                    A acc = in.get(i++);
+                    for (; i < end; i++)
+                        acc = op.applyFoldStep(in.get(i), acc);
+                    offsets[b] = acc;
+                }
+            }
+        });
+
+        A acc = initial;
+        for (int b = 0; b < blocks - 1; b++)
+        {
+            final A total = (A)offsets[b];
+            offsets[b] = acc;
+            acc = op.applyFoldStep(total, acc);
+        }
+        offsets[blocks - 1] = acc;
+
+        Parallel.forRange(0, blocks, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int lo, final int hi)
+            {
+                for (int b = lo; b < hi; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    A a = (A)offsets[b];
+                    for (int i = b * block; i < end; i++)
+                        out[at + i] = a = op.applyFoldStep(in.get(from + i), a);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces all segments of <code>list</code> in parallel.
+     *
+     * @param list
+     *            The input list.
+     * @param offsets
+     *            Segment boundaries, segment <code>k</code> is
+     *            <code>[offsets[k], offsets[k + 1])</code>.
+     * @param op
+     *            (Thread-safe) fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value of each segment.
+     * @return The segment results, <code>offsets.length - 1</code> values.
+     */
+    @SuppressWarnings("unchecked")
+    public final static <A, B> List<B> reduceSegments(final List<? extends A> list, final int[] offsets, final FnFoldStep<? super A, B> op,
+            final B initial)
+    {
+        final List<? extends A> in = list instanceof RandomAccess ? list : new ArrayList<A>(list);
+        final Object[] out = new Object[Math.max(0, offsets.length - 1)];
+        Parallel.forRange(0, out.length, segmentGrain(in.size(), out.length), new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int s = from; s < to; s++)
+                {
+                    B acc = initial;
+                    for (int i = offsets[s], end = offsets[s + 1]; i < end; i++)
+                        acc = op.applyFoldStep(in.get(i), acc);
+                    out[s] = acc;
+                }
+            }
+        });
+        return (List<B>)Arrays.asList(out);
+    }
+
+    /**
+     * Parallel inclusive scan of <code>int</code> values.
+     *
+     * @param values
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new array containing the running folds.
+     */
+    public final static int[] scan(final int[] values, final FnIntFoldStep op, final int initial)
+    {
+        final int[] out = new int[values.length];
+        scan(values, out, op, initial, 0);
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of a IntList.
+     *
+     * @param list
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new list containing the running folds.
+     */
+    public final static IntList scan(final IntList list, final FnIntFoldStep op, final int initial)
+    {
+        final int[] values = list.toArray();
+        scan(values, values, op, initial, 0);
+        return IntList.fromArray(values);
+    }
+
+    /**
+     * Parallel inclusive scan of <code>int</code> values,
+     * <code>src == dst</code> is permitted.
+     *
+     * @param src
+     *            The input.
+     * @param dst
+     *            The output, at least as long as <code>src</code>.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @param grain
+     *            Block size, <code>0</code> for default.
+     */
+    public final static void scan(final int[] src, final int[] dst, final FnIntFoldStep op, final int initial, final int grain)
+    {
+        final int n = src.length;
+        final int block = blockSize(grain, n);
+        final int blocks = (n + block - 1) / block;
+
+        if (blocks < 2)
+        {
+            int acc = initial;
+            for (int i = 0; i < n; i++)
+                dst[i] = acc = op.applyFoldStep(src[i], acc);
+            return;
+        }
+
+        // Up-sweep: block totals, the last block's total is never needed
+        final int[] offsets = new int[blocks];
+        Parallel.forRange(0, blocks - 1, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    int i = b * block;
+                    int acc = src[i++];
+                    for (; i < end; i++)
+                        acc = op.applyFoldStep(src[i], acc);
+                    offsets[b] = acc;
+                }
+            }
+        });
+
+        // Exclusive prefix of block totals
+        int acc = initial;
+        for (int b = 0; b < blocks - 1; b++)
+        {
+            final int total = offsets[b];
+            offsets[b] = acc;
+            acc = op.applyFoldStep(total, acc);
+        }
+        offsets[blocks - 1] = acc;
+
+        // Down-sweep: rescan each block seeded with its offset
+        Parallel.forRange(0, blocks, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    int a = offsets[b];
+                    for (int i = b * block; i < end; i++)
+                        dst[i] = a = op.applyFoldStep(src[i], a);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces all segments of <code>values</code> in parallel.
+     *
+     * @param values
+     *            The input.
+     * @param offsets
+     *            Segment boundaries, segment <code>k</code> is
+     *            <code>[offsets[k], offsets[k + 1])</code>.
+     * @param op
+     *            Fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value of each segment.
+     * @return The segment results, <code>offsets.length - 1</code> values.
+     */
+    public final static int[] reduceSegments(final int[] values, final int[] offsets, final FnIntFoldStep op, final int initial)
+    {
+        final int[] out = new int[Math.max(0, offsets.length - 1)];
+        Parallel.forRange(0, out.length, segmentGrain(values.length, out.length), new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int s = from; s < to; s++)
+                {
+                    int acc = initial;
+                    for (int i = offsets[s], end = offsets[s + 1]; i < end; i++)
+                        acc = op.applyFoldStep(values[i], acc);
+                    out[s] = acc;
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of <code>long</code> values.
+     *
+     * @param values
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new array containing the running folds.
+     */
+    public final static long[] scan(final long[] values, final FnLongFoldStep op, final long initial)
+    {
+        final long[] out = new long[values.length];
+        scan(values, out, op, initial, 0);
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of a LongList.
+     *
+     * @param list
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new list containing the running folds.
+     */
+    public final static LongList scan(final LongList list, final FnLongFoldStep op, final long initial)
+    {
+        final long[] values = list.toArray();
+        scan(values, values, op, initial, 0);
+        return LongList.fromArray(values);
+    }
+
+    /**
+     * Parallel inclusive scan of <code>long</code> values,
+     * <code>src == dst</code> is permitted.
+     *
+     * @param src
+     *            The input.
+     * @param dst
+     *            The output, at least as long as <code>src</code>.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @param grain
+     *            Block size, <code>0</code> for default.
+     */
+    public final static void scan(final long[] src, final long[] dst, final FnLongFoldStep op, final long initial, final int grain)
+    {
+        final int n = src.length;
+        final int block = blockSize(grain, n);
+        final int blocks = (n + block - 1) / block;
+
+        if (blocks < 2)
+        {
+            long acc = initial;
+            for (int i = 0; i < n; i++)
+                dst[i] = acc = op.applyFoldStep(src[i], acc);
+            return;
+        }
+
+        // Up-sweep: block totals, the last block's total is never needed
+        final long[] offsets = new long[blocks];
+        Parallel.forRange(0, blocks - 1, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    int i = b * block;
+                    long acc = src[i++];
+                    for (; i < end; i++)
+                        acc = op.applyFoldStep(src[i], acc);
+                    offsets[b] = acc;
+                }
+            }
+        });
+
+        // Exclusive prefix of block totals
+        long acc = initial;
+        for (int b = 0; b < blocks - 1; b++)
+        {
+            final long total = offsets[b];
+            offsets[b] = acc;
+            acc = op.applyFoldStep(total, acc);
+        }
+        offsets[blocks - 1] = acc;
+
+        // Down-sweep: rescan each block seeded with its offset
+        Parallel.forRange(0, blocks, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    long a = offsets[b];
+                    for (int i = b * block; i < end; i++)
+                        dst[i] = a = op.applyFoldStep(src[i], a);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces all segments of <code>values</code> in parallel.
+     *
+     * @param values
+     *            The input.
+     * @param offsets
+     *            Segment boundaries, segment <code>k</code> is
+     *            <code>[offsets[k], offsets[k + 1])</code>.
+     * @param op
+     *            Fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value of each segment.
+     * @return The segment results, <code>offsets.length - 1</code> values.
+     */
+    public final static long[] reduceSegments(final long[] values, final int[] offsets, final FnLongFoldStep op, final long initial)
+    {
+        final long[] out = new long[Math.max(0, offsets.length - 1)];
+        Parallel.forRange(0, out.length, segmentGrain(values.length, out.length), new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int s = from; s < to; s++)
+                {
+                    long acc = initial;
+                    for (int i = offsets[s], end = offsets[s + 1]; i < end; i++)
+                        acc = op.applyFoldStep(values[i], acc);
+                    out[s] = acc;
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of <code>float</code> values.
+     *
+     * @param values
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new array containing the running folds.
+     */
+    public final static float[] scan(final float[] values, final FnFloatFoldStep op, final float initial)
+    {
+        final float[] out = new float[values.length];
+        scan(values, out, op, initial, 0);
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of a FloatList.
+     *
+     * @param list
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new list containing the running folds.
+     */
+    public final static FloatList scan(final FloatList list, final FnFloatFoldStep op, final float initial)
+    {
+        final float[] values = list.toArray();
+        scan(values, values, op, initial, 0);
+        return FloatList.fromArray(values);
+    }
+
+    /**
+     * Parallel inclusive scan of <code>float</code> values,
+     * <code>src == dst</code> is permitted.
+     *
+     * @param src
+     *            The input.
+     * @param dst
+     *            The output, at least as long as <code>src</code>.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @param grain
+     *            Block size, <code>0</code> for default.
+     */
+    public final static void scan(final float[] src, final float[] dst, final FnFloatFoldStep op, final float initial, final int grain)
+    {
+        final int n = src.length;
+        final int block = blockSize(grain, n);
+        final int blocks = (n + block - 1) / block;
+
+        if (blocks < 2)
+        {
+            float acc = initial;
+            for (int i = 0; i < n; i++)
+                dst[i] = acc = op.applyFoldStep(src[i], acc);
+            return;
+        }
+
+        // Up-sweep: block totals, the last block's total is never needed
+        final float[] offsets = new float[blocks];
+        Parallel.forRange(0, blocks - 1, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    int i = b * block;
+                    float acc = src[i++];
+                    for (; i < end; i++)
+                        acc = op.applyFoldStep(src[i], acc);
+                    offsets[b] = acc;
+                }
+            }
+        });
+
+        // Exclusive prefix of block totals
+        float acc = initial;
+        for (int b = 0; b < blocks - 1; b++)
+        {
+            final float total = offsets[b];
+            offsets[b] = acc;
+            acc = op.applyFoldStep(total, acc);
+        }
+        offsets[blocks - 1] = acc;
+
+        // Down-sweep: rescan each block seeded with its offset
+        Parallel.forRange(0, blocks, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    float a = offsets[b];
+                    for (int i = b * block; i < end; i++)
+                        dst[i] = a = op.applyFoldStep(src[i], a);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces all segments of <code>values</code> in parallel.
+     *
+     * @param values
+     *            The input.
+     * @param offsets
+     *            Segment boundaries, segment <code>k</code> is
+     *            <code>[offsets[k], offsets[k + 1])</code>.
+     * @param op
+     *            Fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value of each segment.
+     * @return The segment results, <code>offsets.length - 1</code> values.
+     */
+    public final static float[] reduceSegments(final float[] values, final int[] offsets, final FnFloatFoldStep op, final float initial)
+    {
+        final float[] out = new float[Math.max(0, offsets.length - 1)];
+        Parallel.forRange(0, out.length, segmentGrain(values.length, out.length), new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int s = from; s < to; s++)
+                {
+                    float acc = initial;
+                    for (int i = offsets[s], end = offsets[s + 1]; i < end; i++)
+                        acc = op.applyFoldStep(values[i], acc);
+                    out[s] = acc;
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of <code>double</code> values.
+     *
+     * @param values
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new array containing the running folds.
+     */
+    public final static double[] scan(final double[] values, final FnDoubleFoldStep op, final double initial)
+    {
+        final double[] out = new double[values.length];
+        scan(values, out, op, initial, 0);
+        return out;
+    }
+
+    /**
+     * Parallel inclusive scan of a DoubleList.
+     *
+     * @param list
+     *            The input.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @return A new list containing the running folds.
+     */
+    public final static DoubleList scan(final DoubleList list, final FnDoubleFoldStep op, final double initial)
+    {
+        final double[] values = list.toArray();
+        scan(values, values, op, initial, 0);
+        return DoubleList.fromArray(values);
+    }
+
+    /**
+     * Parallel inclusive scan of <code>double</code> values,
+     * <code>src == dst</code> is permitted.
+     *
+     * @param src
+     *            The input.
+     * @param dst
+     *            The output, at least as long as <code>src</code>.
+     * @param op
+     *            Associative fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value.
+     * @param grain
+     *            Block size, <code>0</code> for default.
+     */
+    public final static void scan(final double[] src, final double[] dst, final FnDoubleFoldStep op, final double initial, final int grain)
+    {
+        final int n = src.length;
+        final int block = blockSize(grain, n);
+        final int blocks = (n + block - 1) / block;
+
+        if (blocks < 2)
+        {
+            double acc = initial;
+            for (int i = 0; i < n; i++)
+                dst[i] = acc = op.applyFoldStep(src[i], acc);
+            return;
+        }
+
+        // Up-sweep: block totals, the last block's total is never needed
+        final double[] offsets = new double[blocks];
+        Parallel.forRange(0, blocks - 1, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    int i = b * block;
+                    double acc = src[i++];
+                    for (; i < end; i++)
+                        acc = op.applyFoldStep(src[i], acc);
+                    offsets[b] = acc;
+                }
+            }
+        });
+
+        // Exclusive prefix of block totals
+        double acc = initial;
+        for (int b = 0; b < blocks - 1; b++)
+        {
+            final double total = offsets[b];
+            offsets[b] = acc;
+            acc = op.applyFoldStep(total, acc);
+        }
+        offsets[blocks - 1] = acc;
+
+        // Down-sweep: rescan each block seeded with its offset
+        Parallel.forRange(0, blocks, 1, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int b = from; b < to; b++)
+                {
+                    final int end = Math.min(n, (b + 1) * block);
+                    double a = offsets[b];
+                    for (int i = b * block; i < end; i++)
+                        dst[i] = a = op.applyFoldStep(src[i], a);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces all segments of <code>values</code> in parallel.
+     *
+     * @param values
+     *            The input.
+     * @param offsets
+     *            Segment boundaries, segment <code>k</code> is
+     *            <code>[offsets[k], offsets[k + 1])</code>.
+     * @param op
+     *            Fold step (element, accumulator).
+     * @param initial
+     *            The initial accumulator value of each segment.
+     * @return The segment results, <code>offsets.length - 1</code> values.
+     */
+    public final static double[] reduceSegments(final double[] values, final int[] offsets, final FnDoubleFoldStep op, final double initial)
+    {
+        final double[] out = new double[Math.max(0, offsets.length - 1)];
+        Parallel.forRange(0, out.length, segmentGrain(values.length, out.length), new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int s = from; s < to; s++)
+                {
+                    double acc = initial;
+                    for (int i = offsets[s], end = offsets[s + 1]; i < end; i++)
+                        acc = op.applyFoldStep(values[i], acc);
+                    out[s] = acc;
+                }
+            }
+        });
+        return out;
+    }
+}
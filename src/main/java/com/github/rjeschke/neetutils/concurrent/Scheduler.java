@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.rjeschke.neetutils.SysUtils;
+import com.github.rjeschke.neetutils.Timer;
+import com.github.rjeschke.neetutils.collections.BinaryHeap;
+
+/**
+ * Heap based scheduler multiplexing many one-shot and periodic tasks onto a
+ * few threads.
+ *
+ * <p>
+ * Periodic tasks are fixed-rate and drift-free: the n-th execution is
+ * scheduled at <code>start + n * period</code>, computed in nanoseconds.
+ * Ticks which are missed completely (because the callback or other callbacks
+ * took too long) are dropped instead of being executed in a burst. Threads
+ * block until shortly before a deadline and spin the remaining
+ * {@link #SPIN_NANOS} to achieve sub-millisecond precision.
+ * </p>
+ *
+ * <p>
+ * Callbacks run on the scheduler threads and should therefore be short;
+ * longer work should be handed off to a {@link ThreadPool}.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class Scheduler implements Runnable
+{
+    /** Time in nanoseconds a scheduler thread spins before a deadline. */
+    public final static long                 SPIN_NANOS = 50000L;
+    private final static AtomicLong          SEQUENCE   = new AtomicLong();
+    private final ReentrantLock              lock       = new ReentrantLock();
+    private final Condition                  available  = this.lock.newCondition();
+    private final BinaryHeap<Scheduler.Task> heap       = new BinaryHeap<>(BinaryHeap.Type.MIN);
+    private final Thread[]                   threads;
+    private volatile boolean                 running    = true;
+
+    private Scheduler(final int threads)
+    {
+        this.threads = new Thread[threads];
+    }
+
+    private final static class Holder
+    {
+        final static Scheduler SHARED = Scheduler.start(Math.max(2, ThreadPool.availableProcessors() / 4));
+    }
+
+    /**
+     * Returns the shared scheduler, which gets started on first use.
+     *
+     * @return The shared scheduler.
+     */
+    public static Scheduler shared()
+    {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Starts a new scheduler.
+     *
+     * @param threads
+     *            Number of threads, values less than 1 select the number of
+     *            available processors.
+     * @return The scheduler.
+     */
+    public static Scheduler start(final int threads)
+    {
+        final Scheduler scheduler = new Scheduler(ThreadPool.defaultThreadcount(threads));
+
+        for (int i = 0; i < scheduler.threads.length; i++)
+        {
+            final Thread t = new Thread(scheduler);
+            t.setDaemon(true);
+            t.start();
+            scheduler.threads[i] = t;
+        }
+
+        return scheduler;
+    }
+
+    public int threadCount()
+    {
+        return this.threads.length;
+    }
+
+    /**
+     * @return The number of scheduled (including cancelled but not yet
+     *         purged) tasks.
+     */
+    public int size()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.heap.size();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Schedules a one-shot job.
+     *
+     * @param job
+     *            The job.
+     * @param delay
+     *            The delay.
+     * @param unit
+     *            Unit of <code>delay</code>.
+     * @return The task handle.
+     */
+    public Task schedule(final Runnable job, final long delay, final TimeUnit unit)
+    {
+        return this.enqueue(new Task(job, System.nanoTime() + unit.toNanos(delay), 0));
+    }
+
+    /**
+     * Schedules a periodic job.
+     *
+     * @param job
+     *            The job.
+     * @param initialDelay
+     *            Delay of the first execution.
+     * @param period
+     *            The period.
+     * @param unit
+     *            Unit of <code>initialDelay</code> and <code>period</code>.
+     * @return The task handle.
+     */
+    public Task scheduleAtFixedRate(final Runnable job, final long initialDelay, final long period, final TimeUnit unit)
+    {
+        if (period <= 0) throw new IllegalArgumentException("Period must be greater than zero");
+        return this.enqueue(new Task(job, System.nanoTime() + unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    /**
+     * Schedules a periodic job with the given frequency, the first execution
+     * happens immediately.
+     *
+     * @param job
+     *            The job.
+     * @param freq
+     *            Frequency in Hz.
+     * @return The task handle.
+     */
+    public Task scheduleAtFrequency(final Runnable job, final double freq)
+    {
+        if (!(freq > 0)) throw new IllegalArgumentException("Frequency must be greater than zero");
+        return this.enqueue(new Task(job, System.nanoTime(), 1000000000.0 / freq));
+    }
+
+    /**
+     * Schedules a periodic Timer callback with the given frequency, the first
+     * execution happens immediately.
+     *
+     * @param callback
+     *            The callback.
+     * @param freq
+     *            Frequency in Hz.
+     * @return The task handle.
+     */
+    public Task scheduleAtFrequency(final Timer.Callback callback, final double freq)
+    {
+        return this.scheduleAtFrequency(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                callback.timerCallback();
+            }
+        }, freq);
+    }
+
+    private Task enqueue(final Task task)
+    {
+        if (task.job == null) throw new NullPointerException("A null job is not permitted");
+        if (!this.running) throw new IllegalStateException("Scheduler is stopped");
+
+        this.lock.lock();
+        try
+        {
+            this.heap.put(task);
+            if (this.heap.get() == task) this.available.signal();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+        return task;
+    }
+
+    /**
+     * Stops all scheduler threads and discards all pending tasks.
+     */
+    public void stop()
+    {
+        this.lock.lock();
+        try
+        {
+            this.running = false;
+            this.available.signalAll();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+
+        for (int i = 0; i < this.threads.length; i++)
+            SysUtils.threadJoin(this.threads[i]);
+
+        this.lock.lock();
+        try
+        {
+            this.heap.clear();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    private Task next()
+    {
+        this.lock.lock();
+        try
+        {
+            for (;;)
+            {
+                if (!this.running) return null;
+                final Task task = this.heap.get();
+                if (task == null)
+                {
+                    this.available.awaitUninterruptibly();
+                    continue;
+                }
+                if (task.cancelled)
+                {
+                    this.heap.remove();
+                    continue;
+                }
+                final long delay = task.time - System.nanoTime();
+                if (delay <= SPIN_NANOS)
+                {
+                    this.heap.remove();
+                    if (!this.heap.isEmpty()) this.available.signal();
+                    return task;
+                }
+                try
+                {
+                    this.available.awaitNanos(delay - SPIN_NANOS);
+                }
+                catch (final InterruptedException e)
+                {
+                    // ignore
+                }
+            }
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        for (;;)
+        {
+            final Task task = this.next();
+            if (task == null) break;
+
+            while (task.time - System.nanoTime() > 0)
+                Thread.yield();
+
+            if (task.cancelled) continue;
+
+            try
+            {
+                task.job.run();
+            }
+            catch (final Throwable t)
+            {
+                t.printStackTrace();
+            }
+
+            if (task.period > 0 && !task.cancelled && this.running)
+            {
+                task.advance(System.nanoTime());
+                this.lock.lock();
+                try
+                {
+                    this.heap.put(task);
+                    if (this.heap.get() == task) this.available.signal();
+                }
+                finally
+                {
+                    this.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled job.
+     *
+     * @author René Jeschke (rene_jeschke@yahoo.de)
+     */
+    public final static class Task implements Comparable<Task>
+    {
+        final Runnable   job;
+        final long       start;
+        final double     period;
+        final long       sequence  = SEQUENCE.getAndIncrement();
+        long             time;
+        long             runs      = 0;
+        volatile boolean cancelled = false;
+
+        Task(final Runnable job, final long start, final double period)
+        {
+            this.job = job;
+            this.start = start;
+            this.time = start;
+            this.period = period;
+        }
+
+        void advance(final long now)
+        {
+            this.runs++;
+            this.time = this.start + (long)(this.runs * this.period);
+            if (now - this.time > (long)this.period)
+            {
+                // Drop missed ticks, but stay in phase
+                this.runs = (long)((now - this.start) / this.period) + 1;
+                this.time = this.start + (long)(this.runs * this.period);
+            }
+        }
+
+        /**
+         * Cancels this task. A currently running execution is not affected.
+         */
+        public void cancel()
+        {
+            this.cancelled = true;
+        }
+
+        public boolean isCancelled()
+        {
+            return this.cancelled;
+        }
+
+        @Override
+        public int compareTo(final Task o)
+        {
+            if (this.time != o.time) return this.time - o.time < 0 ? -1 : 1;
+            return this.sequence < o.sequence ? -1 : (this.sequence > o.sequence ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.rjeschke.neetutils.SysUtils;
+
+/**
+ * Keyed variant of {@link WorkerPool}: every thread owns a bounded job queue
+ * (shard) and jobs enqueued with the same key always run on the same thread,
+ * in submission order.
+ *
+ * <p>
+ * This allows using non-thread-safe, stateful workers (e.g. per-channel audio
+ * filters) without any synchronization, as long as each one is only used with
+ * a single key. The hot path is lock-free: producers claim a slot in the
+ * shard's {@link MPSCRingBuffer}, the shard thread spins shortly when running
+ * out of work and parks afterwards. Producers wait (using the given
+ * {@link WaitStrategy}) if a shard's queue is full. Per-key ordering is only
+ * guaranteed for jobs enqueued by the same thread.
+ * </p>
+ *
+ * <p>
+ * Callbacks run on the shard thread right after each job.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <T>
+ */
+public class ShardedWorkerPool<T>
+{
+    /** Number of empty polls before a shard thread parks. */
+    private final static int               SPINS   = 256;
+    private final Shard<T>[]               shards;
+    private final ShardedWorkerCallback<T> callback;
+    volatile PoolMetrics                   metrics = null;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ShardedWorkerPool(final ShardedWorkerCallback<T> callback, final int threads, final int queueCapacity, final WaitStrategy waitStrategy)
+    {
+        this.callback = callback;
+        this.shards = new Shard[threads];
+        for (int i = 0; i < threads; i++)
+            this.shards[i] = new Shard<>(this, i, queueCapacity, waitStrategy);
+    }
+
+    /**
+     * Starts a new pool.
+     *
+     * @param callback
+     *            The callback, may be <code>null</code>.
+     * @param threads
+     *            Number of threads (shards), values less than 1 select the
+     *            number of available processors.
+     * @param queueCapacity
+     *            Capacity of each shard's queue, gets rounded up to the next
+     *            power of two.
+     * @return The pool.
+     */
+    public static <T> ShardedWorkerPool<T> start(final ShardedWorkerCallback<T> callback, final int threads, final int queueCapacity)
+    {
+        return start(callback, threads, queueCapacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * Starts a new pool.
+     *
+     * @param callback
+     *            The callback, may be <code>null</code>.
+     * @param threads
+     *            Number of threads (shards), values less than 1 select the
+     *            number of available processors.
+     * @param queueCapacity
+     *            Capacity of each shard's queue, gets rounded up to the next
+     *            power of two.
+     * @param waitStrategy
+     *            Strategy used by producers waiting for a full queue.
+     * @return The pool.
+     */
+    public static <T> ShardedWorkerPool<T> start(final ShardedWorkerCallback<T> callback, final int threads, final int queueCapacity,
+            final WaitStrategy waitStrategy)
+    {
+        final ShardedWorkerPool<T> pool = new ShardedWorkerPool<>(callback, ThreadPool.defaultThreadcount(threads), queueCapacity, waitStrategy);
+
+        for (final Shard<T> s : pool.shards)
+        {
+            final Thread t = new Thread(s, "ShardedWorkerPool-" + s.index);
+            t.setDaemon(true);
+            s.thread = t;
+            t.start();
+        }
+
+        return pool;
+    }
+
+    public int threadCount()
+    {
+        return this.shards.length;
+    }
+
+    /**
+     * Enables metrics collection for this pool.
+     *
+     * @param timing
+     *            Whether to record time-in-queue and execution times.
+     * @return The metrics.
+     */
+    public PoolMetrics enableMetrics(final boolean timing)
+    {
+        int depth = 0;
+        for (final Shard<T> s : this.shards)
+            depth += s.queue.size();
+        final PoolMetrics m = new PoolMetrics("ShardedWorkerPool", this.shards.length, timing, depth);
+        this.metrics = m;
+        return m;
+    }
+
+    /**
+     * Disables metrics collection.
+     */
+    public void disableMetrics()
+    {
+        this.metrics = null;
+    }
+
+    /**
+     * @return The current metrics or {@code null} if disabled.
+     */
+    public PoolMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the shard the given key maps to.
+     *
+     * @param key
+     *            The key.
+     * @return The shard index.
+     */
+    public int shardFor(final Object key)
+    {
+        final int h = key.hashCode() * 0x9e3779b9;
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % this.shards.length;
+    }
+
+    /**
+     * Enqueues a job on the shard of the given key, waiting if the shard's
+     * queue is full.
+     *
+     * @param key
+     *            The key.
+     * @param worker
+     *            The worker.
+     * @param object
+     *            The worker's argument.
+     */
+    public void enqueue(final Object key, final Worker<T> worker, final T object)
+    {
+        this.enqueueOnShard(this.shardFor(key), worker, object);
+    }
+
+    /**
+     * Enqueues a job on the given shard, waiting if the shard's queue is full.
+     *
+     * @param shard
+     *            The shard index.
+     * @param worker
+     *            The worker.
+     * @param object
+     *            The worker's argument.
+     */
+    public void enqueueOnShard(final int shard, final Worker<T> worker, final T object)
+    {
+        if (worker == null) throw new NullPointerException("A null Worker is not permitted");
+        final Shard<T> s = this.shards[shard];
+        if (s.stopped) throw new IllegalStateException("Pool is stopped");
+        final WorkerPool.Job<T> job = new WorkerPool.Job<>(worker, object);
+        final PoolMetrics m = this.metrics;
+        if (m != null) job.enqueueTime = m.timestamp();
+        s.queue.put(job);
+        if (m != null) m.jobEnqueued(true);
+        s.signal();
+    }
+
+    /**
+     * Enqueues a job on the shard of the given key if there is space left.
+     *
+     * @param key
+     *            The key.
+     * @param worker
+     *            The worker.
+     * @param object
+     *            The worker's argument.
+     * @return {@code true} on success.
+     */
+    public boolean tryEnqueue(final Object key, final Worker<T> worker, final T object)
+    {
+        if (worker == null) throw new NullPointerException("A null Worker is not permitted");
+        final Shard<T> s = this.shards[this.shardFor(key)];
+        if (s.stopped) throw new IllegalStateException("Pool is stopped");
+        final WorkerPool.Job<T> job = new WorkerPool.Job<>(worker, object);
+        final PoolMetrics m = this.metrics;
+        if (m != null) job.enqueueTime = m.timestamp();
+        if (!s.queue.offer(job)) return false;
+        if (m != null) m.jobEnqueued(true);
+        s.signal();
+        return true;
+    }
+
+    /**
+     * @return {@code true} if any shard has queued jobs.
+     */
+    public boolean hasWork()
+    {
+        for (final Shard<T> s : this.shards)
+        {
+            if (!s.queue.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits until all jobs enqueued before this call are finished.
+     */
+    public void join()
+    {
+        for (final Shard<T> s : this.shards)
+        {
+            final long target = s.queue.produced();
+            while (s.done < target && !s.stopped)
+                SysUtils.fineSleep(1);
+        }
+    }
+
+    /**
+     * Finishes all queued jobs and stops all threads.
+     */
+    public void stop()
+    {
+        this.join();
+        for (final Shard<T> s : this.shards)
+        {
+            s.stopped = true;
+            LockSupport.unpark(s.thread);
+        }
+        for (final Shard<T> s : this.shards)
+            SysUtils.threadJoin(s.thread);
+    }
+
+    void doCallback(final int shard, final WorkerStatus status, final Worker<T> worker, final T object)
+    {
+        if (this.callback == null) return;
+        try
+        {
+            this.callback.workerCallback(this, shard, status, worker, object);
+        }
+        catch (final Throwable t)
+        {
+            //
+        }
+    }
+
+    private final static class Shard<T> implements Runnable
+    {
+        final ShardedWorkerPool<T>              pool;
+        final int                               index;
+        final MPSCRingBuffer<WorkerPool.Job<T>> queue;
+        Thread                                  thread;
+        volatile boolean                        waiting = false;
+        volatile boolean                        stopped = false;
+        volatile long                           done    = 0;
+
+        public Shard(final ShardedWorkerPool<T> pool, final int index, final int queueCapacity, final WaitStrategy waitStrategy)
+        {
+            this.pool = pool;
+            this.index = index;
+            this.queue = new MPSCRingBuffer<>(queueCapacity, waitStrategy);
+        }
+
+        void signal()
+        {
+            if (this.waiting) LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void run()
+        {
+            int round = 0;
+            for (;;)
+            {
+                final WorkerPool.Job<T> job = this.queue.poll();
+                if (job == null)
+                {
+                    if (this.stopped && this.queue.isEmpty()) break;
+                    if (round < SPINS)
+                    {
+                        round++;
+                        Thread.yield();
+                        continue;
+                    }
+                    // Producers check 'waiting' after publishing, so either
+                    // they see it set or we see their element
+                    this.waiting = true;
+                    if (this.queue.isEmpty() && !this.stopped) LockSupport.park(this);
+                    this.waiting = false;
+                    continue;
+                }
+                round = 0;
+
+                boolean ok = true;
+                Throwable ta = null;
+                final PoolMetrics m = this.pool.metrics;
+                long t0 = 0;
+                if (m != null)
+                {
+                    m.jobDequeued();
+                    t0 = m.jobStarted(job.enqueueTime);
+                }
+                try
+                {
+                    job.worker.run(job.object);
+                }
+                catch (final Throwable t)
+                {
+                    ta = t;
+                    ok = false;
+                }
+                if (m != null) m.jobFinished(t0, ok);
+
+                this.pool.doCallback(this.index, ok ? WorkerStatus.OK : new WorkerStatus(ta), job.worker, job.object);
+                this.done++;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped long counter for write-heavy statistics (comparable to Java 8's
+ * LongAdder). Each thread updates one of several cache line padded cells,
+ * reading sums up all cells.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class StripedCounter
+{
+    /** Distance between two cells in longs (64 bytes). */
+    private final static int      PAD = 8;
+    private final AtomicLongArray cells;
+    private final int             mask;
+
+    /**
+     * Constructor.
+     */
+    public StripedCounter()
+    {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() * 2)
+            n <<= 1;
+        this.mask = n - 1;
+        this.cells = new AtomicLongArray((n + 1) * PAD);
+    }
+
+    private int cell()
+    {
+        final long id = Thread.currentThread().getId();
+        return (((int)id ^ (int)(id >>> 32)) & this.mask) * PAD + PAD;
+    }
+
+    /**
+     * Adds the given value.
+     *
+     * @param value
+     *            Value to add.
+     */
+    public void add(final long value)
+    {
+        this.cells.getAndAdd(this.cell(), value);
+    }
+
+    /**
+     * Increments by one.
+     */
+    public void increment()
+    {
+        this.cells.getAndIncrement(this.cell());
+    }
+
+    /**
+     * Returns the current sum. Concurrent updates may or may not be reflected.
+     *
+     * @return The sum.
+     */
+    public long sum()
+    {
+        long sum = 0;
+        for (int i = PAD; i < this.cells.length(); i += PAD)
+            sum += this.cells.get(i);
+        return sum;
+    }
+
+    /**
+     * Resets all cells to zero.
+     */
+    public void reset()
+    {
+        for (int i = PAD; i < this.cells.length(); i += PAD)
+            this.cells.set(i, 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Long.toString(this.sum());
+    }
+}
@@ -15,7 +15,13 @@
  */
 package com.github.rjeschke.neetutils.concurrent;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 
 import com.github.rjeschke.neetutils.SysUtils;
@@ -25,7 +31,7 @@ import com.github.rjeschke.neetutils.SysUtils;
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
  */
-public class ThreadPool implements RequeueWatcherCallback<Runnable, ThreadPool.ThreadWorker>
+public class ThreadPool implements Executor, RequeueWatcherCallback<Runnable, ThreadPool.ThreadWorker>
 {
     private final int                                 numThreads;
     private final int                                 queueLimit;
@@ -33,6 +39,7 @@ public class ThreadPool implements RequeueWatcherCallback<Runnable, ThreadPool.T
     private final ConcurrentLinkedQueue<Runnable>     jobs    = new ConcurrentLinkedQueue<>();
     private final Thread[]                            threads;
     private RequeueWatcher<Runnable, ThreadWorker>    watcher;
+    volatile PoolMetrics                              metrics = null;
 
     private ThreadPool(final int threads, final int queueLimit)
     {
@@ -75,14 +82,47 @@ public class ThreadPool implements RequeueWatcherCallback<Runnable, ThreadPool.T
         return this.numThreads;
     }
 
+    /**
+     * Enables metrics collection for this pool.
+     *
+     * @param timing
+     *            Whether to record time-in-queue and execution times.
+     * @return The metrics.
+     */
+    public PoolMetrics enableMetrics(final boolean timing)
+    {
+        final PoolMetrics m = new PoolMetrics("ThreadPool", this.numThreads, timing, this.jobs.size());
+        this.metrics = m;
+        return m;
+    }
+
+    /**
+     * Disables metrics collection.
+     */
+    public void disableMetrics()
+    {
+        this.metrics = null;
+    }
+
+    /**
+     * @return The current metrics or {@code null} if disabled.
+     */
+    public PoolMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
     public void enqueue(final Runnable job)
     {
         if (job == null) throw new NullPointerException("A null Runnable is not permitted");
 
+        final PoolMetrics m = job instanceof StopWorker ? null : this.metrics;
+        final Runnable j = m != null && m.isTiming() ? new TimedJob(job, m.timestamp()) : job;
         final ThreadWorker w = this.workers.poll();
         if (w != null)
         {
-            w.setWorkLoad(job);
+            if (m != null) m.jobEnqueued(false);
+            w.setWorkLoad(j);
         }
         else
         {
@@ -92,17 +132,102 @@ public class ThreadPool implements RequeueWatcherCallback<Runnable, ThreadPool.T
                 while (this.jobs.size() > ql)
                     SysUtils.fineSleep(5);
             }
-            this.jobs.offer(job);
+            if (m != null) m.jobEnqueued(true);
+            this.jobs.offer(j);
         }
     }
 
+    /**
+     * Same as {@link #enqueue(Runnable)}.
+     */
+    @Override
+    public void execute(final Runnable job)
+    {
+        this.enqueue(job);
+    }
+
+    /**
+     * Enqueues the given job and returns a future for its result.
+     *
+     * @param job
+     *            The job.
+     * @return The future.
+     */
+    public <T> JobFuture<T> submit(final Callable<T> job)
+    {
+        if (job == null) throw new NullPointerException("A null Callable is not permitted");
+
+        final JobFuture<T> future = new JobFuture<>(job);
+        this.enqueue(future);
+        return future;
+    }
+
+    /**
+     * Enqueues the given job and returns a future tracking its completion.
+     *
+     * @param job
+     *            The job.
+     * @return The future.
+     */
+    public JobFuture<Void> submit(final Runnable job)
+    {
+        if (job == null) throw new NullPointerException("A null Runnable is not permitted");
+
+        final JobFuture<Void> future = new JobFuture<>(job);
+        this.enqueue(future);
+        return future;
+    }
+
+    /**
+     * Enqueues all given jobs.
+     *
+     * @param jobs
+     *            The jobs.
+     * @return The futures, in iteration order of <code>jobs</code>.
+     */
+    public <T> List<JobFuture<T>> submitAll(final Collection<? extends Callable<T>> jobs)
+    {
+        final List<JobFuture<T>> futures = new ArrayList<>(jobs.size());
+        for (final Callable<T> job : jobs)
+            futures.add(this.submit(job));
+        return futures;
+    }
+
+    /**
+     * Enqueues all given jobs and waits for their results. Must not be called
+     * from inside a job running on this pool.
+     *
+     * @param jobs
+     *            The jobs.
+     * @return The results, in iteration order of <code>jobs</code>.
+     * @throws InterruptedException
+     *             if the calling thread got interrupted while waiting.
+     * @throws ExecutionException
+     *             if any of the jobs failed.
+     */
+    public <T> List<T> invokeAll(final Collection<? extends Callable<T>> jobs) throws InterruptedException, ExecutionException
+    {
+        return JobFuture.all(this.submitAll(jobs)).get();
+    }
+
     void reuseOrEnqueue(final ThreadWorker w)
     {
         final Runnable job = this.jobs.poll();
         if (job != null)
+        {
+            this.dequeued();
             w.setWorkLoad(job);
+        }
         else
+        {
             this.workers.offer(w);
+        }
+    }
+
+    private void dequeued()
+    {
+        final PoolMetrics m = this.metrics;
+        if (m != null) m.jobDequeued();
     }
 
     public boolean hasWork()
@@ -154,22 +279,53 @@ public class ThreadPool implements RequeueWatcherCallback<Runnable, ThreadPool.T
         {
             for (;;)
             {
+                this.sync.acquireUninterruptibly();
+                final Runnable job = this.workload;
+                if (job instanceof StopWorker) break;
+
+                final PoolMetrics m = this.pool.metrics;
+                final long t0 = m != null ? m.jobStarted(job instanceof TimedJob ? ((TimedJob)job).enqueueTime : 0) : 0;
+                boolean ok = true;
                 try
                 {
-                    this.sync.acquireUninterruptibly();
-                    if (this.workload instanceof StopWorker) break;
-                    this.workload.run();
+                    job.run();
                 }
                 catch (final Throwable t)
                 {
+                    ok = false;
                     t.printStackTrace();
                 }
+                if (m != null) m.jobFinished(t0, ok && !isFailedFuture(job));
 
                 this.pool.reuseOrEnqueue(this);
             }
         }
     }
 
+    static boolean isFailedFuture(final Runnable job)
+    {
+        final Runnable r = job instanceof TimedJob ? ((TimedJob)job).job : job;
+        return r instanceof JobFuture && ((JobFuture<?>)r).isFailed();
+    }
+
+    static class TimedJob implements Runnable
+    {
+        final Runnable job;
+        final long     enqueueTime;
+
+        public TimedJob(final Runnable job, final long enqueueTime)
+        {
+            this.job = job;
+            this.enqueueTime = enqueueTime;
+        }
+
+        @Override
+        public void run()
+        {
+            this.job.run();
+        }
+    }
+
     static class StopWorker implements Runnable
     {
         public StopWorker()
@@ -187,6 +343,7 @@ public class ThreadPool implements RequeueWatcherCallback<Runnable, ThreadPool.T
     @Override
     public void requeue(final ThreadWorker worker, final Runnable job)
     {
+        this.dequeued();
         worker.setWorkLoad(job);
     }
 }
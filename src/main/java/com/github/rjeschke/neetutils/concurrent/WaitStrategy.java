@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategies for waiting on ring buffers.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+public enum WaitStrategy
+{
+    /** Burn CPU, lowest latency. */
+    BUSY_SPIN,
+    /** Thread.yield() between retries. */
+    YIELD,
+    /** Spin/yield shortly, then park for increasing periods (up to 1ms). */
+    PARK;
+
+    /**
+     * Waits once.
+     *
+     * @param round
+     *            Number of unsuccessful retries so far.
+     */
+    public void idle(final int round)
+    {
+        switch (this)
+        {
+        case BUSY_SPIN:
+            break;
+        case YIELD:
+            Thread.yield();
+            break;
+        case PARK:
+            if (round < 64)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(Math.min(1000000L, 1000L << Math.min(10, (round - 64) >> 4)));
+            break;
+        }
+    }
+}
@@ -39,6 +39,7 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
     private final Thread[]                                                threads;
     private Thread                                                        callbackThread = null;
     private RequeueWatcher<WorkerPool.Job<T>, WorkerPool.ThreadWorker<T>> watcher;
+    volatile PoolMetrics                                                  metrics        = null;
 
     private WorkerPool(final WorkerCallback<T> callback, final int threads, final int queueLimit, final boolean serialCallbacks)
     {
@@ -87,14 +88,47 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
         return this.numThreads;
     }
 
+    /**
+     * Enables metrics collection for this pool.
+     *
+     * @param timing
+     *            Whether to record time-in-queue and execution times.
+     * @return The metrics.
+     */
+    public PoolMetrics enableMetrics(final boolean timing)
+    {
+        final PoolMetrics m = new PoolMetrics("WorkerPool", this.numThreads, timing, this.jobs.size());
+        this.metrics = m;
+        return m;
+    }
+
+    /**
+     * Disables metrics collection.
+     */
+    public void disableMetrics()
+    {
+        this.metrics = null;
+    }
+
+    /**
+     * @return The current metrics or {@code null} if disabled.
+     */
+    public PoolMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
     public void enqueue(final Worker<T> worker, final T object)
     {
         if (worker == null) throw new NullPointerException("A null Worker is not permitted");
 
         final ThreadWorker<T> w = this.workers.poll();
         final Job<T> job = new Job<>(worker, object);
+        final PoolMetrics m = worker instanceof StopWorker ? null : this.metrics;
+        if (m != null) job.enqueueTime = m.timestamp();
         if (w != null)
         {
+            if (m != null) m.jobEnqueued(false);
             w.setWorkLoad(job);
         }
         else
@@ -106,6 +140,7 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
                     SysUtils.fineSleep(5);
             }
 
+            if (m != null) m.jobEnqueued(true);
             this.jobs.offer(job);
         }
     }
@@ -114,9 +149,20 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
     {
         final Job<T> job = this.jobs.poll();
         if (job != null)
+        {
+            this.dequeued();
             w.setWorkLoad(job);
+        }
         else
+        {
             this.workers.offer(w);
+        }
+    }
+
+    private void dequeued()
+    {
+        final PoolMetrics m = this.metrics;
+        if (m != null) m.jobDequeued();
     }
 
     void doCallback(final ThreadWorker<T> threadWorker, final WorkerStatus status, final Worker<T> worker, final T object)
@@ -231,10 +277,14 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
             {
                 boolean ok = true;
                 Throwable ta = null;
+                PoolMetrics m = null;
+                long t0 = 0;
                 try
                 {
                     this.sync.acquireUninterruptibly();
                     if (this.workload.worker instanceof StopWorker) break;
+                    m = this.pool.metrics;
+                    if (m != null) t0 = m.jobStarted(this.workload.enqueueTime);
                     this.workload.worker.run(this.workload.object);
                 }
                 catch (final Throwable t)
@@ -242,6 +292,7 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
                     ta = t;
                     ok = false;
                 }
+                if (m != null) m.jobFinished(t0, ok);
 
                 this.pool.doCallback(this, ok ? WorkerStatus.OK : new WorkerStatus(ta), this.workload.worker, this.workload.object);
             }
@@ -252,6 +303,7 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
     {
         public final Worker<T> worker;
         public final T         object;
+        long                   enqueueTime;
 
         public Job(final Worker<T> worker, final T object)
         {
@@ -277,6 +329,7 @@ public class WorkerPool<T> implements Runnable, RequeueWatcherCallback<WorkerPoo
     @Override
     public void requeue(final ThreadWorker<T> worker, final Job<T> job)
     {
+        this.dequeued();
         worker.setWorkLoad(job);
     }
 }
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.github.rjeschke.neetutils.collections.Colls;
+import com.github.rjeschke.neetutils.concurrent.LruCache;
 import com.github.rjeschke.neetutils.math.Numbers;
 
 /**
@@ -83,4 +84,42 @@ public final class Fns
             }
         };
     }
+
+    /**
+     * Returns a thread-safe mapping caching the results of
+     * <code>mapping</code> in the given cache. <code>null</code> results are
+     * not cached.
+     *
+     * @param mapping
+     *            The mapping to memoize.
+     * @param cache
+     *            The cache.
+     * @return The memoizing mapping.
+     */
+    public final static <A, B> FnMapping<A, B> memoize(final FnMapping<? super A, ? extends B> mapping, final LruCache<A, B> cache)
+    {
+        return new FnMapping<A, B>()
+        {
+            @Override
+            public B applyMapping(final A value)
+            {
+                return cache.get(value, mapping);
+            }
+        };
+    }
+
+    /**
+     * Returns a thread-safe mapping caching up to <code>maximumSize</code>
+     * results of <code>mapping</code>.
+     *
+     * @param mapping
+     *            The mapping to memoize.
+     * @param maximumSize
+     *            Maximum number of cached results.
+     * @return The memoizing mapping.
+     */
+    public final static <A, B> FnMapping<A, B> memoize(final FnMapping<? super A, ? extends B> mapping, final long maximumSize)
+    {
+        return memoize(mapping, LruCache.<A, B> builder().maximumSize(maximumSize).build());
+    }
 }
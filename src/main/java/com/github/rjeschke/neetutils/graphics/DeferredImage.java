@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
+import com.github.rjeschke.neetutils.math.NMath;
+
+/**
+ * Deferred operations on an {@link NImage}.
+ *
+ * <p>
+ * Point-wise operations (generators, fills, combines, color adjustments) get
+ * recorded and are evaluated in a single pass per tile: each tile row gets
+ * loaded into small row buffers once, all recorded operations run on these
+ * buffers and the result gets stored back. If the first operation overwrites
+ * all pixels (e.g. a generator), the image isn't read at all. Tiles run in
+ * parallel if the image's thread count is greater than one.
+ * </p>
+ *
+ * <p>
+ * Operations which depend on neighbouring pixels or the whole image
+ * ({@link #filter(FilterKernel)}, {@link #normals(float)},
+ * {@link #normalizeColors()}) evaluate all pending operations first. Results
+ * are the same as calling the corresponding {@link NImage} methods directly.
+ * Images passed to <code>combine</code> get read during evaluation and must
+ * not be changed until then.
+ * </p>
+ *
+ * <pre>
+ * final NImage img = new NImage(512, 512).setThreadCount(8).defer().perlin(...).invertColors().clampColors().setAlpha(1).get();
+ * </pre>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ * @see NImage#defer()
+ */
+public class DeferredImage
+{
+    final static int            TILE_WIDTH  = 256;
+    final static int            TILE_HEIGHT = 64;
+    private final NImage        image;
+    private final List<PointOp> ops         = new ArrayList<>();
+
+    DeferredImage(final NImage image)
+    {
+        this.image = image;
+    }
+
+    /**
+     * @return The number of pending operations.
+     */
+    public int pending()
+    {
+        return this.ops.size();
+    }
+
+    /**
+     * Evaluates all pending operations.
+     *
+     * @return The image.
+     */
+    public NImage get()
+    {
+        if (this.ops.isEmpty()) return this.image;
+
+        final PointOp[] pending = this.ops.toArray(new PointOp[this.ops.size()]);
+        this.ops.clear();
+
+        final NImage img = this.image;
+        final int tilesX = (img.width + TILE_WIDTH - 1) / TILE_WIDTH;
+        final int tilesY = (img.height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        final RangeWorker worker = new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                final int tw = Math.min(TILE_WIDTH, img.width);
+                final float[] a = new float[tw], r = new float[tw], g = new float[tw], b = new float[tw];
+                final boolean load = !pending[0].overwrites();
+
+                for (int t = from; t < to; t++)
+                {
+                    final int x0 = (t % tilesX) * TILE_WIDTH;
+                    final int y0 = (t / tilesX) * TILE_HEIGHT;
+                    final int n = Math.min(TILE_WIDTH, img.width - x0);
+                    final int y1 = Math.min(y0 + TILE_HEIGHT, img.height);
+
+                    for (int y = y0; y < y1; y++)
+                    {
+                        final int o = x0 + y * img.width;
+                        if (load)
+                        {
+                            System.arraycopy(img.a, o, a, 0, n);
+                            System.arraycopy(img.r, o, r, 0, n);
+                            System.arraycopy(img.g, o, g, 0, n);
+                            System.arraycopy(img.b, o, b, 0, n);
+                        }
+                        for (final PointOp op : pending)
+                            op.apply(a, r, g, b, 0, n, x0, y);
+                        System.arraycopy(a, 0, img.a, o, n);
+                        System.arraycopy(r, 0, img.r, o, n);
+                        System.arraycopy(g, 0, img.g, o, n);
+                        System.arraycopy(b, 0, img.b, o, n);
+                    }
+                }
+            }
+        };
+
+        if (img.getThreadCount() < 2)
+            worker.run(0, tilesX * tilesY);
+        else
+            Parallel.forRange(0, tilesX * tilesY, 1, worker);
+
+        return img;
+    }
+
+    private DeferredImage add(final PointOp op)
+    {
+        this.ops.add(op);
+        return this;
+    }
+
+    /**
+     * Like
+     * {@link NImage#perlin(int, float, float, int, float, float, NColor, NColor)},
+     * but the noise gets evaluated tile by tile during the fused pass instead
+     * of generating a whole field through {@link NoiseFields}.
+     */
+    public DeferredImage perlin(final int seed, final float scalex, final float scaley, final int octaves, final float fallOff, final float amp,
+            final NColor color0, final NColor color1)
+    {
+        final NImage img = this.image;
+        return this.add(PointOp.perlin(new NImagePerlin(img.width, img.height, seed, scalex, scaley, octaves, fallOff, amp), color0, color1));
+    }
+
+    /**
+     * @see NImage#voronoi(int, int, float, float, boolean, boolean, NColor,
+     *      NColor)
+     */
+    public DeferredImage voronoi(final int seed, final int max, final float minDist, final float fallOff, final boolean invert, final boolean colorCells,
+            final NColor color0, final NColor color1)
+    {
+        return this.add(new NImageVoronoi(this.image, seed, max, minDist, fallOff, invert, colorCells, color0, color1));
+    }
+
+    /**
+     * @see NImage#fill(NColor)
+     */
+    public DeferredImage fill(final NColor c)
+    {
+        final ColorOp cop = this.image.getColorOp();
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                    NImage.apply(cop, a, r, g, b, i, c.a, c.r, c.g, c.b);
+            }
+
+            @Override
+            boolean overwrites()
+            {
+                return cop == ColorOp.SET;
+            }
+        });
+    }
+
+    /**
+     * @see NImage#forceFill(NColor)
+     */
+    public DeferredImage forceFill(final NColor c)
+    {
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                {
+                    a[i] = c.a;
+                    r[i] = c.r;
+                    g[i] = c.g;
+                    b[i] = c.b;
+                }
+            }
+
+            @Override
+            boolean overwrites()
+            {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @see NImage#clampColors()
+     */
+    public DeferredImage clampColors()
+    {
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                {
+                    a[i] = NMath.clamp(a[i], 0, 1);
+                    r[i] = NMath.clamp(r[i], 0, 1);
+                    g[i] = NMath.clamp(g[i], 0, 1);
+                    b[i] = NMath.clamp(b[i], 0, 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * @see NImage#invertColors()
+     */
+    public DeferredImage invertColors()
+    {
+        return this.invert(true);
+    }
+
+    /**
+     * @see NImage#invertColorsRGB()
+     */
+    public DeferredImage invertColorsRGB()
+    {
+        return this.invert(false);
+    }
+
+    private DeferredImage invert(final boolean alpha)
+    {
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                {
+                    if (alpha) a[i] = 1.f - a[i];
+                    r[i] = 1.f - r[i];
+                    g[i] = 1.f - g[i];
+                    b[i] = 1.f - b[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * @see NImage#setAlpha(float)
+     */
+    public DeferredImage setAlpha(final float alpha)
+    {
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                    a[i] = alpha;
+            }
+        });
+    }
+
+    /**
+     * @see NImage#toGrayscale()
+     */
+    public DeferredImage toGrayscale()
+    {
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                    r[i] = g[i] = b[i] = 0.299f * r[i] + 0.587f * g[i] + 0.114f * b[i];
+            }
+        });
+    }
+
+    /**
+     * @see NImage#combine(NImage, ColorOp, int, int, int, int, int, int)
+     */
+    public DeferredImage combine(final NImage other, final ColorOp colorOp, final int dx, final int dy, final int sx, final int sy, final int w, final int h)
+    {
+        if (other == this.image || dx < 0 || dy < 0 || sx < 0 || sy < 0)
+        {
+            // Clamping dependent or self-referencing, evaluate directly
+            this.get().combine(other, colorOp, dx, dy, sx, sy, w, h);
+            return this;
+        }
+
+        final int tw = Math.min(Math.min(w, other.width - sx), this.image.width - dx);
+        final int th = Math.min(Math.min(h, other.height - sy), this.image.height - dy);
+        if (tw <= 0 || th <= 0) return this;
+
+        return this.add(new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                if (y < dy || y >= dy + th) return;
+                final int from = Math.max(x, dx), to = Math.min(x + n, dx + tw);
+                if (from >= to) return;
+                final int s = sx - dx + (sy + y - dy) * other.width;
+                NImage.applySpan(colorOp, a, r, g, b, offset + from - x, other.a, other.r, other.g, other.b, s + from, to - from);
+            }
+        });
+    }
+
+    /**
+     * @see NImage#combine(NImage, ColorOp, int, int)
+     */
+    public DeferredImage combine(final NImage other, final ColorOp colorOp, final int dx, final int dy)
+    {
+        return this.combine(other, colorOp, dx, dy, 0, 0, other.width, other.height);
+    }
+
+    /**
+     * @see NImage#combine(NImage, ColorOp)
+     */
+    public DeferredImage combine(final NImage other, final ColorOp colorOp)
+    {
+        return this.combine(other, colorOp, 0, 0, 0, 0, other.width, other.height);
+    }
+
+    /**
+     * Evaluates pending operations, then filters the image.
+     *
+     * @see NImage#filter(FilterKernel)
+     */
+    public DeferredImage filter(final FilterKernel kernel)
+    {
+        this.get().filter(kernel);
+        return this;
+    }
+
+    /**
+     * Evaluates pending operations, then calculates normals.
+     *
+     * @see NImage#normals(float)
+     */
+    public DeferredImage normals(final float scale)
+    {
+        this.get().normals(scale);
+        return this;
+    }
+
+    /**
+     * @see NImage#levels(float, float, float, float, float)
+     */
+    public DeferredImage levels(final float inBlack, final float inWhite, final float gamma, final float outBlack, final float outWhite)
+    {
+        final float[] black = { 0, inBlack, inBlack, inBlack }, white = { 1, inWhite, inWhite, inWhite };
+        return this.add(PointOp.levels(black, white, gamma, outBlack, outWhite));
+    }
+
+    /**
+     * Evaluates pending operations, then normalizes colors.
+     *
+     * @see NImage#normalizeColors()
+     */
+    public DeferredImage normalizeColors()
+    {
+        this.get().normalizeColors();
+        return this;
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
+import com.github.rjeschke.neetutils.graphics.NImage.NPoint;
+
+/**
+ * Records drawing primitives and rasterizes them later, tile by tile.
+ *
+ * <p>
+ * {@link #render(NImage)} bins all commands into tiles of
+ * {@link #TILE_SIZE}x{@link #TILE_SIZE} pixels by their bounding boxes and
+ * rasterizes the tiles in parallel if the image's thread count is greater
+ * than one. Inside a tile, commands run in recording order using the same
+ * {@link NImage} drawing methods restricted to the tile, so the result is
+ * the same as drawing directly (including the image's clamp modes).
+ * </p>
+ *
+ * <p>
+ * Commands use the color operation set with {@link #setColorOp(ColorOp)}
+ * at recording time, or the image's one if none was set. A display list can
+ * be rendered multiple times; point arrays passed to it get copied.
+ * </p>
+ *
+ * <pre>
+ * final DisplayList dl = new DisplayList();
+ * for (...)
+ *     dl.drawLine(x0, y0, x1, y1, color);
+ * dl.render(image.setThreadCount(8));
+ * </pre>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class DisplayList
+{
+    public final static int     TILE_SIZE = 128;
+    private final List<Command> commands  = new ArrayList<>();
+    private ColorOp             cop       = null;
+
+    public DisplayList()
+    {
+        // empty
+    }
+
+    /**
+     * Sets the color operation for subsequently recorded commands,
+     * <code>null</code> to use the image's one.
+     */
+    public DisplayList setColorOp(final ColorOp op)
+    {
+        this.cop = op;
+        return this;
+    }
+
+    /**
+     * @return The number of recorded commands.
+     */
+    public int size()
+    {
+        return this.commands.size();
+    }
+
+    /**
+     * Removes all recorded commands.
+     */
+    public DisplayList clear()
+    {
+        this.commands.clear();
+        return this;
+    }
+
+    private DisplayList add(final Command cmd, final int x0, final int y0, final int x1, final int y1, final NColor color)
+    {
+        if (color == null) throw new NullPointerException("A null color is not permitted");
+        cmd.minX = Math.min(x0, x1);
+        cmd.minY = Math.min(y0, y1);
+        cmd.maxX = Math.max(x0, x1);
+        cmd.maxY = Math.max(y0, y1);
+        cmd.color = color;
+        cmd.op = this.cop;
+        this.commands.add(cmd);
+        return this;
+    }
+
+    public DisplayList setPixel(final int x, final int y, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.setPixel(x, y, this.color);
+            }
+        }, x, y, x, y, color);
+    }
+
+    public DisplayList drawLine(final int x0, final int y0, final int x1, final int y1, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawLine(x0, y0, x1, y1, this.color);
+            }
+        }, x0, y0, x1, y1, color);
+    }
+
+    public DisplayList drawThickLine(final int x0, final int y0, final int x1, final int y1, final int w, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawThickLine(x0, y0, x1, y1, w, this.color);
+            }
+        }, Math.min(x0, x1) - w - 1, Math.min(y0, y1) - w - 1, Math.max(x0, x1) + w + 1, Math.max(y0, y1) + w + 1, color);
+    }
+
+    public DisplayList drawHLine(final int x, final int y, final int w, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawHLine(x, y, w, this.color);
+            }
+        }, x, y, x + Math.max(w, 1) - 1, y, color);
+    }
+
+    public DisplayList drawVLine(final int x, final int y, final int h, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawVLine(x, y, h, this.color);
+            }
+        }, x, y, x, y + Math.max(h, 1) - 1, color);
+    }
+
+    public DisplayList drawRect(final int x, final int y, final int w, final int h, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawRect(x, y, w, h, this.color);
+            }
+        }, Math.min(x, x + w - 1), Math.min(y, y + h - 1), Math.max(x, x + w - 1), Math.max(y, y + h - 1), color);
+    }
+
+    public DisplayList fillRect(final int x, final int y, final int w, final int h, final NColor color)
+    {
+        if (h < 1) return this;
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.fillRect(x, y, w, h, this.color);
+            }
+        }, x, y, x + Math.max(w, 1) - 1, y + h - 1, color);
+    }
+
+    public DisplayList drawCircle(final int x, final int y, final int radius, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawCircle(x, y, radius, this.color);
+            }
+        }, x - radius - 2, y - radius - 2, x + radius + 2, y + radius + 2, color);
+    }
+
+    public DisplayList fillCircle(final int x, final int y, final int radius, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.fillCircle(x, y, radius, this.color);
+            }
+        }, x - radius - 2, y - radius - 2, x + radius + 2, y + radius + 2, color);
+    }
+
+    public DisplayList drawEllipse(final int x, final int y, final int a, final int b, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawEllipse(x, y, a, b, this.color);
+            }
+        }, x - a - 2, y - b - 2, x + a + 2, y + b + 2, color);
+    }
+
+    public DisplayList fillEllipse(final int x, final int y, final int a, final int b, final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.fillEllipse(x, y, a, b, this.color);
+            }
+        }, x - a - 2, y - b - 2, x + a + 2, y + b + 2, color);
+    }
+
+    public DisplayList drawRoundRect(final int x, final int y, final int w, final int h, final int arcWidth, final int arcHeight,
+            final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.drawRoundRect(x, y, w, h, arcWidth, arcHeight, this.color);
+            }
+        }, x - 2, y - 2, x + w + 2, y + h + 2, color);
+    }
+
+    public DisplayList fillRoundRect(final int x, final int y, final int w, final int h, final int arcWidth, final int arcHeight,
+            final NColor color)
+    {
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.fillRoundRect(x, y, w, h, arcWidth, arcHeight, this.color);
+            }
+        }, x - 2, y - 2, x + w + 2, y + h + 2, color);
+    }
+
+    public DisplayList fillRoundRect(final int x, final int y, final int w, final int h, final int arcsz, final NColor color)
+    {
+        return this.fillRoundRect(x, y, w, h, arcsz, arcsz, color);
+    }
+
+    public DisplayList fillPolygon(final NPoint[] points, final NColor color)
+    {
+        if (points.length == 0) return this;
+        final NPoint[] pts = points.clone();
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (final NPoint p : pts)
+        {
+            x0 = Math.min(x0, p.x);
+            y0 = Math.min(y0, p.y);
+            x1 = Math.max(x1, p.x);
+            y1 = Math.max(y1, p.y);
+        }
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.fillPolygon(pts, this.color);
+            }
+        }, x0, y0, x1, y1, color);
+    }
+
+    public DisplayList fillPolygon(final float[] xs, final float[] ys, final int count, final FillRule rule, final boolean antialias,
+            final NColor color)
+    {
+        if (count < 1) return this;
+        final float[] px = Arrays.copyOf(xs, count), py = Arrays.copyOf(ys, count);
+        float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            x0 = Math.min(x0, px[i]);
+            y0 = Math.min(y0, py[i]);
+            x1 = Math.max(x1, px[i]);
+            y1 = Math.max(y1, py[i]);
+        }
+        return this.add(new Command()
+        {
+            @Override
+            void draw(final NImage img)
+            {
+                img.fillPolygon(px, py, count, rule, antialias, this.color);
+            }
+        }, (int)Math.floor(x0) - 1, (int)Math.floor(y0) - 1, (int)Math.ceil(x1) + 1, (int)Math.ceil(y1) + 1, color);
+    }
+
+    /**
+     * Maps the inclusive range [lo, hi] to the range of affected pixels, see
+     * {@link NImage#setPixel(int, int, NColor)}.
+     *
+     * @return The mapped range, or <code>null</code> if nothing gets drawn.
+     */
+    private static int[] mapRange(final ClampMode mode, final int lo, final int hi, final int size, final int[] out)
+    {
+        switch (mode)
+        {
+        case CLIP:
+            out[0] = Math.max(lo, 0);
+            out[1] = Math.min(hi, size - 1);
+            return out[0] <= out[1] ? out : null;
+        case WRAP:
+            if (lo < 0 || hi >= size)
+            {
+                out[0] = 0;
+                out[1] = size - 1;
+            }
+            else
+            {
+                out[0] = lo;
+                out[1] = hi;
+            }
+            return out;
+        default:
+        case CLAMP_TO_EDGE:
+            out[0] = Math.min(Math.max(lo, 0), size - 1);
+            out[1] = Math.min(Math.max(hi, 0), size - 1);
+            return out;
+        }
+    }
+
+    /**
+     * Rasterizes all recorded commands into the given image.
+     *
+     * @param image
+     *            The target image.
+     * @return The image.
+     */
+    public NImage render(final NImage image)
+    {
+        if (this.commands.isEmpty() || image.width == 0 || image.height == 0) return image;
+
+        final int tilesX = (image.width + TILE_SIZE - 1) / TILE_SIZE;
+        final int tilesY = (image.height + TILE_SIZE - 1) / TILE_SIZE;
+        final int[][] bins = new int[tilesX * tilesY][];
+        final int[] sizes = new int[tilesX * tilesY];
+        final int[] rx = new int[2], ry = new int[2];
+        final ClampMode clampX = image.getClampX(), clampY = image.getClampY();
+
+        for (int n = 0; n < this.commands.size(); n++)
+        {
+            final Command cmd = this.commands.get(n);
+            if (mapRange(clampX, cmd.minX, cmd.maxX, image.width, rx) == null || mapRange(clampY, cmd.minY, cmd.maxY, image.height, ry) == null)
+                continue;
+            for (int ty = ry[0] / TILE_SIZE; ty <= ry[1] / TILE_SIZE; ty++)
+            {
+                for (int tx = rx[0] / TILE_SIZE; tx <= rx[1] / TILE_SIZE; tx++)
+                {
+                    final int t = tx + ty * tilesX;
+                    if (bins[t] == null)
+                        bins[t] = new int[16];
+                    else if (sizes[t] == bins[t].length) bins[t] = Arrays.copyOf(bins[t], sizes[t] * 2);
+                    bins[t][sizes[t]++] = n;
+                }
+            }
+        }
+
+        final RangeWorker worker = new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                final ColorOp op = image.getColorOp();
+                for (int t = from; t < to; t++)
+                {
+                    if (sizes[t] == 0) continue;
+                    final int x0 = (t % tilesX) * TILE_SIZE, y0 = (t / tilesX) * TILE_SIZE;
+                    final TileImage tile = new TileImage(image, x0, y0, Math.min(image.width, x0 + TILE_SIZE), Math.min(image.height,
+                            y0 + TILE_SIZE));
+                    for (int i = 0; i < sizes[t]; i++)
+                    {
+                        final Command cmd = DisplayList.this.commands.get(bins[t][i]);
+                        tile.setColorOp(cmd.op != null ? cmd.op : op);
+                        cmd.draw(tile);
+                    }
+                }
+            }
+        };
+
+        if (image.getThreadCount() < 2)
+            worker.run(0, bins.length);
+        else
+            Parallel.forRange(0, bins.length, 1, worker);
+
+        return image;
+    }
+
+    private abstract static class Command
+    {
+        int     minX, minY, maxX, maxY;
+        NColor  color;
+        ColorOp op;
+
+        Command()
+        {
+            // empty
+        }
+
+        abstract void draw(NImage img);
+    }
+
+    /**
+     * Image drawing into the planes of another image, restricted to a
+     * rectangle of (clamped) pixel positions.
+     */
+    private final static class TileImage extends NImage
+    {
+        private final int x0, y0, x1, y1;
+
+        public TileImage(final NImage image, final int x0, final int y0, final int x1, final int y1)
+        {
+            super(image, true);
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        public void setPixel(final int x, final int y, final NColor c)
+        {
+            final int i = this.index(x, y);
+            if (i < 0) return;
+            final int py = i / this.width;
+            final int px = i - py * this.width;
+            if (px < this.x0 || px >= this.x1 || py < this.y0 || py >= this.y1) return;
+            NImage.apply(this.getColorOp(), this.a, this.r, this.g, this.b, i, c.a, c.r, c.g, c.b);
+        }
+
+        @Override
+        public void drawHLine(final int x, final int y, final int w, final NColor color)
+        {
+            if (w < 2 || x < 0 || x + w > this.width)
+            {
+                super.drawHLine(x, y, w, color);
+                return;
+            }
+            // Completely inside horizontally, clamping only affects y
+            final int row = this.index(0, y);
+            if (row < 0) return;
+            final int py = row / this.width;
+            if (py < this.y0 || py >= this.y1) return;
+            final int from = Math.max(x, this.x0), to = Math.min(x + w, this.x1);
+            final ColorOp op = this.getColorOp();
+            for (int i = row + from; i < row + to; i++)
+                NImage.apply(op, this.a, this.r, this.g, this.b, i, color.a, color.r, color.g, color.b);
+        }
+
+        @Override
+        void rasterize(final PolygonRasterizer pr, final NColor color)
+        {
+            pr.fill(this, color, this.x0, this.y0, this.x1, this.y1);
+        }
+    }
+}
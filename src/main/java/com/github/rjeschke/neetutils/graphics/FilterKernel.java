@@ -42,6 +42,34 @@ public class FilterKernel
         this.isSingle = false;
     }
 
+    /**
+     * Creates a normalized, separable box kernel of size
+     * <code>(2 * rx + 1) x (2 * ry + 1)</code>. Box kernels get evaluated
+     * using running sums, i.e. independent of their size.
+     *
+     * @param rx
+     *            Horizontal radius.
+     * @param ry
+     *            Vertical radius.
+     * @return The kernel.
+     */
+    public static FilterKernel box(final int rx, final int ry)
+    {
+        final float[] kx = new float[rx * 2 + 1], ky = new float[ry * 2 + 1];
+        Arrays.fill(kx, 1.f / kx.length);
+        Arrays.fill(ky, 1.f / ky.length);
+        return new FilterKernel(kx, ky, kx.length, ky.length, -rx, -ry);
+    }
+
+    static boolean isConstant(final float[] kernel)
+    {
+        for (int i = 1; i < kernel.length; i++)
+        {
+            if (kernel[i] != kernel[0]) return false;
+        }
+        return true;
+    }
+
     public FilterKernel normalize()
     {
         if (this.isSingle)
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+/**
+ * Lookup tables for 8 bit gamma conversion.
+ *
+ * <p>
+ * Decoding is a plain 256 entry table. Encoding uses the smallest float
+ * mapping to each 8 bit value (found by bisection over the float bit
+ * patterns, which works because <code>Math.pow</code> is semi-monotonic)
+ * plus a coarse index table to find the starting point, so results are
+ * identical to <code>(int)(Math.pow(v, gamma) * 255.0 + 0.5)</code>.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+final class GammaTable
+{
+    private final static int          INDEX_BITS = 12;
+    private final static int          INDEX_SIZE = 1 << INDEX_BITS;
+    private static volatile GammaTable last      = null;
+    final double                      gamma;
+    final float[]                     decode     = new float[256];
+    /** Smallest value encoding to <code>k</code>, <code>null</code> if gamma &lt;= 0. */
+    private final float[]             thresholds;
+    private final int[]               index;
+
+    private GammaTable(final double gamma)
+    {
+        this.gamma = gamma;
+        for (int i = 0; i < 256; i++)
+            this.decode[i] = (float)Math.pow(i / 255.0, gamma);
+
+        if (gamma > 0)
+        {
+            this.thresholds = new float[256];
+            for (int k = 1; k < 256; k++)
+                this.thresholds[k] = this.smallest(k);
+            this.index = new int[INDEX_SIZE];
+            for (int i = 0, k = 0; i < INDEX_SIZE; i++)
+            {
+                final float v = i / (float)INDEX_SIZE;
+                while (k < 255 && v >= this.thresholds[k + 1])
+                    k++;
+                this.index[i] = k;
+            }
+        }
+        else
+        {
+            this.thresholds = null;
+            this.index = null;
+        }
+    }
+
+    /**
+     * Returns the table for the given gamma, the last used table gets cached.
+     */
+    static GammaTable get(final double gamma)
+    {
+        GammaTable t = last;
+        if (t == null || t.gamma != gamma) last = t = new GammaTable(gamma);
+        return t;
+    }
+
+    private int exact(final float v)
+    {
+        return (int)(Math.pow(v, this.gamma) * 255.0 + 0.5);
+    }
+
+    private float smallest(final int k)
+    {
+        int lo = 0, hi = Float.floatToIntBits(1.f);
+        if (this.exact(1.f) < k) return Float.POSITIVE_INFINITY;
+        while (lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if (this.exact(Float.intBitsToFloat(mid)) >= k)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return Float.intBitsToFloat(lo);
+    }
+
+    /**
+     * Encodes a value clamped to [0, 1].
+     */
+    int encode(final float v)
+    {
+        if (this.thresholds == null) return this.exact(v);
+        int k = this.index[Math.min(INDEX_SIZE - 1, (int)(v * INDEX_SIZE))];
+        while (k < 255 && v >= this.thresholds[k + 1])
+            k++;
+        return k;
+    }
+}
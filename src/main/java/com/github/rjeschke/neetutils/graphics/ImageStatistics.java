@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.Arrays;
+
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeReducer;
+
+/**
+ * Per channel statistics of an {@link NImage}: minimum, maximum, mean,
+ * variance and a histogram, gathered in a single pass.
+ *
+ * <p>
+ * The image gets reduced in row bands, in parallel if its thread count is
+ * greater than one. Means and variances get accumulated per row in double
+ * precision and merged using the parallel variance formula, so results are
+ * stable for large images.
+ * </p>
+ *
+ * <p>
+ * Histograms span [0, 1] with the given number of bins, values outside get
+ * counted into the first or last bin. Percentiles get interpolated linearly
+ * inside a bin and are limited to [min, max] of the channel.
+ * </p>
+ *
+ * <p>
+ * Channels are numbered <code>0</code> (alpha), <code>1</code> (red),
+ * <code>2</code> (green) and <code>3</code> (blue).
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ * @see NImage#statistics()
+ */
+public class ImageStatistics
+{
+    public final static int DEFAULT_BINS = 256;
+    private final int       bins;
+    private long            count;
+    private final float[]   min        = new float[4];
+    private final float[]   max        = new float[4];
+    private final double[]  mean       = new double[4];
+    private final double[]  m2         = new double[4];
+    private final long[][]  histograms;
+
+    ImageStatistics(final int bins)
+    {
+        this.bins = bins;
+        this.histograms = new long[4][bins];
+        Arrays.fill(this.min, Float.MAX_VALUE);
+        Arrays.fill(this.max, -Float.MAX_VALUE);
+    }
+
+    /**
+     * Gathers the statistics of the given image.
+     */
+    static ImageStatistics of(final NImage image, final int bins)
+    {
+        if (bins < 1) throw new IllegalArgumentException("Number of bins must be greater than zero");
+
+        final RangeReducer<ImageStatistics> reducer = new RangeReducer<ImageStatistics>()
+        {
+            @Override
+            public ImageStatistics reduce(final int from, final int to)
+            {
+                final ImageStatistics s = new ImageStatistics(bins);
+                for (int y = from; y < to; y++)
+                    s.addRow(image, y);
+                return s;
+            }
+
+            @Override
+            public ImageStatistics combine(final ImageStatistics lower, final ImageStatistics upper)
+            {
+                return lower.merge(upper);
+            }
+        };
+
+        final int threads = image.getThreadCount();
+        if (threads < 2) return reducer.reduce(0, image.height);
+
+        final int bands = threads * 4;
+        final int grain = Math.max((image.height + bands - 1) / bands, (NImage.MIN_BAND_PIXELS + image.width - 1) / Math.max(1, image.width));
+        return Parallel.reduceRange(0, image.height, grain, reducer);
+    }
+
+    private void addRow(final NImage image, final int y)
+    {
+        final int n = image.width;
+        if (n == 0) return;
+        final float[][] planes = image.planes();
+        final int offs = y * n;
+        for (int c = 0; c < 4; c++)
+        {
+            final float[] p = planes[c];
+            final long[] hist = this.histograms[c];
+            float mn = this.min[c], mx = this.max[c];
+            double sum = 0, sum2 = 0;
+            for (int i = offs; i < offs + n; i++)
+            {
+                final float v = p[i];
+                mn = Math.min(mn, v);
+                mx = Math.max(mx, v);
+                sum += v;
+                sum2 += (double)v * v;
+                hist[Math.max(0, Math.min(this.bins - 1, (int)(v * this.bins)))]++;
+            }
+            this.min[c] = mn;
+            this.max[c] = mx;
+            final double rowMean = sum / n;
+            this.mergeMoments(c, n, rowMean, Math.max(0, sum2 - sum * rowMean));
+        }
+        this.count += n;
+    }
+
+    private void mergeMoments(final int c, final long n, final double mean, final double m2)
+    {
+        final long total = this.count + n;
+        final double delta = mean - this.mean[c];
+        this.mean[c] += delta * n / total;
+        this.m2[c] += m2 + delta * delta * ((double)this.count * n / total);
+    }
+
+    private ImageStatistics merge(final ImageStatistics upper)
+    {
+        if (upper.count == 0) return this;
+        for (int c = 0; c < 4; c++)
+        {
+            this.min[c] = Math.min(this.min[c], upper.min[c]);
+            this.max[c] = Math.max(this.max[c], upper.max[c]);
+            this.mergeMoments(c, upper.count, upper.mean[c], upper.m2[c]);
+            final long[] h = this.histograms[c], uh = upper.histograms[c];
+            for (int i = 0; i < this.bins; i++)
+                h[i] += uh[i];
+        }
+        this.count += upper.count;
+        return this;
+    }
+
+    /**
+     * @return The number of pixels.
+     */
+    public long count()
+    {
+        return this.count;
+    }
+
+    public int bins()
+    {
+        return this.bins;
+    }
+
+    public float min(final int channel)
+    {
+        return this.min[channel];
+    }
+
+    public float max(final int channel)
+    {
+        return this.max[channel];
+    }
+
+    /**
+     * @return The minimum over all channels.
+     */
+    public float min()
+    {
+        return Math.min(Math.min(this.min[0], this.min[1]), Math.min(this.min[2], this.min[3]));
+    }
+
+    /**
+     * @return The maximum over all channels.
+     */
+    public float max()
+    {
+        return Math.max(Math.max(this.max[0], this.max[1]), Math.max(this.max[2], this.max[3]));
+    }
+
+    public double mean(final int channel)
+    {
+        return this.mean[channel];
+    }
+
+    /**
+     * @return The (population) variance of the given channel.
+     */
+    public double variance(final int channel)
+    {
+        return this.count > 0 ? this.m2[channel] / this.count : 0;
+    }
+
+    public double stdDev(final int channel)
+    {
+        return Math.sqrt(this.variance(channel));
+    }
+
+    /**
+     * @return A copy of the histogram of the given channel.
+     */
+    public long[] histogram(final int channel)
+    {
+        return this.histograms[channel].clone();
+    }
+
+    /**
+     * Returns the value below which the given fraction of the channel's
+     * values lie, estimated from the histogram.
+     *
+     * @param channel
+     *            The channel.
+     * @param p
+     *            The fraction, [0, 1].
+     * @return The percentile.
+     */
+    public float percentile(final int channel, final double p)
+    {
+        if (this.count == 0) return 0;
+        final long[] hist = this.histograms[channel];
+        final double target = Math.max(0, Math.min(1, p)) * this.count;
+        double acc = 0;
+        for (int i = 0; i < this.bins; i++)
+        {
+            if (hist[i] > 0 && acc + hist[i] >= target)
+            {
+                final float v = (float)((i + (target - acc) / hist[i]) / this.bins);
+                return Math.max(this.min[channel], Math.min(this.max[channel], v));
+            }
+            acc += hist[i];
+        }
+        return this.max[channel];
+    }
+
+    /**
+     * @return The median of the given channel, see {@link #percentile(int, double)}.
+     */
+    public float median(final int channel)
+    {
+        return this.percentile(channel, 0.5);
+    }
+}
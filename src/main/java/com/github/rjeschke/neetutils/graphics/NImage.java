@@ -22,10 +22,9 @@ import java.util.Arrays;
 import java.util.List;
 
 import com.github.rjeschke.neetutils.collections.Colls;
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
 import com.github.rjeschke.neetutils.concurrent.Worker;
-import com.github.rjeschke.neetutils.concurrent.WorkerCallback;
-import com.github.rjeschke.neetutils.concurrent.WorkerPool;
-import com.github.rjeschke.neetutils.concurrent.WorkerStatus;
 import com.github.rjeschke.neetutils.math.NMath;
 import com.github.rjeschke.neetutils.rng.RNG;
 import com.github.rjeschke.neetutils.rng.RNGFactory;
@@ -33,15 +32,32 @@ import com.github.rjeschke.neetutils.rng.RNGType;
 import com.github.rjeschke.neetutils.vectors.Vector3f;
 
 /**
+ * Floating point ARGB image.
+ *
+ * <p>
+ * Pixels are stored planar, i.e. as one <code>float[]</code> per channel, so
+ * pixel operations run as plain array loops without allocating
+ * {@link NColor}s; NColors only get created at the API boundary, e.g. by
+ * {@link #getPixel(int, int)}.
+ * </p>
+ *
+ * <p>
+ * With a thread count greater than one (see {@link #setThreadCount(int)}),
+ * generators and filters run as row bands on the shared fork-join pool of
+ * {@link Parallel}, writing directly into the destination planes.
+ * </p>
  *
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
  */
-public class NImage implements WorkerCallback<NImagePBlock>
+public class NImage
 {
     public final int            width;
     public final int            height;
-    final NColor[]              pixels;
+    final float[]               a;
+    final float[]               r;
+    final float[]               g;
+    final float[]               b;
     private ClampMode           clampX            = ClampMode.CLAMP_TO_EDGE;
     private ClampMode           clampY            = ClampMode.CLAMP_TO_EDGE;
     private ColorOp             cop               = ColorOp.SET;
@@ -50,7 +66,12 @@ public class NImage implements WorkerCallback<NImagePBlock>
     final static float[]        SOBEL_Y           = Colls.array(1.f, 2, 1, 0, 0, 0, -1, -2, -1);
     final static int[]          PAINT_DX          = Colls.array(1, 1, 0);
     final static int[]          PAINT_DY          = Colls.array(0, -1, -1);
-    final static int            BLOCK_SIZE        = 8;
+    /** Minimum number of pixels per row band. */
+    final static int            MIN_BAND_PIXELS   = 16384;
+    /** Minimum size of a constant kernel to use running sums. */
+    final static int            BOX_THRESHOLD     = 5;
+    /** Minimum number of taps of a 2D kernel to use FFT convolution. */
+    final static int            FFT_THRESHOLD     = 256;
     private final static double TO_sRGB           = 1.0 / 2.2;
     private final static double FROM_sRGB         = 2.2;
 
@@ -58,17 +79,38 @@ public class NImage implements WorkerCallback<NImagePBlock>
     {
         this.width = width;
         this.height = height;
-        this.pixels = new NColor[width * height];
-        Arrays.fill(this.pixels, NColor.BLACK_TRANS);
+        this.a = new float[width * height];
+        this.r = new float[width * height];
+        this.g = new float[width * height];
+        this.b = new float[width * height];
     }
 
     public NImage(final NImage image)
     {
         this.width = image.width;
         this.height = image.height;
-        this.pixels = new NColor[this.width * this.height];
+        this.a = image.a.clone();
+        this.r = image.r.clone();
+        this.g = image.g.clone();
+        this.b = image.b.clone();
         this.processingThreads = image.processingThreads;
-        System.arraycopy(image.pixels, 0, this.pixels, 0, this.pixels.length);
+    }
+
+    /**
+     * Creates an image drawing into the planes of <code>image</code>, using
+     * the same clamp modes and color operation.
+     */
+    NImage(final NImage image, final boolean shared)
+    {
+        this.width = image.width;
+        this.height = image.height;
+        this.a = image.a;
+        this.r = image.r;
+        this.g = image.g;
+        this.b = image.b;
+        this.clampX = image.clampX;
+        this.clampY = image.clampY;
+        this.cop = image.cop;
     }
 
     public NImage(final BufferedImage image)
@@ -83,22 +125,53 @@ public class NImage implements WorkerCallback<NImagePBlock>
 
     public NImage(final BufferedImage image, final double gamma)
     {
-        final BufferedImage img = forceARGB(image);
-        this.width = img.getWidth();
-        this.height = img.getHeight();
-        this.pixels = new NColor[this.width * this.height];
+        this(image, gamma, 1);
+    }
 
-        final int[] pix = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
-        if (gamma != 1)
-        {
-            for (int i = 0; i < pix.length; i++)
-                this.pixels[i] = new NColor(pix[i], gamma);
-        }
-        else
+    /**
+     * Creates an image from the given BufferedImage, converting rows in
+     * parallel if <code>threads</code> is greater than one. The thread count
+     * gets kept for further processing.
+     *
+     * @param image
+     *            The image.
+     * @param gamma
+     *            Gamma exponent applied to red, green and blue.
+     * @param threads
+     *            Number of processing threads.
+     */
+    public NImage(final BufferedImage image, final double gamma, final int threads)
+    {
+        this(image.getWidth(), image.getHeight());
+        this.setThreadCount(threads);
+        final int[] pix = ((DataBufferInt)forceARGB(image).getRaster().getDataBuffer()).getData();
+        final float[] lut = gamma != 1 ? GammaTable.get(gamma).decode : null;
+
+        this.runRows(new RangeWorker()
         {
-            for (int i = 0; i < pix.length; i++)
-                this.pixels[i] = new NColor(pix[i]);
-        }
+            @Override
+            public void run(final int from, final int to)
+            {
+                final NImage self = NImage.this;
+                for (int i = from * self.width; i < to * self.width; i++)
+                {
+                    final int argb = pix[i];
+                    self.a[i] = (argb >>> 24) / 255.f;
+                    if (lut != null)
+                    {
+                        self.r[i] = lut[(argb >> 16) & 255];
+                        self.g[i] = lut[(argb >> 8) & 255];
+                        self.b[i] = lut[argb & 255];
+                    }
+                    else
+                    {
+                        self.r[i] = ((argb >> 16) & 255) / 255.f;
+                        self.g[i] = ((argb >> 8) & 255) / 255.f;
+                        self.b[i] = (argb & 255) / 255.f;
+                    }
+                }
+            }
+        });
     }
 
     private static BufferedImage forceARGB(final BufferedImage in)
@@ -141,67 +214,271 @@ public class NImage implements WorkerCallback<NImagePBlock>
         return this.clampX(x) + this.clampY(y) * this.width;
     }
 
-    public NImage setThreadCount(final int threads)
+    /**
+     * Returns the (clamped) index of the given position, <code>-1</code> if
+     * it lies outside and gets clipped, same as {@link #getPixel(int, int)}.
+     */
+    final int index(final int x, final int y)
     {
-        this.processingThreads = Math.max(1, threads);
-        return this;
+        if (this.clampX == ClampMode.CLIP && x < 0 || x >= this.width) return -1;
+        if (this.clampY == ClampMode.CLIP && y < 0 || y >= this.height) return -1;
+
+        return this.clampedPos(x, y);
     }
 
-    public void setPixel(final int x, final int y, final NColor c)
+    final void set(final int i, final NColor c)
     {
-        if (this.clampX == ClampMode.CLIP && x < 0 || x >= this.width) return;
-        if (this.clampY == ClampMode.CLIP && y < 0 || y >= this.height) return;
+        this.a[i] = c.a;
+        this.r[i] = c.r;
+        this.g[i] = c.g;
+        this.b[i] = c.b;
+    }
+
+    final void set(final int i, final float ca, final float cr, final float cg, final float cb)
+    {
+        this.a[i] = ca;
+        this.r[i] = cr;
+        this.g[i] = cg;
+        this.b[i] = cb;
+    }
+
+    final NColor get(final int i)
+    {
+        return new NColor(this.a[i], this.r[i], this.g[i], this.b[i]);
+    }
 
-        final int p = this.clampedPos(x, y);
+    /**
+     * Applies the given color operation to pixel <code>i</code>, same as the
+     * corresponding NColor methods.
+     */
+    final void apply(final ColorOp op, final int i, final float sa, final float sr, final float sg, final float sb)
+    {
+        apply(op, this.a, this.r, this.g, this.b, i, sa, sr, sg, sb);
+    }
 
-        switch (this.cop)
+    /**
+     * Applies the given color operation to element <code>i</code> of the
+     * given planes.
+     */
+    static void apply(final ColorOp op, final float[] a, final float[] r, final float[] g, final float[] b, final int i, final float sa, final float sr,
+            final float sg, final float sb)
+    {
+        switch (op)
         {
         default:
         case SET:
-            this.pixels[p] = c;
+            a[i] = sa;
+            r[i] = sr;
+            g[i] = sg;
+            b[i] = sb;
             break;
         case ADD:
-            this.pixels[p] = this.pixels[p].add(c);
+            a[i] += sa;
+            r[i] += sr;
+            g[i] += sg;
+            b[i] += sb;
             break;
         case SUB:
-            this.pixels[p] = this.pixels[p].sub(c);
+            a[i] -= sa;
+            r[i] -= sr;
+            g[i] -= sg;
+            b[i] -= sb;
             break;
         case MUL:
-            this.pixels[p] = this.pixels[p].mul(c);
+            a[i] *= sa;
+            r[i] *= sr;
+            g[i] *= sg;
+            b[i] *= sb;
             break;
         case ADD_RGB:
-            this.pixels[p] = this.pixels[p].addRGB(c);
+            r[i] += sr;
+            g[i] += sg;
+            b[i] += sb;
             break;
         case SUB_RGB:
-            this.pixels[p] = this.pixels[p].subRGB(c);
+            r[i] -= sr;
+            g[i] -= sg;
+            b[i] -= sb;
             break;
         case MUL_RGB:
-            this.pixels[p] = this.pixels[p].mulRGB(c);
+            r[i] *= sr;
+            g[i] *= sg;
+            b[i] *= sb;
             break;
         case BLEND:
-            this.pixels[p] = this.pixels[p].blendOver(c);
+            blendOver(a, r, g, b, i, sa, sr, sg, sb);
             break;
         case BLEND1:
-            this.pixels[p] = new NColor(this.pixels[p].a, NColor.lerpRGB(this.pixels[p], c, c.a));
+            r[i] += (sr - r[i]) * sa;
+            g[i] += (sg - g[i]) * sa;
+            b[i] += (sb - b[i]) * sa;
             break;
         }
     }
 
-    public NImage forceFill(final NColor c)
+    /**
+     * @see NColor#blendOver(NColor, NColor)
+     */
+    private static void blendOver(final float[] a, final float[] r, final float[] g, final float[] b, final int i, final float sa0, final float sr,
+            final float sg, final float sb)
     {
-        Arrays.fill(this.pixels, c);
-        return this;
+        final float da = NMath.clamp(a[i], 0.f, 1.f);
+        final float sa = NMath.clamp(sa0, 0.f, 1.f);
+
+        if (da == 1.f)
+        {
+            final float ia = 1.f - sa;
+            a[i] = 1;
+            r[i] = sa * sr + r[i] * ia;
+            g[i] = sa * sg + g[i] * ia;
+            b[i] = sa * sb + b[i] * ia;
+        }
+        else if (da == 0.f)
+        {
+            a[i] = sa;
+            r[i] = sa * sr;
+            g[i] = sa * sg;
+            b[i] = sa * sb;
+        }
+        else
+        {
+            final float ia = 1.f - sa;
+            final float outa = sa + da * ia;
+            if (outa <= 0)
+            {
+                a[i] = r[i] = g[i] = b[i] = 0;
+            }
+            else
+            {
+                final float outar = 1.f / outa;
+                a[i] = outa;
+                r[i] = (sa * sr + da * r[i] * ia) * outar;
+                g[i] = (sa * sg + da * g[i] * ia) * outar;
+                b[i] = (sa * sb + da * b[i] * ia) * outar;
+            }
+        }
     }
 
-    public NImage fill(final NColor c)
+    /**
+     * Applies the given color operation to the elements [i, i + n) of the
+     * given planes using the source elements [j, j + n), with one loop per
+     * operation. Same results as
+     * {@link #apply(ColorOp, float[], float[], float[], float[], int, float, float, float, float)}.
+     */
+    static void applySpan(final ColorOp op, final float[] a, final float[] r, final float[] g, final float[] b, final int i, final float[] sa,
+            final float[] sr, final float[] sg, final float[] sb, final int j, final int n)
     {
-        for (int y = 0; y < this.height; y++)
+        final int d = j - i;
+        switch (op)
         {
-            for (int x = 0; x < this.width; x++)
+        default:
+        case SET:
+            System.arraycopy(sa, j, a, i, n);
+            System.arraycopy(sr, j, r, i, n);
+            System.arraycopy(sg, j, g, i, n);
+            System.arraycopy(sb, j, b, i, n);
+            break;
+        case ADD:
+            for (int k = i; k < i + n; k++)
+            {
+                a[k] += sa[k + d];
+                r[k] += sr[k + d];
+                g[k] += sg[k + d];
+                b[k] += sb[k + d];
+            }
+            break;
+        case SUB:
+            for (int k = i; k < i + n; k++)
+            {
+                a[k] -= sa[k + d];
+                r[k] -= sr[k + d];
+                g[k] -= sg[k + d];
+                b[k] -= sb[k + d];
+            }
+            break;
+        case MUL:
+            for (int k = i; k < i + n; k++)
+            {
+                a[k] *= sa[k + d];
+                r[k] *= sr[k + d];
+                g[k] *= sg[k + d];
+                b[k] *= sb[k + d];
+            }
+            break;
+        case ADD_RGB:
+            for (int k = i; k < i + n; k++)
+            {
+                r[k] += sr[k + d];
+                g[k] += sg[k + d];
+                b[k] += sb[k + d];
+            }
+            break;
+        case SUB_RGB:
+            for (int k = i; k < i + n; k++)
+            {
+                r[k] -= sr[k + d];
+                g[k] -= sg[k + d];
+                b[k] -= sb[k + d];
+            }
+            break;
+        case MUL_RGB:
+            for (int k = i; k < i + n; k++)
             {
-                this.setPixel(x, y, c);
+                r[k] *= sr[k + d];
+                g[k] *= sg[k + d];
+                b[k] *= sb[k + d];
             }
+            break;
+        case BLEND:
+            for (int k = i; k < i + n; k++)
+                blendOver(a, r, g, b, k, sa[k + d], sr[k + d], sg[k + d], sb[k + d]);
+            break;
+        case BLEND1:
+            for (int k = i; k < i + n; k++)
+            {
+                final float t = sa[k + d];
+                r[k] += (sr[k + d] - r[k]) * t;
+                g[k] += (sg[k + d] - g[k]) * t;
+                b[k] += (sb[k + d] - b[k]) * t;
+            }
+            break;
         }
+    }
+
+    public NImage setThreadCount(final int threads)
+    {
+        this.processingThreads = Math.max(1, threads);
+        return this;
+    }
+
+    public int getThreadCount()
+    {
+        return this.processingThreads;
+    }
+
+    public void setPixel(final int x, final int y, final NColor c)
+    {
+        if (this.clampX == ClampMode.CLIP && x < 0 || x >= this.width) return;
+        if (this.clampY == ClampMode.CLIP && y < 0 || y >= this.height) return;
+
+        this.apply(this.cop, this.clampedPos(x, y), c.a, c.r, c.g, c.b);
+    }
+
+    public NImage forceFill(final NColor c)
+    {
+        Arrays.fill(this.a, c.a);
+        Arrays.fill(this.r, c.r);
+        Arrays.fill(this.g, c.g);
+        Arrays.fill(this.b, c.b);
+        return this;
+    }
+
+    public NImage fill(final NColor c)
+    {
+        if (this.cop == ColorOp.SET) return this.forceFill(c);
+
+        for (int i = 0; i < this.a.length; i++)
+            this.apply(this.cop, i, c.a, c.r, c.g, c.b);
 
         return this;
     }
@@ -211,37 +488,41 @@ public class NImage implements WorkerCallback<NImagePBlock>
         if (this.clampX == ClampMode.CLIP && x < 0 || x >= this.width) return NColor.BLACK_TRANS;
         if (this.clampY == ClampMode.CLIP && y < 0 || y >= this.height) return NColor.BLACK_TRANS;
 
-        return this.pixels[this.clampedPos(x, y)];
+        return this.get(this.clampedPos(x, y));
+    }
+
+    private static void saturate(final float[] plane)
+    {
+        for (int i = 0; i < plane.length; i++)
+            plane[i] = NMath.clamp(plane[i], 0, 1);
+    }
+
+    private static void invert(final float[] plane)
+    {
+        for (int i = 0; i < plane.length; i++)
+            plane[i] = 1.f - plane[i];
     }
 
     public NImage clampColors()
     {
-        for (int i = 0; i < this.pixels.length; i++)
-        {
-            this.pixels[i] = this.pixels[i].saturate();
-        }
+        saturate(this.a);
+        saturate(this.r);
+        saturate(this.g);
+        saturate(this.b);
         return this;
     }
 
     public NImage invertColors()
     {
-        for (int i = 0; i < this.pixels.length; i++)
-        {
-            final NColor c = this.pixels[i];
-            this.pixels[i] = new NColor(1.0 - c.a, 1.0 - c.r, 1.0 - c.g, 1.0 - c.b);
-        }
-
-        return this;
+        invert(this.a);
+        return this.invertColorsRGB();
     }
 
     public NImage invertColorsRGB()
     {
-        for (int i = 0; i < this.pixels.length; i++)
-        {
-            final NColor c = this.pixels[i];
-            this.pixels[i] = new NColor(c.a, 1.0 - c.r, 1.0 - c.g, 1.0 - c.b);
-        }
-
+        invert(this.r);
+        invert(this.g);
+        invert(this.b);
         return this;
     }
 
@@ -256,60 +537,132 @@ public class NImage implements WorkerCallback<NImagePBlock>
         this.cop = op;
     }
 
+    final ColorOp getColorOp()
+    {
+        return this.cop;
+    }
+
+    final ClampMode getClampX()
+    {
+        return this.clampX;
+    }
+
+    final ClampMode getClampY()
+    {
+        return this.clampY;
+    }
+
+    /**
+     * Maps all channels linearly from [min, max] (over all channels) to [0, 1].
+     */
     public NImage normalizeColors()
     {
-        float min = Float.MAX_VALUE;
-        float max = -Float.MAX_VALUE;
-        for (int i = 0; i < this.pixels.length; i++)
-        {
-            final NColor c = this.pixels[i];
-            min = Math.min(min, c.a);
-            min = Math.min(min, c.r);
-            min = Math.min(min, c.g);
-            min = Math.min(min, c.b);
-            max = Math.max(max, c.a);
-            max = Math.max(max, c.r);
-            max = Math.max(max, c.g);
-            max = Math.max(max, c.b);
-        }
-        float d = max - min;
-        if (d == 0)
-        {
-            d = 1;
-        }
-        else
-        {
-            d = 1.f / d;
-        }
-        for (int i = 0; i < this.pixels.length; i++)
+        final ImageStatistics stats = this.statistics(1);
+        final float min = stats.min();
+        final float max = stats.max();
+        final float d = max - min == 0 ? 1 : 1.f / (max - min);
+
+        return this.runPointOp(new PointOp()
         {
-            final NColor c = this.pixels[i];
-            this.pixels[i] = new NColor((c.a - min) * d, (c.r - min) * d, (c.g - min) * d, (c.b - min) * d);
-        }
-        return this;
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                for (int i = offset; i < offset + n; i++)
+                {
+                    a[i] = (a[i] - min) * d;
+                    r[i] = (r[i] - min) * d;
+                    g[i] = (g[i] - min) * d;
+                    b[i] = (b[i] - min) * d;
+                }
+            }
+        });
     }
 
-    public NImage setAlpha(final float alpha)
+    /**
+     * Gathers per channel statistics in a single (parallel) pass using
+     * {@link ImageStatistics#DEFAULT_BINS} histogram bins.
+     *
+     * @return The statistics.
+     */
+    public ImageStatistics statistics()
+    {
+        return this.statistics(ImageStatistics.DEFAULT_BINS);
+    }
+
+    /**
+     * Gathers per channel statistics in a single (parallel) pass.
+     *
+     * @param bins
+     *            Number of histogram bins.
+     * @return The statistics.
+     */
+    public ImageStatistics statistics(final int bins)
+    {
+        return ImageStatistics.of(this, bins);
+    }
+
+    /**
+     * Levels adjustment of red, green and blue: maps [inBlack, inWhite] to
+     * [0, 1], clamps, applies <code>1 / gamma</code> and maps the result to
+     * [outBlack, outWhite].
+     *
+     * @return This image.
+     */
+    public NImage levels(final float inBlack, final float inWhite, final float gamma, final float outBlack, final float outWhite)
+    {
+        final float[] black = { 0, inBlack, inBlack, inBlack }, white = { 1, inWhite, inWhite, inWhite };
+        return this.runPointOp(PointOp.levels(black, white, gamma, outBlack, outWhite));
+    }
+
+    /**
+     * Stretches red, green and blue separately, so that the given
+     * percentiles map to 0 and 1.
+     *
+     * @param low
+     *            Lower percentile, e.g. <code>0.005</code>.
+     * @param high
+     *            Upper percentile, e.g. <code>0.995</code>.
+     * @return This image.
+     * @see ImageStatistics#percentile(int, double)
+     */
+    public NImage autoLevels(final double low, final double high)
     {
-        for (int i = 0; i < this.pixels.length; i++)
+        final ImageStatistics stats = this.statistics();
+        final float[] black = new float[4], white = new float[4];
+        for (int c = 1; c < 4; c++)
         {
-            this.pixels[i] = new NColor(alpha, this.pixels[i]);
+            black[c] = stats.percentile(c, low);
+            white[c] = stats.percentile(c, high);
         }
+        return this.runPointOp(PointOp.levels(black, white, 1, 0, 1));
+    }
 
+    public NImage setAlpha(final float alpha)
+    {
+        Arrays.fill(this.a, alpha);
         return this;
     }
 
     public NImage toGrayscale()
     {
-        for (int i = 0; i < this.pixels.length; i++)
+        for (int i = 0; i < this.a.length; i++)
         {
-            final NColor c = this.pixels[i];
-            final float l = c.luminance();
-            this.pixels[i] = new NColor(c.a, l, l, l);
+            final float l = this.luminance(i);
+            this.r[i] = this.g[i] = this.b[i] = l;
         }
         return this;
     }
 
+    final float luminance(final int i)
+    {
+        return 0.299f * this.r[i] + 0.587f * this.g[i] + 0.114f * this.b[i];
+    }
+
+    final float[][] planes()
+    {
+        return new float[][] { this.a, this.r, this.g, this.b };
+    }
+
     public BufferedImage toBufferedImageARGB()
     {
         return this.toBufferedImageARGB(TO_sRGB);
@@ -319,16 +672,35 @@ public class NImage implements WorkerCallback<NImagePBlock>
     {
         final BufferedImage img = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB);
         final int[] pix = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
-        if (gamma != 1)
-        {
-            for (int i = 0; i < pix.length; i++)
-                pix[i] = this.pixels[i].toARGB(gamma);
-        }
-        else
+        final GammaTable lut = gamma != 1 ? GammaTable.get(gamma) : null;
+
+        this.runRows(new RangeWorker()
         {
-            for (int i = 0; i < pix.length; i++)
-                pix[i] = this.pixels[i].toARGB();
-        }
+            @Override
+            public void run(final int from, final int to)
+            {
+                final NImage self = NImage.this;
+                for (int i = from * self.width; i < to * self.width; i++)
+                {
+                    final int ia, ir, ig, ib;
+                    if (lut != null)
+                    {
+                        ia = NMath.clamp((int)(self.a[i] * 255.f), 0, 255);
+                        ir = lut.encode(NMath.clamp(self.r[i], 0.f, 1.f));
+                        ig = lut.encode(NMath.clamp(self.g[i], 0.f, 1.f));
+                        ib = lut.encode(NMath.clamp(self.b[i], 0.f, 1.f));
+                    }
+                    else
+                    {
+                        ia = NMath.clamp((int)(self.a[i] * 255.f + 0.5f), 0, 255);
+                        ir = NMath.clamp((int)(self.r[i] * 255.f + 0.5f), 0, 255);
+                        ig = NMath.clamp((int)(self.g[i] * 255.f + 0.5f), 0, 255);
+                        ib = NMath.clamp((int)(self.b[i] * 255.f + 0.5f), 0, 255);
+                    }
+                    pix[i] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+                }
+            }
+        });
         return img;
     }
 
@@ -338,56 +710,31 @@ public class NImage implements WorkerCallback<NImagePBlock>
     }
 
     public BufferedImage toBufferedImageARGBDithered(final double gamma)
+    {
+        return this.toBufferedImageARGBDithered(gamma, DitherMode.FLOYD_STEINBERG);
+    }
+
+    /**
+     * Converts this image into a dithered ARGB image. Error diffusion runs as
+     * a wavefront over blocks of pixels, ordered modes process rows
+     * independently; both use the thread count of this image.
+     *
+     * @param gamma
+     *            Gamma exponent applied to red, green and blue.
+     * @param mode
+     *            The dithering mode.
+     * @return A new BufferedImage.
+     */
+    public BufferedImage toBufferedImageARGBDithered(final double gamma, final DitherMode mode)
     {
         final BufferedImage img = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB);
         final int[] pix = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+        final NImageDitherer ditherer = new NImageDitherer(this, pix, gamma, mode);
 
-        final float[] err0 = new float[3 * this.width + 6];
-        final float[] err1 = new float[3 * this.width + 6];
-
-        final float e0 = 7.f / 16.f;
-        final float e1 = 3.f / 16.f;
-        final float e2 = 5.f / 16.f;
-        final float e3 = 1.f / 16.f;
-
-        for (int y = 0; y < this.height; y++)
-        {
-            System.arraycopy(err1, 0, err0, 0, err0.length);
-            Arrays.fill(err1, 0);
-            for (int x = 0; x < this.width; x++)
-            {
-                final int p = x * 3 + 3;
-                NColor co = this.pixels[x + y * this.width].saturate();
-                if (gamma != 1) co = co.powRGB(gamma);
-
-                final int a = NMath.clamp((int)(co.a * 255.f), 0, 255);
-                final int r = NMath.clamp((int)((co.r + err0[p]) * 255.f), 0, 255);
-                final int g = NMath.clamp((int)((co.g + err0[p + 1]) * 255.f), 0, 255);
-                final int b = NMath.clamp((int)((co.b + err0[p + 2]) * 255.f), 0, 255);
-
-                final float er = co.r - r / 255.f;
-                final float eg = co.g - g / 255.f;
-                final float eb = co.b - b / 255.f;
-
-                err0[p + 3 + 0] += er * e0;
-                err0[p + 3 + 1] += eg * e0;
-                err0[p + 3 + 2] += eb * e0;
-
-                err1[p - 3 + 0] += er * e1;
-                err1[p - 3 + 1] += eg * e1;
-                err1[p - 3 + 2] += eb * e1;
-
-                err1[p + 0] += er * e2;
-                err1[p + 1] += eg * e2;
-                err1[p + 2] += eb * e2;
-
-                err1[p + 3 + 0] += er * e3;
-                err1[p + 3 + 1] += eg * e3;
-                err1[p + 3 + 2] += eb * e3;
-
-                pix[x + y * this.width] = (a << 24) | (r << 16) | (g << 8) | b;
-            }
-        }
+        if (mode == DitherMode.FLOYD_STEINBERG)
+            ditherer.diffuse();
+        else
+            this.runRows(ditherer);
 
         return img;
     }
@@ -433,7 +780,7 @@ public class NImage implements WorkerCallback<NImagePBlock>
                         out = out.addRGB(specular, d);
                     }
                 }
-                this.pixels[x + y * this.width] = out;
+                this.set(x + y * this.width, out);
             }
         }
         return this;
@@ -441,7 +788,7 @@ public class NImage implements WorkerCallback<NImagePBlock>
 
     public NImage normals(final float scale)
     {
-        final NColor[] pix = new NColor[this.width * this.height];
+        final NImage out = new NImage(this.width, this.height);
         final float sx = scale * this.width / 512.0f;
         final float sy = scale * this.height / 512.0f;
 
@@ -454,7 +801,8 @@ public class NImage implements WorkerCallback<NImagePBlock>
                 {
                     for (int i = 0; i < 3; i++)
                     {
-                        final float l = this.getPixel(x + i - 1, y + n - 1).luminance();
+                        final int p = this.index(x + i - 1, y + n - 1);
+                        final float l = p < 0 ? 0 : this.luminance(p);
                         dx += l * SOBEL_X[i + n * 3];
                         dy += l * SOBEL_Y[i + n * 3];
                     }
@@ -465,20 +813,27 @@ public class NImage implements WorkerCallback<NImagePBlock>
                 final float dz = 1.f / len;
                 dx /= len;
                 dy /= len;
-                final NColor c = this.getPixel(x, y);
-                pix[x + y * this.width] = new NColor(NMath.saturate(dx * 0.5f + 0.5f), NMath.saturate(dy * 0.5f + 0.5f), NMath.saturate(dz * 0.5f + 0.5f),
-                        c.luminance());
+                out.set(x + y * this.width, NMath.saturate(dx * 0.5f + 0.5f), NMath.saturate(dy * 0.5f + 0.5f), NMath.saturate(dz * 0.5f + 0.5f),
+                        this.luminance(x + y * this.width));
             }
         }
 
-        System.arraycopy(pix, 0, this.pixels, 0, pix.length);
+        System.arraycopy(out.a, 0, this.a, 0, this.a.length);
+        System.arraycopy(out.r, 0, this.r, 0, this.r.length);
+        System.arraycopy(out.g, 0, this.g, 0, this.g.length);
+        System.arraycopy(out.b, 0, this.b, 0, this.b.length);
         return this;
     }
 
     public NImage perlin(final int seed, final float scalex, final float scaley, final int octaves, final float fallOff, final float amp, final NColor color0,
             final NColor color1)
     {
-        return this.runThreaded(new NImagePerlin(this, seed, scalex, scaley, octaves, fallOff, amp, color0, color1), BLOCK_SIZE);
+        if (!NoiseFields.isCacheable(this.width, this.height))
+            return this.runPointOp(PointOp.perlin(new NImagePerlin(this.width, this.height, seed, scalex, scaley, octaves, fallOff, amp), color0,
+                    color1));
+
+        return this.runPointOp(PointOp.lerp(this.width, NoiseFields.perlin(this.width, this.height, seed, scalex, scaley, octaves, fallOff, amp,
+                this.processingThreads), color0, color1));
     }
 
     public final static float distOnTorus(final float[] a, final float[] b)
@@ -488,48 +843,168 @@ public class NImage implements WorkerCallback<NImagePBlock>
         return (float)Math.sqrt(dx * dx + dy * dy);
     }
 
+    /**
+     * Runs the worker over all rows of this image, split into row bands if
+     * the thread count is greater than one.
+     */
+    final NImage runRows(final RangeWorker worker)
+    {
+        return this.runRows(this.height, this.width, worker);
+    }
+
+    /**
+     * Runs the worker over [0, rows) using the thread count of this image,
+     * with bands of at least {@link #MIN_BAND_PIXELS} pixels.
+     */
+    final NImage runRows(final int rows, final int rowWidth, final RangeWorker worker)
+    {
+        if (this.processingThreads < 2)
+        {
+            worker.run(0, rows);
+        }
+        else
+        {
+            final int bands = this.processingThreads * 4;
+            final int grain = Math.max((rows + bands - 1) / bands, (MIN_BAND_PIXELS + rowWidth - 1) / Math.max(1, rowWidth));
+            Parallel.forRange(0, rows, grain, worker);
+        }
+        return this;
+    }
+
+    /**
+     * Runs the point operation over all rows of this image.
+     */
+    final NImage runPointOp(final PointOp op)
+    {
+        return this.runRows(new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                final NImage self = NImage.this;
+                for (int y = from; y < to; y++)
+                    op.apply(self.a, self.r, self.g, self.b, y * self.width, self.width, 0, y);
+            }
+        });
+    }
+
     public synchronized NImage runThreaded(final Worker<NImagePBlock> worker, final int blockSize)
     {
         if (this.processingThreads < 2)
         {
             final NImagePBlock block = new NImagePBlock(0, 0, this.width, this.height);
             worker.run(block);
-            System.arraycopy(block.pixels, 0, this.pixels, 0, this.pixels.length);
+            this.copyBlock(block);
         }
         else
         {
-            final WorkerPool<NImagePBlock> pool = WorkerPool.start(this, this.processingThreads, 512, true);
             final int wx = (this.width + blockSize - 1) / blockSize;
             final int wy = (this.height + blockSize - 1) / blockSize;
-            for (int y = 0; y < wy; y++)
+            // Blocks don't overlap, so each task can copy its own block back
+            Parallel.forRange(0, wx * wy, Math.max(1, wx * wy / (this.processingThreads * 4)), new RangeWorker()
             {
-                final int ry = y * blockSize;
-                final int rh = Math.min(this.height - ry, blockSize);
-                for (int x = 0; x < wx; x++)
+                @Override
+                public void run(final int from, final int to)
                 {
-                    final int rx = x * blockSize;
-                    final int rw = Math.min(this.width - rx, blockSize);
-                    pool.enqueue(worker, new NImagePBlock(rx, ry, rw, rh));
+                    for (int i = from; i < to; i++)
+                    {
+                        final int rx = (i % wx) * blockSize;
+                        final int ry = (i / wx) * blockSize;
+                        final NImagePBlock block = new NImagePBlock(rx, ry, Math.min(NImage.this.width - rx, blockSize), Math.min(NImage.this.height - ry,
+                                blockSize));
+                        worker.run(block);
+                        NImage.this.copyBlock(block);
+                    }
                 }
-            }
-            pool.stop();
+            });
         }
 
         return this;
     }
 
-    @Override
-    public void workerCallback(final WorkerPool<NImagePBlock> pool, final WorkerStatus status, final Worker<NImagePBlock> worker, final NImagePBlock p)
+    private void copyBlock(final NImagePBlock p)
     {
         for (int y = 0; y < p.h; y++)
-            System.arraycopy(p.pixels, y * p.w, this.pixels, p.x + (y + p.y) * this.width, p.w);
+        {
+            final int o = p.x + (y + p.y) * this.width;
+            for (int x = 0; x < p.w; x++)
+                this.set(o + x, p.pixels[x + y * p.w]);
+        }
     }
 
     public NImage boxDownsample(final int fx, final int fy)
     {
         final NImage ret = new NImage(this.width / fx, this.height / fy);
         ret.setThreadCount(this.processingThreads);
-        return ret.runThreaded(new NImageBoxDownsampler(this, fx, fy), BLOCK_SIZE);
+        return ret.runRows(new NImageBoxDownsampler(this, ret, fx, fy));
+    }
+
+    /**
+     * Resizes this image to an arbitrary size using bicubic filtering.
+     *
+     * @param newWidth
+     *            The new width.
+     * @param newHeight
+     *            The new height.
+     * @return A new image.
+     * @see #resize(int, int, ResizeFilter)
+     */
+    public NImage resize(final int newWidth, final int newHeight)
+    {
+        return this.resize(newWidth, newHeight, ResizeFilter.BICUBIC);
+    }
+
+    /**
+     * Resizes this image to an arbitrary size using separable filtering,
+     * running in parallel by rows. Clamping modes are ignored: filter taps
+     * outside of the image get dropped and the remaining weights
+     * renormalized.
+     *
+     * @param newWidth
+     *            The new width.
+     * @param newHeight
+     *            The new height.
+     * @param filter
+     *            The filter.
+     * @return A new image.
+     */
+    public NImage resize(final int newWidth, final int newHeight, final ResizeFilter filter)
+    {
+        if (newWidth < 1 || newHeight < 1) throw new IllegalArgumentException("Size must be greater than zero");
+
+        final NImage temp = new NImage(newWidth, this.height);
+        temp.setThreadCount(this.processingThreads);
+        temp.runRows(new NImageResizer(this, temp, filter, 0));
+
+        final NImage ret = new NImage(newWidth, newHeight);
+        ret.setThreadCount(this.processingThreads);
+        return ret.runRows(new NImageResizer(temp, ret, filter, 1));
+    }
+
+    /**
+     * Creates a lazily built image pyramid of this image.
+     *
+     * @return The pyramid.
+     * @see NImagePyramid
+     */
+    public NImagePyramid pyramid()
+    {
+        return new NImagePyramid(this, 1);
+    }
+
+    /**
+     * Creates a lazily built image pyramid of this image, averaging red,
+     * green and blue in linear space.
+     *
+     * @param gamma
+     *            Gamma of the color channels, e.g. <code>2.2</code> for sRGB
+     *            like values.
+     * @return The pyramid.
+     * @see NImagePyramid
+     */
+    public NImagePyramid pyramid(final double gamma)
+    {
+        return new NImagePyramid(this, gamma);
     }
 
     public NImage decimate(final int fx, final int fy)
@@ -551,16 +1026,90 @@ public class NImage implements WorkerCallback<NImagePBlock>
 
     public NImage filter(final FilterKernel kernel)
     {
-        if (kernel.isSingle) return this.runThreaded(new NImageFilter(new NImage(this), kernel, 0), BLOCK_SIZE);
+        if (kernel.isSingle)
+        {
+            if (kernel.width * kernel.height < FFT_THRESHOLD) return this.runRows(new NImageFilter(new NImage(this), this, kernel, 0));
+
+            final NImageFFTFilter fft = new NImageFFTFilter(new NImage(this), this, kernel);
+            if (this.processingThreads < 2)
+                fft.run(0, fft.tiles());
+            else
+                Parallel.forRange(0, fft.tiles(), 1, fft);
+            return this;
+        }
+
+        final NImage temp = new NImage(this);
+        temp.setClampMode(this.clampX, this.clampY);
+        final boolean boxX = kernel.width >= BOX_THRESHOLD && FilterKernel.isConstant(kernel.xf);
+        final boolean boxY = kernel.height >= BOX_THRESHOLD && FilterKernel.isConstant(kernel.yf);
+        this.runRows(new NImageFilter(this, temp, kernel, boxX ? 3 : 1));
+        return this.runRows(new NImageFilter(temp, this, kernel, boxY ? 4 : 2));
+    }
+
+    /**
+     * Box blur using running sums, the cost per pixel is independent of the
+     * radii.
+     *
+     * @param rx
+     *            Horizontal radius.
+     * @param ry
+     *            Vertical radius.
+     * @return this
+     * @see FilterKernel#box(int, int)
+     */
+    public NImage boxBlur(final int rx, final int ry)
+    {
+        return this.filter(FilterKernel.box(rx, ry));
+    }
 
-        this.runThreaded(new NImageFilter(this, kernel, 1), BLOCK_SIZE);
-        return this.runThreaded(new NImageFilter(this, kernel, 2), BLOCK_SIZE);
+    /**
+     * Creates a summed-area table of this image, which answers box sums of
+     * arbitrary size in constant time and can be reused for repeated box
+     * filters and downsampling.
+     *
+     * @return The summed-area table.
+     */
+    public SummedAreaTable summedAreaTable()
+    {
+        return new SummedAreaTable(this);
+    }
+
+    /**
+     * Returns a deferred view of this image, which records point-wise
+     * operations and evaluates them fused in a single pass.
+     *
+     * @return A new DeferredImage.
+     * @see DeferredImage
+     */
+    public DeferredImage defer()
+    {
+        return new DeferredImage(this);
     }
 
     public NImage combine(final NImage other, final ColorOp colorOp, final int dx, final int dy, final int sx, final int sy, final int w, final int h)
     {
         final int tw = Math.min(Math.min(w, other.width - sx), this.width - dx);
         final int th = Math.min(Math.min(h, other.height - sy), this.height - dy);
+
+        if (other != this && dx >= 0 && dy >= 0 && sx >= 0 && sy >= 0)
+        {
+            // Both rectangles lie inside, so clamping doesn't matter
+            if (tw <= 0 || th <= 0) return this;
+            return this.runRows(th, tw, new RangeWorker()
+            {
+                @Override
+                public void run(final int from, final int to)
+                {
+                    final NImage self = NImage.this;
+                    for (int y = from; y < to; y++)
+                    {
+                        applySpan(colorOp, self.a, self.r, self.g, self.b, dx + (dy + y) * self.width, other.a, other.r, other.g, other.b, sx
+                                + (sy + y) * other.width, tw);
+                    }
+                }
+            });
+        }
+
         final ColorOp old = this.cop;
 
         this.cop = colorOp;
@@ -599,7 +1148,7 @@ public class NImage implements WorkerCallback<NImagePBlock>
     public NImage voronoi(final int seed, final int max, final float minDist, final float fallOff, final boolean invert, final boolean colorCells,
             final NColor color0, final NColor color1)
     {
-        return this.runThreaded(new NImageVoronoi(this, seed, max, minDist, fallOff, invert, colorCells, color0, color1), BLOCK_SIZE);
+        return this.runRows(new NImageVoronoi(this, seed, max, minDist, fallOff, invert, colorCells, color0, color1));
     }
 
     public NImage bricks(final int seed, final int bricksx, final int bricksy, final float jointsx, final float jointsy, final float singleProb,
@@ -654,7 +1203,7 @@ public class NImage implements WorkerCallback<NImagePBlock>
 
                 if (jx < 1 | jy < 1) col = col.lerp(colorJoints, (float)Math.pow(1.0 - NMath.saturate(jx) * NMath.saturate(jy), jointHardness));
 
-                this.pixels[x + y * this.width] = col;
+                this.set(x + y * this.width, col);
             }
         }
 
@@ -808,14 +1357,18 @@ public class NImage implements WorkerCallback<NImagePBlock>
         final double vx = dx / len;
         final double vy = dy / len;
 
-        final NPoint[] points = new NPoint[4];
+        final int[] xs = new int[4], ys = new int[4];
 
-        points[0] = new NPoint((int)(x0 - vy * w), (int)(y0 + vx * w));
-        points[1] = new NPoint((int)(x0 + vy * w), (int)(y0 - vx * w));
-        points[2] = new NPoint((int)(x1 + vy * w), (int)(y1 - vx * w));
-        points[3] = new NPoint((int)(x1 - vy * w), (int)(y1 + vx * w));
+        xs[0] = (int)(x0 - vy * w);
+        ys[0] = (int)(y0 + vx * w);
+        xs[1] = (int)(x0 + vy * w);
+        ys[1] = (int)(y0 - vx * w);
+        xs[2] = (int)(x1 + vy * w);
+        ys[2] = (int)(y1 - vx * w);
+        xs[3] = (int)(x1 - vy * w);
+        ys[3] = (int)(y1 + vx * w);
 
-        this.fillPolygon(points, color);
+        this.fillOutline(xs, ys, 4, color);
     }
 
     public void drawHLine(final int x, final int y, final int w, final NColor color)
@@ -825,6 +1378,15 @@ public class NImage implements WorkerCallback<NImagePBlock>
             this.setPixel(x, y, color);
             return;
         }
+        if (x >= 0 && x + w <= this.width)
+        {
+            // Completely inside horizontally, clamping only affects y
+            final int row = this.index(0, y);
+            if (row < 0) return;
+            for (int i = row + x; i < row + x + w; i++)
+                apply(this.cop, this.a, this.r, this.g, this.b, i, color.a, color.r, color.g, color.b);
+            return;
+        }
         for (int i = x; i < x + w; i++)
         {
             this.setPixel(i, y, color);
@@ -878,52 +1440,124 @@ public class NImage implements WorkerCallback<NImagePBlock>
             this.drawLine(Colls.last(points).x, Colls.last(points).y, Colls.head(points).x, Colls.head(points).y, color);
     }
 
-    private void _fillPolygon(final List<NPoint> dpoints, final NColor color)
+    /**
+     * Fills the rows of the polygon's outline (as drawn by
+     * {@link #drawPolygon(NPoint[], NColor)}) from the leftmost to the
+     * rightmost outline pixel.
+     */
+    private void fillOutline(final int[] xs, final int[] ys, final int count, final NColor color)
     {
-        Colls.sort(dpoints);
+        if (count < 1) return;
 
-        int i = 0;
-        int oy = dpoints.get(i).y;
-        for (; i < dpoints.size();)
+        int top = ys[0], bottom = ys[0];
+        for (int i = 1; i < count; i++)
         {
-            final int sx = dpoints.get(i).x;
-            int ex = 0;
-            while (i < dpoints.size() && dpoints.get(i).y == oy)
-            {
-                ex = dpoints.get(i++).x;
-            }
-            this.drawHLine(sx, oy, ex - sx + 1, color);
-            if (i < dpoints.size())
+            top = Math.min(top, ys[i]);
+            bottom = Math.max(bottom, ys[i]);
+        }
+
+        final int rows = bottom - top + 1;
+        final int[] left = new int[rows], right = new int[rows];
+        Arrays.fill(left, Integer.MAX_VALUE);
+        Arrays.fill(right, Integer.MIN_VALUE);
+
+        for (int i = 0; i < count; i++)
+        {
+            final int j = i + 1 < count ? i + 1 : 0;
+            int x = xs[i], y = ys[i];
+            final int x1 = xs[j], y1 = ys[j];
+            final int dx = Math.abs(x1 - x), dy = Math.abs(y1 - y);
+            final int sx = Integer.signum(x1 - x), sy = Integer.signum(y1 - y);
+            int a = dx - dy;
+
+            // Same stepping as drawLine()
+            for (;;)
             {
-                oy = dpoints.get(i).y;
+                final int row = y - top;
+                if (x < left[row]) left[row] = x;
+                if (x > right[row]) right[row] = x;
+                if (x == x1 && y == y1) break;
+
+                if (a >= 0)
+                {
+                    x += sx;
+                    a -= dy;
+                }
+                if (a < 0)
+                {
+                    y += sy;
+                    a += dx;
+                }
             }
         }
+
+        for (int row = 0; row < rows; row++)
+            this.drawHLine(left[row], top + row, right[row] - left[row] + 1, color);
     }
 
+    /**
+     * Fills a polygon, covering the same pixels as its outline drawn by
+     * {@link #drawPolygon(NPoint[], NColor)} plus every pixel in between the
+     * leftmost and rightmost outline pixel of each row (which is the interior
+     * for convex polygons).
+     */
     public void fillPolygon(final NPoint[] points, final NColor color)
     {
-        final List<NPoint> dpoints = Colls.list();
-
-        for (int i = 0; i < points.length - 1; i++)
-            drawLine(points[i].x, points[i].y, points[i + 1].x, points[i + 1].y, dpoints);
-
-        if (!points[0].equals(points[points.length - 1]))
-            drawLine(points[points.length - 1].x, points[points.length - 1].y, points[0].x, points[0].y, dpoints);
-
-        this._fillPolygon(dpoints, color);
+        final int[] xs = new int[points.length], ys = new int[points.length];
+        for (int i = 0; i < points.length; i++)
+        {
+            xs[i] = points[i].x;
+            ys[i] = points[i].y;
+        }
+        this.fillOutline(xs, ys, points.length, color);
     }
 
+    /**
+     * Fills a polygon, see {@link #fillPolygon(NPoint[], NColor)}.
+     */
     public void fillPolygon(final List<NPoint> points, final NColor color)
     {
-        final List<NPoint> dpoints = Colls.list();
-
-        for (int i = 0; i < points.size() - 1; i++)
-            drawLine(points.get(i).x, points.get(i).y, points.get(i + 1).x, points.get(i + 1).y, dpoints);
-
-        if (!Colls.head(points).equals(Colls.last(points)))
-            drawLine(Colls.last(points).x, Colls.last(points).y, Colls.head(points).x, Colls.head(points).y, dpoints);
-
-        this._fillPolygon(dpoints, color);
+        final int n = points.size();
+        final int[] xs = new int[n], ys = new int[n];
+        int i = 0;
+        for (final NPoint p : points)
+        {
+            xs[i] = p.x;
+            ys[i++] = p.y;
+        }
+        this.fillOutline(xs, ys, n, color);
+    }
+
+    /**
+     * Fills a polygon. Vertices lie on pixel corners, a pixel gets filled if
+     * its centre is inside.
+     *
+     * @param xs
+     *            X coordinates.
+     * @param ys
+     *            Y coordinates.
+     * @param count
+     *            Number of vertices.
+     * @param rule
+     *            The fill rule.
+     * @param antialias
+     *            {@code true} for coverage based anti-aliasing.
+     * @param color
+     *            The fill color.
+     * @see PolygonRasterizer
+     */
+    public void fillPolygon(final float[] xs, final float[] ys, final int count, final FillRule rule, final boolean antialias, final NColor color)
+    {
+        this.rasterize(new PolygonRasterizer(rule, antialias).addPolygon(xs, ys, count), color);
+    }
+
+    /**
+     * Fills the outline of the given rasterizer, all rasterizer based polygon
+     * fills go through here.
+     */
+    void rasterize(final PolygonRasterizer pr, final NColor color)
+    {
+        pr.fill(this, color);
     }
 
     public void drawCircle(final int x, final int y, final int radius, final NColor color)
@@ -1,53 +1,113 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package com.github.rjeschke.neetutils.graphics;
 
-import com.github.rjeschke.neetutils.concurrent.Worker;
+import java.util.Arrays;
+
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
 
 /**
  *
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
  */
-class NImageBoxDownsampler implements Worker<NImagePBlock>
+class NImageBoxDownsampler implements RangeWorker
 {
     final NImage image;
+    final NImage dst;
     final int    fx;
     final int    fy;
+    /** Gamma of red, green and blue, which get averaged in linear space. */
+    final double gamma;
 
-    NImageBoxDownsampler(final NImage image, final int fx, final int fy)
+    NImageBoxDownsampler(final NImage image, final NImage dst, final int fx, final int fy)
+    {
+        this(image, dst, fx, fy, 1);
+    }
+
+    NImageBoxDownsampler(final NImage image, final NImage dst, final int fx, final int fy, final double gamma)
     {
         this.image = image;
+        this.dst = dst;
         this.fx = fx;
         this.fy = fy;
+        this.gamma = gamma;
     }
 
     @Override
-    public void run(final NImagePBlock p)
+    public void run(final int from, final int to)
     {
+        // Source and destination sizes guarantee all taps to be inside the
+        // source image, so rows get summed up directly, keeping the per
+        // pixel summation order (y1, then x1).
         final float div = this.fx * this.fy;
-        for (int y = 0; y < p.h; y++)
+        final int sw = this.image.width;
+        final int dw = this.dst.width;
+        final float[][] src = this.image.planes();
+        final float[][] out = this.dst.planes();
+        final float[] acc = new float[dw];
+
+        for (int y = from; y < to; y++)
         {
-            for (int x = 0; x < p.w; x++)
+            for (int c = 0; c < 4; c++)
             {
-                final int rx = (x + p.x) * this.fx;
-                final int ry = (y + p.y) * this.fy;
-
-                float a = 0, r = 0, g = 0, b = 0;
-
+                if (c > 0 && this.gamma != 1)
+                {
+                    this.runGamma(y, src[c], out[c]);
+                    continue;
+                }
+                final float[] p = src[c];
+                Arrays.fill(acc, 0);
                 for (int y1 = 0; y1 < this.fy; y1++)
                 {
-                    for (int x1 = 0; x1 < this.fx; x1++)
+                    final int row = (y * this.fy + y1) * sw;
+                    for (int x = 0; x < dw; x++)
                     {
-                        final NColor c = this.image.getPixel(rx + x1, ry + y1);
-
-                        a += c.a;
-                        r += c.r;
-                        g += c.g;
-                        b += c.b;
+                        final int o = row + x * this.fx;
+                        float s = acc[x];
+                        for (int x1 = 0; x1 < this.fx; x1++)
+                            s += p[o + x1];
+                        acc[x] = s;
                     }
                 }
+                final float[] o = out[c];
+                final int d = y * dw;
+                for (int x = 0; x < dw; x++)
+                    o[d + x] = acc[x] / div;
+            }
+        }
+    }
+
+    private void runGamma(final int y, final float[] p, final float[] o)
+    {
+        final int sw = this.image.width;
+        final int dw = this.dst.width;
+        final double div = this.fx * this.fy;
+        final double inv = 1.0 / this.gamma;
 
-                p.pixels[x + y * p.w] = new NColor(a / div, r / div, g / div, b / div);
+        for (int x = 0; x < dw; x++)
+        {
+            double sum = 0;
+            for (int y1 = 0; y1 < this.fy; y1++)
+            {
+                final int row = (y * this.fy + y1) * sw + x * this.fx;
+                for (int x1 = 0; x1 < this.fx; x1++)
+                    sum += Math.pow(Math.max(0, p[row + x1]), this.gamma);
             }
+            o[x + y * dw] = (float)Math.pow(sum / div, inv);
         }
     }
 }
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.Arrays;
+
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
+import com.github.rjeschke.neetutils.math.NMath;
+import com.github.rjeschke.neetutils.rng.RNG;
+import com.github.rjeschke.neetutils.rng.RNGFactory;
+import com.github.rjeschke.neetutils.rng.RNGType;
+
+/**
+ * Dithered conversion of an image into 8 bit ARGB pixels.
+ *
+ * <p>
+ * Ordered modes add a per-position threshold before truncating and process
+ * rows independently (see {@link #run(int, int)}).
+ * </p>
+ *
+ * <p>
+ * Floyd-Steinberg ({@link #diffuse()}) is inherently sequential, pixel
+ * <code>(x, y)</code> depends on the errors of <code>(x - 1, y)</code> and
+ * <code>(x - 1 .. x + 1, y - 1)</code>. Rows get grouped into bands of
+ * {@link #BAND} rows, bands get cut into blocks which are skewed by
+ * {@link #LAG} pixels per row, so that block <code>(band, k)</code> only
+ * depends on blocks <code>(band, k - 1)</code> and
+ * <code>(band - 1, k + 1)</code>. All blocks on a wavefront
+ * <code>2 * band + k</code> are independent and run in parallel. Errors get
+ * accumulated in exactly the same order as a serial pass, so the result does
+ * not depend on the number of threads.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+class NImageDitherer implements RangeWorker
+{
+    /** Rows per band. */
+    final static int      BAND = 16;
+    /**
+     * Skew per row, a row must trail the previous one by two pixels plus
+     * one, so that all errors from above get added before the one from the
+     * left.
+     */
+    final static int      LAG  = 3;
+    final NImage          image;
+    final int[]           pix;
+    final double          gamma;
+    final float[]         thresholds;
+    final int             mask;
+    final int             shift;
+
+    NImageDitherer(final NImage image, final int[] pix, final double gamma, final DitherMode mode)
+    {
+        this.image = image;
+        this.pix = pix;
+        this.gamma = gamma;
+        switch (mode)
+        {
+        case ORDERED:
+            this.thresholds = Bayer.THRESHOLDS;
+            this.shift = 3;
+            break;
+        case BLUE_NOISE:
+            this.thresholds = BlueNoise.THRESHOLDS;
+            this.shift = BlueNoise.SHIFT;
+            break;
+        default:
+            this.thresholds = null;
+            this.shift = 0;
+            break;
+        }
+        this.mask = (1 << this.shift) - 1;
+    }
+
+    /**
+     * Ordered dithering of the rows [from, to).
+     */
+    @Override
+    public void run(final int from, final int to)
+    {
+        final NImage img = this.image;
+        final float[] t = this.thresholds;
+        for (int y = from; y < to; y++)
+        {
+            final int row = (y & this.mask) << this.shift;
+            for (int x = 0, i = y * img.width; x < img.width; x++, i++)
+            {
+                final float ca = NMath.clamp(img.a[i], 0, 1);
+                float cr = NMath.clamp(img.r[i], 0, 1);
+                float cg = NMath.clamp(img.g[i], 0, 1);
+                float cb = NMath.clamp(img.b[i], 0, 1);
+                if (this.gamma != 1)
+                {
+                    cr = (float)Math.pow(cr, this.gamma);
+                    cg = (float)Math.pow(cg, this.gamma);
+                    cb = (float)Math.pow(cb, this.gamma);
+                }
+                final float d = t[row + (x & this.mask)];
+
+                final int a = NMath.clamp((int)(ca * 255.f), 0, 255);
+                final int r = NMath.clamp((int)(cr * 255.f + d), 0, 255);
+                final int g = NMath.clamp((int)(cg * 255.f + d), 0, 255);
+                final int b = NMath.clamp((int)(cb * 255.f + d), 0, 255);
+
+                this.pix[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * Floyd-Steinberg error diffusion over the whole image, using the image's
+     * thread count.
+     */
+    void diffuse()
+    {
+        final int width = this.image.width;
+        final int height = this.image.height;
+        if (width == 0 || height == 0) return;
+
+        final int threads = this.image.getThreadCount();
+        final int bands = (height + BAND - 1) / BAND;
+        final int skew = LAG * (BAND - 1);
+        // Two blocks per thread and band keep enough bands in flight
+        final int blockWidth = threads < 2 ? width + skew : Math.max(skew + 2, (width + 2 * threads - 1) / (2 * threads));
+        final int blocks = (width + skew + blockWidth - 1) / blockWidth;
+
+        // Row y's errors live in errors[y % rows], the buffer gets cleared when
+        // row y - 1 starts; a band finishes before the band (blocks / 2 + 1)
+        // below it starts
+        final int rows = Math.min(height + 1, BAND * (blocks / 2 + 2));
+        final float[][] errors = new float[rows][3 * width + 6];
+
+        for (int step = 0; step < 2 * (bands - 1) + blocks; step++)
+        {
+            final int lo = Math.max(0, (step - blocks + 2) / 2);
+            final int hi = Math.min(bands - 1, step / 2);
+            final int wave = step;
+            final RangeWorker worker = new RangeWorker()
+            {
+                @Override
+                public void run(final int from, final int to)
+                {
+                    for (int band = from; band < to; band++)
+                        NImageDitherer.this.block(band, wave - 2 * band, blockWidth, blocks, errors);
+                }
+            };
+            if (threads < 2 || lo == hi)
+                worker.run(lo, hi + 1);
+            else
+                Parallel.forRange(lo, hi + 1, 1, worker);
+        }
+    }
+
+    void block(final int band, final int k, final int blockWidth, final int blocks, final float[][] errors)
+    {
+        final int width = this.image.width;
+        final int y0 = band * BAND;
+        final int y1 = Math.min(this.image.height, y0 + BAND);
+        for (int y = y0; y < y1; y++)
+        {
+            final int xs = Math.max(0, k * blockWidth - LAG * (y - y0));
+            final int xe = k == blocks - 1 ? width : Math.min(width, (k + 1) * blockWidth - LAG * (y - y0));
+            final float[] err1 = errors[(y + 1) % errors.length];
+            if (k == 0) Arrays.fill(err1, 0);
+            if (xs < xe) this.diffuseRow(y, xs, xe, errors[y % errors.length], err1);
+        }
+    }
+
+    private void diffuseRow(final int y, final int xs, final int xe, final float[] err0, final float[] err1)
+    {
+        final NImage img = this.image;
+        final float e0 = 7.f / 16.f;
+        final float e1 = 3.f / 16.f;
+        final float e2 = 5.f / 16.f;
+        final float e3 = 1.f / 16.f;
+
+        for (int x = xs; x < xe; x++)
+        {
+            final int p = x * 3 + 3;
+            final int i = x + y * img.width;
+            final float ca = NMath.clamp(img.a[i], 0, 1);
+            float cr = NMath.clamp(img.r[i], 0, 1);
+            float cg = NMath.clamp(img.g[i], 0, 1);
+            float cb = NMath.clamp(img.b[i], 0, 1);
+            if (this.gamma != 1)
+            {
+                cr = (float)Math.pow(cr, this.gamma);
+                cg = (float)Math.pow(cg, this.gamma);
+                cb = (float)Math.pow(cb, this.gamma);
+            }
+
+            final int a = NMath.clamp((int)(ca * 255.f), 0, 255);
+            final int r = NMath.clamp((int)((cr + err0[p]) * 255.f), 0, 255);
+            final int g = NMath.clamp((int)((cg + err0[p + 1]) * 255.f), 0, 255);
+            final int b = NMath.clamp((int)((cb + err0[p + 2]) * 255.f), 0, 255);
+
+            final float er = cr - r / 255.f;
+            final float eg = cg - g / 255.f;
+            final float eb = cb - b / 255.f;
+
+            err0[p + 3 + 0] += er * e0;
+            err0[p + 3 + 1] += eg * e0;
+            err0[p + 3 + 2] += eb * e0;
+
+            err1[p - 3 + 0] += er * e1;
+            err1[p - 3 + 1] += eg * e1;
+            err1[p - 3 + 2] += eb * e1;
+
+            err1[p + 0] += er * e2;
+            err1[p + 1] += eg * e2;
+            err1[p + 2] += eb * e2;
+
+            err1[p + 3 + 0] += er * e3;
+            err1[p + 3 + 1] += eg * e3;
+            err1[p + 3 + 2] += eb * e3;
+
+            this.pix[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private final static class Bayer
+    {
+        final static float[] THRESHOLDS = new float[64];
+
+        static
+        {
+            for (int y = 0; y < 8; y++)
+            {
+                for (int x = 0; x < 8; x++)
+                {
+                    // Bit interleaving of x ^ y and y, reversed
+                    final int v = x ^ y;
+                    final int m = ((v & 1) << 5) | ((y & 1) << 4) | ((v & 2) << 2) | ((y & 2) << 1) | ((v & 4) >> 1) | ((y & 4) >> 2);
+                    THRESHOLDS[x + y * 8] = (m + 0.5f) / 64.f;
+                }
+            }
+        }
+    }
+
+    /**
+     * Blue noise threshold map created using the void-and-cluster method on
+     * a torus.
+     */
+    private final static class BlueNoise
+    {
+        final static int     SHIFT      = 6;
+        final static int     SIZE       = 1 << SHIFT;
+        final static float[] THRESHOLDS = create(SIZE, 1.5, 4711);
+
+        private static float[] create(final int size, final double sigma, final long seed)
+        {
+            final int n = size * size;
+            final double[] kernel = new double[n];
+            for (int y = 0; y < size; y++)
+            {
+                final int dy = Math.min(y, size - y);
+                for (int x = 0; x < size; x++)
+                {
+                    final int dx = Math.min(x, size - x);
+                    kernel[x + y * size] = Math.exp(-(dx * dx + dy * dy) / (2 * sigma * sigma));
+                }
+            }
+
+            final boolean[] pattern = new boolean[n];
+            final double[] energy = new double[n];
+            final RNG rnd = RNGFactory.create(RNGType.LCG, seed);
+            int ones = 0;
+            while (ones < n / 10)
+            {
+                final int i = rnd.nextInt(n);
+                if (pattern[i]) continue;
+                toggle(pattern, energy, kernel, size, i);
+                ones++;
+            }
+
+            // Move points from the tightest cluster into the largest void
+            // until stable
+            for (;;)
+            {
+                final int c = find(pattern, energy, true);
+                toggle(pattern, energy, kernel, size, c);
+                final int v = find(pattern, energy, false);
+                toggle(pattern, energy, kernel, size, v);
+                if (v == c) break;
+            }
+
+            final int[] rank = new int[n];
+            final boolean[] proto = pattern.clone();
+            final double[] protoEnergy = energy.clone();
+
+            // Rank the initial points by removing tightest clusters
+            for (int r = ones - 1; r >= 0; r--)
+            {
+                final int c = find(pattern, energy, true);
+                toggle(pattern, energy, kernel, size, c);
+                rank[c] = r;
+            }
+
+            // Fill the largest voids for the remaining ranks
+            System.arraycopy(proto, 0, pattern, 0, n);
+            System.arraycopy(protoEnergy, 0, energy, 0, n);
+            for (int r = ones; r < n; r++)
+            {
+                final int v = find(pattern, energy, false);
+                toggle(pattern, energy, kernel, size, v);
+                rank[v] = r;
+            }
+
+            final float[] ret = new float[n];
+            for (int i = 0; i < n; i++)
+                ret[i] = (rank[i] + 0.5f) / n;
+            return ret;
+        }
+
+        private static void toggle(final boolean[] pattern, final double[] energy, final double[] kernel, final int size, final int i)
+        {
+            final double sign = pattern[i] ? -1 : 1;
+            pattern[i] = !pattern[i];
+            final int mask = size - 1, px = i & mask, py = i / size;
+            for (int y = 0; y < size; y++)
+            {
+                final int ky = ((y - py) & mask) * size;
+                for (int x = 0; x < size; x++)
+                    energy[x + y * size] += sign * kernel[((x - px) & mask) + ky];
+            }
+        }
+
+        /**
+         * @return The set pixel with the highest energy (tightest cluster) or
+         *         the unset pixel with the lowest energy (largest void).
+         */
+        private static int find(final boolean[] pattern, final double[] energy, final boolean set)
+        {
+            int best = -1;
+            for (int i = 0; i < pattern.length; i++)
+            {
+                if (pattern[i] != set) continue;
+                if (best < 0 || (set ? energy[i] > energy[best] : energy[i] < energy[best])) best = i;
+            }
+            return best;
+        }
+    }
+}
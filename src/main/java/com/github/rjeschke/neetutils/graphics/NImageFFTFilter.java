@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
+import com.github.rjeschke.neetutils.math.FFT;
+
+/**
+ * FFT based evaluation of 2D kernels (mode 0 of {@link NImageFilter}) for
+ * large kernel sizes, runs over tile indices [from, to).
+ *
+ * <p>
+ * Uses overlap-save: the source gets processed in tiles of a power of two
+ * size, each tile yields <code>(tw - kw + 1) x (th - kh + 1)</code> output
+ * pixels. Two channels at a time get packed into the real and imaginary parts
+ * of a complex tile, which works because the kernel is real. The kernel
+ * spectrum is computed once. Clamping is resolved like
+ * {@link NImageFilter}, results match the direct evaluation up to
+ * floating-point rounding.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+class NImageFFTFilter implements RangeWorker
+{
+    final NImage       src;
+    final NImage       dst;
+    final FilterKernel filter;
+    final int          tw;
+    final int          th;
+    final int          ow;
+    final int          oh;
+    final int          tilesX;
+    final int          tilesY;
+    final FFT          fftX;
+    final FFT          fftY;
+    /** Conjugated kernel spectrum. */
+    final double[]     kre;
+    final double[]     kim;
+
+    NImageFFTFilter(final NImage src, final NImage dst, final FilterKernel filter)
+    {
+        this.src = src;
+        this.dst = dst;
+        this.filter = filter;
+        final int kw = filter.width, kh = filter.height;
+        this.tw = FFT.sizeFor(Math.min(dst.width + kw - 1, Math.max(kw * 4, 64)));
+        this.th = FFT.sizeFor(Math.min(dst.height + kh - 1, Math.max(kh * 4, 64)));
+        this.ow = this.tw - kw + 1;
+        this.oh = this.th - kh + 1;
+        this.tilesX = (dst.width + this.ow - 1) / this.ow;
+        this.tilesY = (dst.height + this.oh - 1) / this.oh;
+        this.fftX = new FFT(this.tw);
+        this.fftY = new FFT(this.th);
+
+        this.kre = new double[this.tw * this.th];
+        this.kim = new double[this.tw * this.th];
+        for (int y = 0; y < kh; y++)
+        {
+            for (int x = 0; x < kw; x++)
+                this.kre[x + y * this.tw] = filter.xyf[x + y * kw];
+        }
+        this.transform(this.kre, this.kim, new double[this.th], new double[this.th], false);
+        for (int i = 0; i < this.kim.length; i++)
+            this.kim[i] = -this.kim[i];
+    }
+
+    /**
+     * @return The number of tiles.
+     */
+    int tiles()
+    {
+        return this.tilesX * this.tilesY;
+    }
+
+    private void transform(final double[] re, final double[] im, final double[] cre, final double[] cim, final boolean inverse)
+    {
+        for (int y = 0; y < this.th; y++)
+        {
+            if (inverse)
+                this.fftX.inverse(re, im, y * this.tw);
+            else
+                this.fftX.forward(re, im, y * this.tw);
+        }
+        for (int x = 0; x < this.tw; x++)
+        {
+            for (int y = 0; y < this.th; y++)
+            {
+                cre[y] = re[x + y * this.tw];
+                cim[y] = im[x + y * this.tw];
+            }
+            if (inverse)
+                this.fftY.inverse(cre, cim);
+            else
+                this.fftY.forward(cre, cim);
+            for (int y = 0; y < this.th; y++)
+            {
+                re[x + y * this.tw] = cre[y];
+                im[x + y * this.tw] = cim[y];
+            }
+        }
+    }
+
+    @Override
+    public void run(final int from, final int to)
+    {
+        final float[][] planes = this.src.planes();
+        final float[][] out = this.dst.planes();
+        final double[] re = new double[this.tw * this.th];
+        final double[] im = new double[this.tw * this.th];
+        final double[] cre = new double[this.th];
+        final double[] cim = new double[this.th];
+        final int[] columns = new int[this.tw];
+        final int[] rows = new int[this.th];
+
+        for (int t = from; t < to; t++)
+        {
+            final int x0 = (t % this.tilesX) * this.ow;
+            final int y0 = (t / this.tilesX) * this.oh;
+            final int w = Math.min(this.ow, this.dst.width - x0);
+            final int h = Math.min(this.oh, this.dst.height - y0);
+
+            for (int x = 0; x < this.tw; x++)
+                columns[x] = this.src.height > 0 ? this.src.index(x0 + x + this.filter.offsx, 0) : -1;
+            for (int y = 0; y < this.th; y++)
+                rows[y] = this.src.index(0, y0 + y + this.filter.offsy);
+
+            for (int c = 0; c < 4; c += 2)
+            {
+                final float[] p0 = planes[c], p1 = planes[c + 1];
+                for (int y = 0; y < this.th; y++)
+                {
+                    final int row = rows[y], o = y * this.tw;
+                    for (int x = 0; x < this.tw; x++)
+                    {
+                        final int col = columns[x];
+                        if (row < 0 || col < 0)
+                        {
+                            re[o + x] = 0;
+                            im[o + x] = 0;
+                        }
+                        else
+                        {
+                            re[o + x] = p0[row + col];
+                            im[o + x] = p1[row + col];
+                        }
+                    }
+                }
+
+                this.transform(re, im, cre, cim, false);
+                for (int i = 0; i < re.length; i++)
+                {
+                    final double r = re[i] * this.kre[i] - im[i] * this.kim[i];
+                    im[i] = re[i] * this.kim[i] + im[i] * this.kre[i];
+                    re[i] = r;
+                }
+                this.transform(re, im, cre, cim, true);
+
+                final float[] d0 = out[c], d1 = out[c + 1];
+                for (int y = 0; y < h; y++)
+                {
+                    final int d = x0 + (y0 + y) * this.dst.width, o = y * this.tw;
+                    for (int x = 0; x < w; x++)
+                    {
+                        d0[d + x] = (float)re[o + x];
+                        d1[d + x] = (float)im[o + x];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,109 +1,224 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package com.github.rjeschke.neetutils.graphics;
 
-import com.github.rjeschke.neetutils.concurrent.Worker;
+import java.util.Arrays;
+
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
 
 /**
+ * Convolution of the rows [from, to) of <code>src</code> into
+ * <code>dst</code>, <code>src</code> and <code>dst</code> must not be the same
+ * image.
+ *
+ * <p>
+ * Clamping is resolved once per filter (columns) and once per row (rows)
+ * instead of once per tap: source rows get copied into zero padded row
+ * buffers, so the inner loops are plain multiply-adds over arrays. The order
+ * of additions per pixel is the same as for a direct per-tap evaluation.
+ * </p>
+ *
+ * <p>
+ * Modes: <code>0</code> 2D kernel, <code>1</code>/<code>2</code> horizontal
+ * and vertical pass of a separable kernel, <code>3</code>/<code>4</code>
+ * horizontal and vertical pass of a constant (box) kernel using running sums,
+ * i.e. O(1) per pixel and channel.
+ * </p>
  *
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
  */
-class NImageFilter implements Worker<NImagePBlock>
+class NImageFilter implements RangeWorker
 {
-    final NImage       image;
+    final NImage       src;
+    final NImage       dst;
     final FilterKernel filter;
     final int          mode;
+    /** Source column for each padded column, <code>-1</code> if clipped. */
+    final int[]        columns;
 
-    NImageFilter(final NImage image, final FilterKernel filter, final int mode)
+    NImageFilter(final NImage src, final NImage dst, final FilterKernel filter, final int mode)
     {
-        this.image = image;
+        this.src = src;
+        this.dst = dst;
         this.filter = filter;
         this.mode = mode;
+        final boolean vertical = mode == 2 || mode == 4;
+        this.columns = new int[dst.width + (vertical ? 0 : filter.width - 1)];
+        final int offs = vertical ? 0 : filter.offsx;
+        for (int i = 0; i < this.columns.length; i++)
+            this.columns[i] = src.height > 0 ? src.index(i + offs, 0) : -1;
+    }
+
+    /**
+     * Copies source row <code>row</code> (a clamped row offset or
+     * <code>-1</code>) into the padded buffers.
+     */
+    private void fetch(final int row, final float[][] planes, final float[][] pad)
+    {
+        for (int c = 0; c < 4; c++)
+        {
+            final float[] p = planes[c], d = pad[c];
+            for (int i = 0; i < d.length; i++)
+            {
+                final int x = this.columns[i];
+                d[i] = row < 0 || x < 0 ? 0 : p[row + x];
+            }
+        }
+    }
+
+    private int rowOffset(final int y)
+    {
+        return this.src.index(0, y);
     }
 
     @Override
-    public void run(final NImagePBlock p)
+    public void run(final int from, final int to)
     {
-        if (this.mode == 0)
+        final int width = this.dst.width;
+        final float[][] planes = this.src.planes();
+        final float[][] out = this.dst.planes();
+        if (this.mode == 4)
+        {
+            this.runBoxVertical(from, to, planes, out);
+            return;
+        }
+
+        final float[][] acc = new float[4][width];
+        final float[][] pad = new float[4][this.columns.length];
+        final int kw = this.filter.width;
+        final int kh = this.filter.height;
+
+        for (int y = from; y < to; y++)
         {
-            for (int y = 0; y < p.h; y++)
+            for (final float[] ac : acc)
+                Arrays.fill(ac, 0);
+
+            if (this.mode == 0)
             {
-                for (int x = 0; x < p.w; x++)
+                for (int fy = 0; fy < kh; fy++)
                 {
-                    float a = 0, r = 0, g = 0, b = 0;
-
-                    for (int fy = 0; fy < this.filter.height; fy++)
+                    this.fetch(this.rowOffset(y + fy + this.filter.offsy), planes, pad);
+                    for (int fx = 0; fx < kw; fx++)
                     {
-                        for (int fx = 0; fx < this.filter.width; fx++)
-                        {
-                            final float f = this.filter.xyf[fx + fy * this.filter.width];
-                            final int rx = p.x + x + fx + this.filter.offsx;
-                            final int ry = p.y + y + fy + this.filter.offsy;
-
-                            final NColor c = this.image.getPixel(rx, ry);
-
-                            a += c.a * f;
-                            r += c.r * f;
-                            g += c.g * f;
-                            b += c.b * f;
-                        }
+                        final float f = this.filter.xyf[fx + fy * kw];
+                        for (int c = 0; c < 4; c++)
+                            madd(acc[c], pad[c], fx, f, width);
                     }
-
-                    p.pixels[x + y * p.w] = new NColor(a, r, g, b);
                 }
             }
-        }
-        else if (this.mode == 1)
-        {
-            for (int y = 0; y < p.h; y++)
+            else if (this.mode == 1)
             {
-                for (int x = 0; x < p.w; x++)
+                this.fetch(this.rowOffset(y), planes, pad);
+                for (int fx = 0; fx < kw; fx++)
                 {
-                    float a = 0, r = 0, g = 0, b = 0;
-
-                    for (int fx = 0; fx < this.filter.width; fx++)
+                    final float f = this.filter.xf[fx];
+                    for (int c = 0; c < 4; c++)
+                        madd(acc[c], pad[c], fx, f, width);
+                }
+            }
+            else if (this.mode == 3)
+            {
+                this.fetch(this.rowOffset(y), planes, pad);
+                final float f = this.filter.xf[0];
+                for (int c = 0; c < 4; c++)
+                {
+                    final float[] p = pad[c], ac = acc[c];
+                    double sum = 0;
+                    for (int i = 0; i < kw - 1; i++)
+                        sum += p[i];
+                    for (int x = 0; x < width; x++)
                     {
-                        final float f = this.filter.xf[fx];
-
-                        final int rx = p.x + x + fx + this.filter.offsx;
-                        final int ry = p.y + y;
-
-                        final NColor c = this.image.getPixel(rx, ry);
-
-                        a += c.a * f;
-                        r += c.r * f;
-                        g += c.g * f;
-                        b += c.b * f;
+                        sum += p[x + kw - 1];
+                        ac[x] = (float)(sum * f);
+                        sum -= p[x];
                     }
-
-                    p.pixels[x + y * p.w] = new NColor(a, r, g, b);
                 }
             }
-        }
-        else
-        {
-            for (int y = 0; y < p.h; y++)
+            else
             {
-                for (int x = 0; x < p.w; x++)
+                for (int fy = 0; fy < kh; fy++)
                 {
-                    float a = 0, r = 0, g = 0, b = 0;
+                    final int row = this.rowOffset(y + fy + this.filter.offsy);
+                    if (row < 0) continue;
+                    final float f = this.filter.yf[fy];
+                    for (int c = 0; c < 4; c++)
+                        madd(acc[c], planes[c], row, f, width);
+                }
+            }
 
-                    for (int fy = 0; fy < this.filter.height; fy++)
-                    {
-                        final float f = this.filter.yf[fy];
-                        final int rx = p.x + x;
-                        final int ry = p.y + y + fy + this.filter.offsy;
+            for (int c = 0; c < 4; c++)
+                System.arraycopy(acc[c], 0, out[c], y * width, width);
+        }
+    }
 
-                        final NColor c = this.image.getPixel(rx, ry);
+    /**
+     * Vertical box pass: keeps per-column running sums over the rows of the
+     * band, adding the row entering and subtracting the row leaving the
+     * window.
+     */
+    private void runBoxVertical(final int from, final int to, final float[][] planes, final float[][] out)
+    {
+        final int width = this.dst.width;
+        final int kh = this.filter.height;
+        final int offs = this.filter.offsy;
+        final float f = this.filter.yf[0];
+        final double[][] sums = new double[4][width];
 
-                        a += c.a * f;
-                        r += c.r * f;
-                        g += c.g * f;
-                        b += c.b * f;
-                    }
+        for (int fy = 0; fy < kh - 1; fy++)
+            addRow(sums, planes, this.rowOffset(from + fy + offs), 1, width);
 
-                    p.pixels[x + y * p.w] = new NColor(a, r, g, b);
-                }
+        for (int y = from; y < to; y++)
+        {
+            addRow(sums, planes, this.rowOffset(y + kh - 1 + offs), 1, width);
+            for (int c = 0; c < 4; c++)
+            {
+                final double[] s = sums[c];
+                final float[] o = out[c];
+                final int p = y * width;
+                for (int x = 0; x < width; x++)
+                    o[p + x] = (float)(s[x] * f);
+            }
+            addRow(sums, planes, this.rowOffset(y + offs), -1, width);
+        }
+    }
+
+    private static void addRow(final double[][] sums, final float[][] planes, final int row, final int sign, final int width)
+    {
+        if (row < 0) return;
+        for (int c = 0; c < 4; c++)
+        {
+            final double[] s = sums[c];
+            final float[] p = planes[c];
+            if (sign > 0)
+            {
+                for (int x = 0; x < width; x++)
+                    s[x] += p[row + x];
+            }
+            else
+            {
+                for (int x = 0; x < width; x++)
+                    s[x] -= p[row + x];
             }
         }
     }
+
+    private static void madd(final float[] acc, final float[] src, final int offset, final float f, final int n)
+    {
+        for (int x = 0; x < n; x++)
+            acc[x] += src[offset + x] * f;
+    }
 }
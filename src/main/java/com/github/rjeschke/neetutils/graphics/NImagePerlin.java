@@ -17,41 +17,50 @@ package com.github.rjeschke.neetutils.graphics;
 
 import java.util.Arrays;
 
-import com.github.rjeschke.neetutils.concurrent.Worker;
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
 import com.github.rjeschke.neetutils.math.NMath;
 import com.github.rjeschke.neetutils.rng.RNG;
 import com.github.rjeschke.neetutils.rng.RNGFactory;
 import com.github.rjeschke.neetutils.rng.RNGType;
 
 /**
+ * Multi-octave Perlin noise generator, evaluating row segments into float
+ * arrays.
+ *
+ * <p>
+ * Loops run octave by octave over the whole segment, so all terms depending
+ * on <code>y</code> (lattice row, fraction and fade) get computed once per
+ * row and octave, and the inner loop is a branch-free pass over plain arrays.
+ * The per-pixel order of operations is the same as for a per-pixel
+ * evaluation.
+ * </p>
  *
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
  */
-class NImagePerlin implements Worker<NImagePBlock>
+class NImagePerlin
 {
-    final NImage image;
-    final int[]  perm = new int[256];
+    final int     width;
+    final int     height;
+    final int[]   perm  = new int[256];
     final float[] gradx = new float[256], grady = new float[256];
     final float   scalex;
     final float   scaley;
     final int     octaves;
     final float   fallOff;
     final float   amp;
-    final NColor  color0;
-    final NColor  color1;
 
-    NImagePerlin(final NImage image, final int seed, final float scalex, final float scaley, final int octaves, final float fallOff, final float amp,
-            final NColor color0, final NColor color1)
+    NImagePerlin(final int width, final int height, final int seed, final float scalex, final float scaley, final int octaves, final float fallOff,
+            final float amp)
     {
-        this.image = image;
+        this.width = width;
+        this.height = height;
         this.scalex = scalex;
         this.scaley = scaley;
         this.octaves = octaves;
         this.fallOff = fallOff;
         this.amp = amp;
-        this.color0 = color0;
-        this.color1 = color1;
         final RNG rnd = RNGFactory.create(RNGType.LCG, seed);
 
         Arrays.fill(this.perm, -1);
@@ -74,56 +83,85 @@ class NImagePerlin implements Worker<NImagePBlock>
         return t * t * (3.f - 2.f * t);
     }
 
-    @Override
-    public void run(final NImagePBlock p)
+    /**
+     * Evaluates the pixels <code>(x0 .. x0 + n - 1, y)</code>, storing the
+     * noise mapped to [0, 1] into <code>out</code> starting at
+     * <code>offset</code>.
+     */
+    void noise(final int y, final int x0, final int n, final float[] out, final int offset)
     {
-        for (int y = 0; y < p.h; y++)
+        final float[] tx = new float[n];
+        final float[] noise = new float[n];
+        final int[] perm = this.perm;
+        final float[] gx = this.gradx, gy = this.grady;
+
+        for (int k = 0; k < n; k++)
+            tx[k] = (float)(x0 + k) / (float)this.width * this.scalex;
+
+        float ty = (float)y / (float)this.height * this.scaley;
+        float am = this.amp;
+
+        for (int oct = 0; oct < this.octaves; oct++)
         {
-            final float fy = (float)(p.y + y) / (float)this.image.height;
-            for (int x = 0; x < p.w; x++)
+            float py0 = ty * 256.f;
+            final int iy = (int)py0;
+            py0 -= iy;
+            final float py1 = py0 - 1.f;
+            final float fsy = s_curve(py0);
+            final int r0 = perm[iy & 255];
+            final int r1 = perm[(iy + 1) & 255];
+
+            for (int k = 0; k < n; k++)
             {
-                final float fx = (float)(p.x + x) / (float)this.image.width;
-
-                float tx = fx * this.scalex;
-                float ty = fy * this.scaley;
-                float noise = 0, am = this.amp;
-
-                for (int oct = 0; oct < this.octaves; oct++)
-                {
-                    float px0 = tx * 256.f;
-                    final int ix = (int)px0;
-                    px0 -= ix;
-                    final float px1 = px0 - 1.f;
-
-                    float py0 = ty * 256.f;
-                    final int iy = (int)py0;
-                    py0 -= iy;
-                    final float py1 = py0 - 1.f;
-
-                    final int p00 = this.perm[(ix + this.perm[iy & 255]) & 255];
-                    final int p10 = this.perm[(ix + 1 + this.perm[iy & 255]) & 255];
-                    final int p01 = this.perm[(ix + this.perm[(iy + 1) & 255]) & 255];
-                    final int p11 = this.perm[(ix + 1 + this.perm[(iy + 1) & 255]) & 255];
-
-                    final float fsx = s_curve(px0);
-                    final float fsy = s_curve(py0);
-                    float a, b, u, v;
-
-                    u = px0 * this.gradx[p00] + py0 * this.grady[p00];
-                    v = px1 * this.gradx[p10] + py0 * this.grady[p10];
-                    a = NMath.lerp(u, v, fsx);
-
-                    u = px0 * this.gradx[p01] + py1 * this.grady[p01];
-                    v = px1 * this.gradx[p11] + py1 * this.grady[p11];
-                    b = NMath.lerp(u, v, fsx);
-
-                    noise += NMath.lerp(a, b, fsy) * am;
-                    am *= this.fallOff;
-                    tx *= 2.0;
-                    ty *= 2.0;
-                }
-                p.pixels[x + y * p.w] = this.color0.lerp(this.color1, NMath.saturate(noise * 0.5f + 0.5f));
+                float px0 = tx[k] * 256.f;
+                final int ix = (int)px0;
+                px0 -= ix;
+                final float px1 = px0 - 1.f;
+
+                final int p00 = perm[(ix + r0) & 255];
+                final int p10 = perm[(ix + 1 + r0) & 255];
+                final int p01 = perm[(ix + r1) & 255];
+                final int p11 = perm[(ix + 1 + r1) & 255];
+
+                final float fsx = s_curve(px0);
+                final float a = NMath.lerp(px0 * gx[p00] + py0 * gy[p00], px1 * gx[p10] + py0 * gy[p10], fsx);
+                final float b = NMath.lerp(px0 * gx[p01] + py1 * gy[p01], px1 * gx[p11] + py1 * gy[p11], fsx);
+
+                noise[k] += NMath.lerp(a, b, fsy) * am;
+                tx[k] *= 2.0;
             }
+
+            am *= this.fallOff;
+            ty *= 2.0;
         }
+
+        for (int k = 0; k < n; k++)
+            out[offset + k] = NMath.saturate(noise[k] * 0.5f + 0.5f);
+    }
+
+    /**
+     * Evaluates the whole noise field.
+     *
+     * @param threads
+     *            Number of threads, rows get evaluated in parallel if greater
+     *            than one.
+     */
+    float[] field(final int threads)
+    {
+        final float[] field = new float[this.width * this.height];
+        final RangeWorker worker = new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int y = from; y < to; y++)
+                    NImagePerlin.this.noise(y, 0, NImagePerlin.this.width, field, y * NImagePerlin.this.width);
+            }
+        };
+        if (threads < 2)
+            worker.run(0, this.height);
+        else
+            Parallel.forRange(0, this.height, Math.max(1, NImage.MIN_BAND_PIXELS / Math.max(1, this.width)), worker);
+        return field;
     }
 }
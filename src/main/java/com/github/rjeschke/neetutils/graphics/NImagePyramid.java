@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+/**
+ * Image pyramid (mipmap chain) of an {@link NImage}.
+ *
+ * <p>
+ * Level <code>0</code> is the base image, each further level halves width and
+ * height (down to <code>1</code>) by box filtering the previous level, so a
+ * pyramid has <code>floor(log2(max(width, height))) + 1</code> levels. Odd
+ * sizes drop the last row or column, same as
+ * {@link NImage#boxDownsample(int, int)}. Levels get built lazily on first
+ * request and are kept; each level gets computed by row bands in parallel if
+ * the base image's thread count is greater than one.
+ * </p>
+ *
+ * <p>
+ * With a gamma other than <code>1</code>, red, green and blue are considered
+ * gamma encoded and get averaged in linear space, i.e. decoded with
+ * <code>pow(v, gamma)</code> and encoded again. Images created from
+ * BufferedImages are already linear, use a gamma of <code>1</code> for these.
+ * </p>
+ *
+ * <p>
+ * The base image must not be changed while the pyramid is in use.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ * @see NImage#pyramid()
+ */
+public class NImagePyramid
+{
+    private final NImage[] levels;
+    private final double   gamma;
+
+    NImagePyramid(final NImage base, final double gamma)
+    {
+        int n = 1;
+        for (int s = Math.max(base.width, base.height); s > 1; s >>= 1)
+            n++;
+        this.levels = new NImage[n];
+        this.levels[0] = base;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return The number of levels.
+     */
+    public int levelCount()
+    {
+        return this.levels.length;
+    }
+
+    /**
+     * Returns the width of the given level, without building it.
+     *
+     * @param level
+     *            The level.
+     * @return The width.
+     */
+    public int width(final int level)
+    {
+        return Math.max(1, this.levels[0].width >> level);
+    }
+
+    /**
+     * Returns the height of the given level, without building it.
+     *
+     * @param level
+     *            The level.
+     * @return The height.
+     */
+    public int height(final int level)
+    {
+        return Math.max(1, this.levels[0].height >> level);
+    }
+
+    /**
+     * Returns the given level, building it and all missing levels above it
+     * first.
+     *
+     * @param level
+     *            The level, <code>0</code> is the base image.
+     * @return The level.
+     */
+    public synchronized NImage level(final int level)
+    {
+        if (level < 0 || level >= this.levels.length) throw new IndexOutOfBoundsException("Level: " + level);
+
+        for (int i = 1; i <= level; i++)
+        {
+            if (this.levels[i] != null) continue;
+            final NImage prev = this.levels[i - 1];
+            final int fx = prev.width > 1 ? 2 : 1;
+            final int fy = prev.height > 1 ? 2 : 1;
+            final NImage next = new NImage(prev.width / fx, prev.height / fy);
+            next.setThreadCount(prev.getThreadCount());
+            this.levels[i] = next.runRows(new NImageBoxDownsampler(prev, next, fx, fy, this.gamma));
+        }
+        return this.levels[level];
+    }
+
+    /**
+     * Returns the smallest level which is at least as large as the given
+     * size.
+     *
+     * @param width
+     *            Minimum width.
+     * @param height
+     *            Minimum height.
+     * @return The level.
+     */
+    public NImage levelFor(final int width, final int height)
+    {
+        int l = 0;
+        while (l + 1 < this.levels.length && this.width(l + 1) >= width && this.height(l + 1) >= height)
+            l++;
+        return this.level(l);
+    }
+
+    /**
+     * Builds all levels.
+     *
+     * @return this
+     */
+    public NImagePyramid buildAll()
+    {
+        this.level(this.levels.length - 1);
+        return this;
+    }
+}
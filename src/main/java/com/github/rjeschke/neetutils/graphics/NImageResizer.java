@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.Arrays;
+
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
+
+/**
+ * Separable resampling of the rows [from, to) of <code>dst</code>.
+ *
+ * <p>
+ * Filter weights get precomputed once per destination column (or row): the
+ * first source index, the number of taps and the normalized weights. When
+ * downscaling, the filter gets stretched by the scale factor, so every source
+ * pixel contributes (i.e. no aliasing). Taps outside of the source get
+ * dropped and the remaining weights renormalized.
+ * </p>
+ *
+ * <p>
+ * Modes: <code>0</code> horizontal pass (rows of <code>src</code> into
+ * <code>dst</code> with the same height), <code>1</code> vertical pass
+ * (columns of <code>src</code> into <code>dst</code> with the same width),
+ * processed row by row over whole source rows.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+class NImageResizer implements RangeWorker
+{
+    final NImage  src;
+    final NImage  dst;
+    final int     mode;
+    final int[]   first;
+    final int[]   count;
+    final int     taps;
+    final float[] weights;
+
+    NImageResizer(final NImage src, final NImage dst, final ResizeFilter filter, final int mode)
+    {
+        this.src = src;
+        this.dst = dst;
+        this.mode = mode;
+
+        final int n = mode == 0 ? src.width : src.height;
+        final int m = mode == 0 ? dst.width : dst.height;
+        final double scale = (double)n / m;
+        final double fscale = Math.max(1.0, scale);
+        final double radius = filter.support * fscale;
+
+        this.taps = (int)Math.ceil(radius * 2) + 2;
+        this.first = new int[m];
+        this.count = new int[m];
+        this.weights = new float[m * this.taps];
+
+        final double[] w = new double[this.taps];
+        for (int i = 0; i < m; i++)
+        {
+            final double center = (i + 0.5) * scale - 0.5;
+            final int lo = Math.max(0, (int)Math.floor(center - radius));
+            final int hi = Math.min(n - 1, (int)Math.ceil(center + radius));
+            double sum = 0;
+            int c = 0;
+            for (int j = lo; j <= hi && c < this.taps; j++)
+            {
+                w[c] = filter.weight((j - center) / fscale);
+                sum += w[c++];
+            }
+            // Trim zero weights at both ends
+            int s = 0;
+            while (s < c && w[s] == 0)
+                s++;
+            while (c > s && w[c - 1] == 0)
+                c--;
+            if (s == c)
+            {
+                // Nothing contributes, take the nearest pixel
+                this.first[i] = Math.max(0, Math.min(n - 1, (int)Math.floor(center + 0.5)));
+                this.count[i] = 1;
+                this.weights[i * this.taps] = 1;
+                continue;
+            }
+            this.first[i] = lo + s;
+            this.count[i] = c - s;
+            final double norm = sum != 0 ? 1.0 / sum : 1.0;
+            for (int k = s; k < c; k++)
+                this.weights[i * this.taps + k - s] = (float)(w[k] * norm);
+        }
+    }
+
+    @Override
+    public void run(final int from, final int to)
+    {
+        final float[][] in = this.src.planes();
+        final float[][] out = this.dst.planes();
+        final int sw = this.src.width, dw = this.dst.width;
+
+        if (this.mode == 0)
+        {
+            for (int c = 0; c < 4; c++)
+            {
+                final float[] p = in[c], o = out[c];
+                for (int y = from; y < to; y++)
+                {
+                    final int row = y * sw;
+                    for (int x = 0; x < dw; x++)
+                    {
+                        final int f = row + this.first[x], wo = x * this.taps;
+                        float sum = 0;
+                        for (int k = 0; k < this.count[x]; k++)
+                            sum += this.weights[wo + k] * p[f + k];
+                        o[x + y * dw] = sum;
+                    }
+                }
+            }
+        }
+        else
+        {
+            for (int y = from; y < to; y++)
+            {
+                final int wo = y * this.taps, d = y * dw;
+                for (int c = 0; c < 4; c++)
+                {
+                    final float[] p = in[c], o = out[c];
+                    Arrays.fill(o, d, d + dw, 0);
+                    for (int k = 0; k < this.count[y]; k++)
+                    {
+                        final float f = this.weights[wo + k];
+                        final int row = (this.first[y] + k) * sw;
+                        for (int x = 0; x < dw; x++)
+                            o[d + x] += f * p[row + x];
+                    }
+                }
+            }
+        }
+    }
+}
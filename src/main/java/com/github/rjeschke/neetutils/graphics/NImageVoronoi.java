@@ -15,7 +15,9 @@
  */
 package com.github.rjeschke.neetutils.graphics;
 
-import com.github.rjeschke.neetutils.concurrent.Worker;
+import java.util.Arrays;
+
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
 import com.github.rjeschke.neetutils.math.NMath;
 import com.github.rjeschke.neetutils.rng.RNG;
 import com.github.rjeschke.neetutils.rng.RNGFactory;
@@ -26,16 +28,23 @@ import com.github.rjeschke.neetutils.rng.RNGType;
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
  */
-class NImageVoronoi implements Worker<NImagePBlock>
+class NImageVoronoi extends PointOp implements RangeWorker
 {
-    final NImage    image;
-    final float[][] points;
-    final int       pointCount;
-    final float     fallOff;
-    final boolean   invert;
-    final boolean   colorCells;
-    final NColor    color0;
-    final NColor    color1;
+    /** Maximum number of grid cells per axis. */
+    final static int MAX_GRID = 1024;
+    final NImage     image;
+    final float[][]  points;
+    final int        pointCount;
+    final float      fallOff;
+    final boolean    invert;
+    final boolean    colorCells;
+    final NColor     color0;
+    final NColor     color1;
+    /** Lookup grid: cells per axis, CSR cell offsets, points and their indices in cell order. */
+    final int        grid;
+    final int[]      cellStart;
+    final float[][]  cellPoints;
+    final int[]      cellIndex;
 
     NImageVoronoi(final NImage image, final int seed, final int max, final float minDist, final float fallOff, final boolean invert, final boolean colorCells,
             final NColor color0, final NColor color1)
@@ -49,9 +58,17 @@ class NImageVoronoi implements Worker<NImagePBlock>
 
         final RNG rnd = RNGFactory.create(RNGType.LCG, seed);
         final int todo = Math.min(max, (int)(1.0 / (minDist * minDist)));
-        this.points = new float[todo][3];
+        float[][] pts = new float[Math.max(0, Math.min(todo, 1024))][];
         int count = 0;
 
+        // Rejection sampling against a toroidal grid with cells not smaller
+        // than minDist, so only the 3x3 neighbourhood has to be checked.
+        // Accepts exactly the same points as testing against all points.
+        final int g = Math.max(1, (int)Math.min(MAX_GRID, 1.0 / (minDist * (1.0 + 1e-4))));
+        final int[] head = new int[g * g];
+        Arrays.fill(head, -1);
+        int[] next = new int[pts.length];
+
         while (count < todo)
         {
             int i;
@@ -60,63 +77,180 @@ class NImageVoronoi implements Worker<NImagePBlock>
             {
                 point[0] = rnd.nextFloatUnipolar();
                 point[1] = rnd.nextFloatUnipolar();
+                final int cx = cell(point[0], g), cy = cell(point[1], g);
                 boolean ok = true;
-                for (int n = 0; n < count; n++)
+                if (g < 3)
+                {
+                    for (int n = 0; n < count && ok; n++)
+                        ok = !(NImage.distOnTorus(point, pts[n]) < minDist);
+                }
+                else
                 {
-                    if (NImage.distOnTorus(point, this.points[n]) < minDist)
+                    for (int dy = -1; dy <= 1 && ok; dy++)
                     {
-                        ok = false;
-                        break;
+                        final int row = ((cy + dy + g) % g) * g;
+                        for (int dx = -1; dx <= 1 && ok; dx++)
+                        {
+                            for (int n = head[row + (cx + dx + g) % g]; n != -1 && ok; n = next[n])
+                                ok = !(NImage.distOnTorus(point, pts[n]) < minDist);
+                        }
                     }
                 }
                 if (ok)
                 {
                     point[2] = rnd.nextFloatUnipolar();
-                    this.points[count++] = point;
+                    if (count == pts.length)
+                    {
+                        pts = Arrays.copyOf(pts, Math.min(todo, pts.length * 2));
+                        next = Arrays.copyOf(next, pts.length);
+                    }
+                    final int c = cx + cy * g;
+                    next[count] = head[c];
+                    head[c] = count;
+                    pts[count++] = point;
                     break;
                 }
             }
             if (i >= 500) break;
         }
 
+        this.points = Arrays.copyOf(pts, count);
         this.pointCount = count;
+
+        // Lookup grid with about two points per cell
+        this.grid = Math.max(1, Math.min(MAX_GRID, (int)Math.sqrt(count * 0.5)));
+        final int cells = this.grid * this.grid;
+        this.cellStart = new int[cells + 1];
+        this.cellPoints = new float[count][];
+        this.cellIndex = new int[count];
+        final int[] cellOf = new int[count];
+        for (int n = 0; n < count; n++)
+        {
+            cellOf[n] = cell(this.points[n][0], this.grid) + cell(this.points[n][1], this.grid) * this.grid;
+            this.cellStart[cellOf[n] + 1]++;
+        }
+        for (int c = 0; c < cells; c++)
+            this.cellStart[c + 1] += this.cellStart[c];
+        final int[] fill = Arrays.copyOf(this.cellStart, cells);
+        for (int n = 0; n < count; n++)
+        {
+            final int k = fill[cellOf[n]]++;
+            this.cellPoints[k] = this.points[n];
+            this.cellIndex[k] = n;
+        }
+    }
+
+    private static int cell(final float v, final int g)
+    {
+        return Math.max(0, Math.min(g - 1, (int)(v * g)));
+    }
+
+    @Override
+    public void run(final int from, final int to)
+    {
+        for (int y = from; y < to; y++)
+            this.apply(this.image.a, this.image.r, this.image.g, this.image.b, y * this.image.width, this.image.width, 0, y);
     }
 
     @Override
-    public void run(final NImagePBlock p)
+    boolean overwrites()
+    {
+        return true;
+    }
+
+    /**
+     * Finds the nearest and second nearest distance and the cell value of the
+     * nearest point (lowest index on ties), searching rings of grid cells
+     * around the query until no unvisited cell can contain a closer point.
+     * Results are the same as for a linear search over all points.
+     */
+    private float nearest(final float[] q, final float[] result)
     {
-        for (int y = 0; y < p.h; y++)
+        float d0 = Float.MAX_VALUE, d1 = Float.MAX_VALUE;
+        int ci = -1;
+        final int g = this.grid;
+        final int cx = cell(q[0], g), cy = cell(q[1], g);
+        final double cs = 1.0 / g;
+
+        boolean done = false;
+        for (int r = 0; 2 * r + 1 <= g; r++)
         {
-            final float[] point = new float[2];
-            point[1] = (float)(p.y + y) / (float)this.image.height;
-            for (int x = 0; x < p.w; x++)
+            for (int dy = -r; dy <= r; dy++)
             {
-                point[0] = (float)(p.x + x) / (float)this.image.width;
-                float d0 = Float.MAX_VALUE, d1 = Float.MAX_VALUE;
-                float c = 0;
-                for (int i = 0; i < this.pointCount; i++)
+                final int row = ((cy + dy + g) % g) * g;
+                final int step = (dy == -r || dy == r) ? 1 : 2 * r;
+                for (int dx = -r; dx <= r; dx += Math.max(1, step))
                 {
-                    final float d = NImage.distOnTorus(point, this.points[i]);
-                    if (d < d0)
-                    {
-                        d1 = d0;
-                        d0 = d;
-                        c = this.points[i][2];
-                    }
-                    else if (d < d1)
+                    final int c = row + (cx + dx + g) % g;
+                    for (int k = this.cellStart[c]; k < this.cellStart[c + 1]; k++)
                     {
-                        d1 = d;
+                        final float d = NImage.distOnTorus(q, this.cellPoints[k]);
+                        final int i = this.cellIndex[k];
+                        if (d < d0 || (d == d0 && i < ci))
+                        {
+                            d1 = d0;
+                            d0 = d;
+                            ci = i;
+                        }
+                        else if (d < d1)
+                        {
+                            d1 = d;
+                        }
                     }
                 }
-                float z = 1.f;
-                if (this.fallOff > 0)
+            }
+            // Unvisited points are at least r cells away
+            if (d1 < r * cs * (1.0 - 1e-4))
+            {
+                done = true;
+                break;
+            }
+        }
+
+        if (!done)
+        {
+            d0 = d1 = Float.MAX_VALUE;
+            ci = -1;
+            for (int i = 0; i < this.pointCount; i++)
+            {
+                final float d = NImage.distOnTorus(q, this.points[i]);
+                if (d < d0)
                 {
-                    z = NMath.saturate(d0 / d1);
-                    z = (float)Math.pow(this.invert ? 1.0 - z : z, this.fallOff);
+                    d1 = d0;
+                    d0 = d;
+                    ci = i;
                 }
-                if (this.colorCells) z *= c;
-                p.pixels[x + y * p.w] = this.color0.lerp(this.color1, z);
+                else if (d < d1)
+                {
+                    d1 = d;
+                }
+            }
+        }
+
+        result[0] = d1;
+        result[1] = ci < 0 ? 0 : this.points[ci][2];
+        return d0;
+    }
+
+    @Override
+    void apply(final float[] pa, final float[] pr, final float[] pg, final float[] pb, final int offset, final int n, final int x0, final int y)
+    {
+        final float[] point = new float[2];
+        final float[] result = new float[2];
+        point[1] = (float)y / (float)this.image.height;
+        for (int k = 0; k < n; k++)
+        {
+            point[0] = (float)(x0 + k) / (float)this.image.width;
+            final float d0 = this.nearest(point, result);
+            final float d1 = result[0], c = result[1];
+            float z = 1.f;
+            if (this.fallOff > 0)
+            {
+                z = NMath.saturate(d0 / d1);
+                z = (float)Math.pow(this.invert ? 1.0 - z : z, this.fallOff);
             }
+            if (this.colorCells) z *= c;
+            lerp(pa, pr, pg, pb, offset + k, this.color0, this.color1, z);
         }
     }
 }
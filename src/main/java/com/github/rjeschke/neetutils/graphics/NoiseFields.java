@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import com.github.rjeschke.neetutils.concurrent.LruCache;
+import com.github.rjeschke.neetutils.fn.FnMapping;
+
+/**
+ * Shared cache of generated noise fields.
+ *
+ * <p>
+ * {@link NImage#perlin(int, float, float, int, float, float, NColor, NColor)}
+ * first generates a field of noise values in [0, 1] and then maps it to
+ * colors. Fields get cached keyed by size and all noise parameters, so
+ * repeated texture builds using the same noise (with the same or different
+ * colors) only pay for the color mapping. The cache is bounded by
+ * {@link #MAXIMUM_BYTES} and evicts least recently used fields; concurrent
+ * requests for the same field get generated only once. Fields larger than
+ * {@link #MAXIMUM_ENTRY_BYTES} do not get cached (they would evict most of the
+ * cache without ever being reused), images of that size compute the noise
+ * row by row instead.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class NoiseFields
+{
+    /** Maximum size of all cached fields in bytes. */
+    public final static long                    MAXIMUM_BYTES       = 64L << 20;
+    /** Maximum size of a single cached field in bytes. */
+    public final static long                    MAXIMUM_ENTRY_BYTES = MAXIMUM_BYTES / 4;
+    private final static LruCache<Key, float[]> CACHE               = createCache();
+
+    private NoiseFields()
+    {
+        //
+    }
+
+    private static LruCache<Key, float[]> createCache()
+    {
+        // Weights in KiB, single segment as there are only few but large
+        // entries
+        return LruCache.<Key, float[]> builder().concurrencyLevel(1).maximumWeight(MAXIMUM_BYTES >> 10, new LruCache.Weigher<Key, float[]>()
+        {
+            @Override
+            public int weigh(final Key key, final float[] value)
+            {
+                return (int)(((long)value.length * 4 + 1023) >> 10);
+            }
+        }).build();
+    }
+
+    /**
+     * Checks if a field of the given size gets cached.
+     *
+     * @param width
+     *            Width.
+     * @param height
+     *            Height.
+     * @return {@code true} if the field's size is at most
+     *         {@link #MAXIMUM_ENTRY_BYTES}.
+     */
+    public static boolean isCacheable(final int width, final int height)
+    {
+        return (long)width * height * 4 <= MAXIMUM_ENTRY_BYTES;
+    }
+
+    /**
+     * Returns a (cached) Perlin noise field. The returned array is shared and
+     * must not be modified. Fields which are not
+     * {@link #isCacheable(int, int) cacheable} get generated on every call.
+     *
+     * @param width
+     *            Width.
+     * @param height
+     *            Height.
+     * @param seed
+     *            The seed.
+     * @param scalex
+     *            Horizontal scale.
+     * @param scaley
+     *            Vertical scale.
+     * @param octaves
+     *            Number of octaves.
+     * @param fallOff
+     *            Amplitude factor per octave.
+     * @param amp
+     *            Amplitude of the first octave.
+     * @param threads
+     *            Number of threads used for generation.
+     * @return The field, <code>width * height</code> values in the range [0,
+     *         1], row by row.
+     */
+    public static float[] perlin(final int width, final int height, final int seed, final float scalex, final float scaley, final int octaves,
+            final float fallOff, final float amp, final int threads)
+    {
+        if (!isCacheable(width, height)) return new NImagePerlin(width, height, seed, scalex, scaley, octaves, fallOff, amp).field(threads);
+
+        return CACHE.get(new Key(width, height, seed, scalex, scaley, octaves, fallOff, amp), new FnMapping<Key, float[]>()
+        {
+            @Override
+            public float[] applyMapping(final Key key)
+            {
+                return new NImagePerlin(width, height, seed, scalex, scaley, octaves, fallOff, amp).field(threads);
+            }
+        });
+    }
+
+    /**
+     * @return The cache statistics.
+     */
+    public static LruCache.Stats stats()
+    {
+        return CACHE.stats();
+    }
+
+    /**
+     * Removes all cached fields.
+     */
+    public static void clear()
+    {
+        CACHE.invalidateAll();
+    }
+
+    private final static class Key
+    {
+        final int   width;
+        final int   height;
+        final int   seed;
+        final float scalex;
+        final float scaley;
+        final int   octaves;
+        final float fallOff;
+        final float amp;
+
+        public Key(final int width, final int height, final int seed, final float scalex, final float scaley, final int octaves, final float fallOff,
+                final float amp)
+        {
+            this.width = width;
+            this.height = height;
+            this.seed = seed;
+            this.scalex = scalex;
+            this.scaley = scaley;
+            this.octaves = octaves;
+            this.fallOff = fallOff;
+            this.amp = amp;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int h = this.width;
+            h = h * 31 + this.height;
+            h = h * 31 + this.seed;
+            h = h * 31 + Float.floatToIntBits(this.scalex);
+            h = h * 31 + Float.floatToIntBits(this.scaley);
+            h = h * 31 + this.octaves;
+            h = h * 31 + Float.floatToIntBits(this.fallOff);
+            return h * 31 + Float.floatToIntBits(this.amp);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (!(obj instanceof Key)) return false;
+            final Key k = (Key)obj;
+            return this.width == k.width && this.height == k.height && this.seed == k.seed && Float.floatToIntBits(this.scalex) == Float.floatToIntBits(k.scalex)
+                    && Float.floatToIntBits(this.scaley) == Float.floatToIntBits(k.scaley) && this.octaves == k.octaves
+                    && Float.floatToIntBits(this.fallOff) == Float.floatToIntBits(k.fallOff) && Float.floatToIntBits(this.amp) == Float.floatToIntBits(k.amp);
+        }
+    }
+}
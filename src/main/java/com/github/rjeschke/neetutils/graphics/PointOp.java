@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import com.github.rjeschke.neetutils.math.NMath;
+
+/**
+ * A point-wise image operation, i.e. one where each output pixel only
+ * depends on the same pixel of the input (and its position). Point operations
+ * can be fused into a single pass, see {@link DeferredImage}.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+abstract class PointOp
+{
+    /**
+     * Applies this operation to the pixels <code>(x .. x + n - 1, y)</code>,
+     * stored in the given planes starting at <code>offset</code>.
+     */
+    abstract void apply(float[] a, float[] r, float[] g, float[] b, int offset, int n, int x, int y);
+
+    /**
+     * @return {@code true} if this operation does not read the current
+     *         pixels.
+     */
+    boolean overwrites()
+    {
+        return false;
+    }
+
+    /**
+     * Returns an operation setting each pixel to the interpolation of
+     * <code>c0</code> and <code>c1</code> by the corresponding value of
+     * <code>field</code>, which has a row stride of <code>width</code>.
+     */
+    static PointOp lerp(final int width, final float[] field, final NColor c0, final NColor c1)
+    {
+        return new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                final int f = x + y * width;
+                for (int k = 0; k < n; k++)
+                    lerp(a, r, g, b, offset + k, c0, c1, field[f + k]);
+            }
+
+            @Override
+            boolean overwrites()
+            {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns an operation setting each pixel to the interpolation of
+     * <code>c0</code> and <code>c1</code> by the noise of the given generator,
+     * evaluated row segment by row segment, i.e. without a noise field.
+     */
+    static PointOp perlin(final NImagePerlin perlin, final NColor c0, final NColor c1)
+    {
+        return new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                final float[] row = new float[n];
+                perlin.noise(y, x, n, row, 0);
+                for (int k = 0; k < n; k++)
+                    lerp(a, r, g, b, offset + k, c0, c1, row[k]);
+            }
+
+            @Override
+            boolean overwrites()
+            {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a levels adjustment of red, green and blue: the input range
+     * [black, white] (indexed by channel) gets mapped to [0, 1], clamped,
+     * gamma corrected and mapped to [outBlack, outWhite].
+     */
+    static PointOp levels(final float[] black, final float[] white, final float gamma, final float outBlack, final float outWhite)
+    {
+        final float[] scale = new float[4];
+        for (int c = 1; c < 4; c++)
+            scale[c] = white[c] != black[c] ? 1.f / (white[c] - black[c]) : Float.MAX_VALUE;
+        final double exp = 1.0 / gamma;
+        final float range = outWhite - outBlack;
+
+        return new PointOp()
+        {
+            @Override
+            void apply(final float[] a, final float[] r, final float[] g, final float[] b, final int offset, final int n, final int x, final int y)
+            {
+                level(r, offset, n, black[1], scale[1]);
+                level(g, offset, n, black[2], scale[2]);
+                level(b, offset, n, black[3], scale[3]);
+            }
+
+            private void level(final float[] p, final int offset, final int n, final float bl, final float sc)
+            {
+                for (int i = offset; i < offset + n; i++)
+                {
+                    float t = NMath.clamp((p[i] - bl) * sc, 0, 1);
+                    if (exp != 1) t = (float)Math.pow(t, exp);
+                    p[i] = outBlack + t * range;
+                }
+            }
+        };
+    }
+
+    static void lerp(final float[] a, final float[] r, final float[] g, final float[] b, final int i, final NColor c0, final NColor c1, final float f)
+    {
+        a[i] = c0.a + (c1.a - c0.a) * f;
+        r[i] = c0.r + (c1.r - c0.r) * f;
+        g[i] = c0.g + (c1.g - c0.g) * f;
+        b[i] = c0.b + (c1.b - c0.b) * f;
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Active edge table scanline polygon rasterizer writing spans directly into
+ * the planes of an {@link NImage}.
+ *
+ * <p>
+ * Outlines get collected with {@link #moveTo(float, float)},
+ * {@link #lineTo(float, float)} and {@link #close()}, a call to
+ * {@link #fill(NImage, NColor)} rasterizes all contours at once (so holes
+ * work as expected) and resets the outline. Pixel <code>(x, y)</code> covers
+ * the area <code>[x, x + 1) x [y, y + 1)</code> and gets filled if its
+ * centre lies inside the outline, i.e. integer coordinates lie on pixel
+ * corners.
+ * </p>
+ *
+ * <p>
+ * Edges get stepped in 16.16 fixed point. With anti-aliasing enabled, each
+ * scanline gets sampled {@link #SUBSAMPLES} times vertically while horizontal
+ * coverage is computed exactly; the resulting coverage blends between the
+ * current pixel and the result of the image's {@link ColorOp}. Filling
+ * always clips to the image bounds, the clamp modes are ignored.
+ * </p>
+ *
+ * <p>
+ * Instances keep their buffers between fills and are not thread safe.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+public final class PolygonRasterizer
+{
+    /** Number of vertical samples per scanline when anti-aliasing. */
+    public final static int SUBSAMPLES = 4;
+    private final static int FIX_SHIFT  = 16;
+    private final static int FIX_ONE    = 1 << FIX_SHIFT;
+    private final static int FIX_HALF   = FIX_ONE >> 1;
+    private FillRule         rule       = FillRule.NON_ZERO;
+    private boolean          antialias  = false;
+    /** Edges as (x0, y0, x1, y1) in outline order. */
+    private float[]          edges      = new float[64];
+    private int              edgeCount  = 0;
+    private float            startX, startY, lastX, lastY;
+    private boolean          open       = false;
+    // Edge table
+    private int[]            first      = new int[0];
+    private int[]            last       = new int[0];
+    private int[]            winding    = new int[0];
+    private long[]           x          = new long[0];
+    private long[]           dx         = new long[0];
+    private long[]           order      = new long[0];
+    private int[]            active     = new int[0];
+    // Coverage accumulation
+    private float[]          area       = new float[0];
+    private float[]          delta      = new float[0];
+    private int              minX       = Integer.MAX_VALUE;
+    private int              maxX       = -1;
+
+    public PolygonRasterizer()
+    {
+        // empty
+    }
+
+    public PolygonRasterizer(final FillRule rule, final boolean antialias)
+    {
+        this.setFillRule(rule);
+        this.antialias = antialias;
+    }
+
+    public PolygonRasterizer setFillRule(final FillRule rule)
+    {
+        if (rule == null) throw new NullPointerException("A null FillRule is not permitted");
+        this.rule = rule;
+        return this;
+    }
+
+    public FillRule getFillRule()
+    {
+        return this.rule;
+    }
+
+    public PolygonRasterizer setAntialias(final boolean antialias)
+    {
+        this.antialias = antialias;
+        return this;
+    }
+
+    public boolean isAntialias()
+    {
+        return this.antialias;
+    }
+
+    /**
+     * Starts a new contour, closing the current one.
+     */
+    public PolygonRasterizer moveTo(final float px, final float py)
+    {
+        this.close();
+        this.startX = this.lastX = px;
+        this.startY = this.lastY = py;
+        this.open = true;
+        return this;
+    }
+
+    public PolygonRasterizer lineTo(final float px, final float py)
+    {
+        if (!this.open) return this.moveTo(px, py);
+        this.addEdge(this.lastX, this.lastY, px, py);
+        this.lastX = px;
+        this.lastY = py;
+        return this;
+    }
+
+    /**
+     * Closes the current contour.
+     */
+    public PolygonRasterizer close()
+    {
+        if (this.open)
+        {
+            this.addEdge(this.lastX, this.lastY, this.startX, this.startY);
+            this.open = false;
+        }
+        return this;
+    }
+
+    /**
+     * Adds a closed contour.
+     *
+     * @param xs
+     *            X coordinates.
+     * @param ys
+     *            Y coordinates.
+     * @param count
+     *            Number of vertices.
+     */
+    public PolygonRasterizer addPolygon(final float[] xs, final float[] ys, final int count)
+    {
+        if (count < 1) return this;
+        this.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < count; i++)
+            this.lineTo(xs[i], ys[i]);
+        return this.close();
+    }
+
+    /**
+     * Discards the current outline.
+     */
+    public PolygonRasterizer reset()
+    {
+        this.edgeCount = 0;
+        this.open = false;
+        return this;
+    }
+
+    private void addEdge(final float x0, final float y0, final float x1, final float y1)
+    {
+        // Horizontal edges never cross a sample row
+        if (y0 == y1) return;
+        if (this.edgeCount * 4 + 4 > this.edges.length) this.edges = Arrays.copyOf(this.edges, this.edges.length * 2);
+        final int i = this.edgeCount++ * 4;
+        this.edges[i] = x0;
+        this.edges[i + 1] = y0;
+        this.edges[i + 2] = x1;
+        this.edges[i + 3] = y1;
+    }
+
+    private void ensureEdgeTable(final int n)
+    {
+        if (this.first.length >= n) return;
+        final int size = Math.max(n, this.first.length * 2);
+        this.first = new int[size];
+        this.last = new int[size];
+        this.winding = new int[size];
+        this.x = new long[size];
+        this.dx = new long[size];
+        this.order = new long[size];
+        this.active = new int[size];
+    }
+
+    /**
+     * Fills the current outline (closing an open contour) using the image's
+     * color operation and resets the outline.
+     *
+     * @param image
+     *            The target image.
+     * @param color
+     *            The fill color.
+     */
+    public void fill(final NImage image, final NColor color)
+    {
+        this.fill(image, color, 0, 0, image.width, image.height);
+    }
+
+    /**
+     * Fills the current outline clipped to [x0, x1) x [y0, y1), which must lie
+     * inside the image.
+     */
+    void fill(final NImage image, final NColor color, final int x0, final int y0, final int x1, final int y1)
+    {
+        this.close();
+        try
+        {
+            if (x0 < x1 && y0 < y1) this.rasterize(image, color, x0, y0, x1, y1);
+        }
+        finally
+        {
+            this.reset();
+        }
+    }
+
+    private void rasterize(final NImage image, final NColor color, final int clipX0, final int clipY0, final int clipX1, final int clipY1)
+    {
+        final int samples = this.antialias ? SUBSAMPLES : 1;
+        final int minClip = clipY0 * samples;
+        final int maxRow = clipY1 * samples;
+        final int n = this.edgeCount;
+        this.ensureEdgeTable(n);
+
+        // Build the edge table, sample row s is located at y = (s + 0.5) / samples
+        int count = 0, minRow = Integer.MAX_VALUE, endRow = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++)
+        {
+            final int o = i * 4;
+            final boolean down = this.edges[o + 1] < this.edges[o + 3];
+            final double x0 = down ? this.edges[o] : this.edges[o + 2];
+            final double y0 = down ? this.edges[o + 1] : this.edges[o + 3];
+            final double x1 = down ? this.edges[o + 2] : this.edges[o];
+            final double y1 = down ? this.edges[o + 3] : this.edges[o + 1];
+            final int sf = (int)Math.ceil(y0 * samples - 0.5);
+            final int s0 = Math.max(minClip, sf);
+            final int s1 = Math.min(maxRow, (int)Math.ceil(y1 * samples - 0.5));
+            if (s0 >= s1) continue;
+
+            final double slope = (x1 - x0) / (y1 - y0);
+            this.first[count] = s0;
+            this.last[count] = s1;
+            this.winding[count] = down ? 1 : -1;
+            // Step from the first sample row even if clipped, so clipping
+            // doesn't change the result
+            this.dx[count] = Math.round(slope / samples * FIX_ONE);
+            this.x[count] = Math.round((x0 + ((sf + 0.5) / samples - y0) * slope) * FIX_ONE) + (long)(s0 - sf) * this.dx[count];
+            minRow = Math.min(minRow, s0);
+            endRow = Math.max(endRow, s1);
+            count++;
+        }
+        if (count == 0) return;
+
+        for (int i = 0; i < count; i++)
+            this.order[i] = ((long)(this.first[i] - minRow) << 32) | i;
+        Arrays.sort(this.order, 0, count);
+
+        if (this.antialias && this.area.length < image.width + 2)
+        {
+            this.area = new float[image.width + 2];
+            this.delta = new float[image.width + 2];
+        }
+
+        final float[][] planes = image.planes();
+        final ColorOp op = image.getColorOp();
+        final int[] act = this.active;
+        final long[] ax = this.x;
+        int next = 0, na = 0, row = -1;
+
+        for (int s = minRow; s < endRow; s++)
+        {
+            // Remove finished edges, add starting ones
+            int k = 0;
+            for (int i = 0; i < na; i++)
+            {
+                if (this.last[act[i]] > s) act[k++] = act[i];
+            }
+            na = k;
+            while (next < count && this.first[(int)this.order[next]] <= s)
+                act[na++] = (int)this.order[next++];
+
+            if (na == 0)
+            {
+                if (next == count) break;
+                s = this.first[(int)this.order[next]] - 1;
+                continue;
+            }
+
+            // Insertion sort by x, edges rarely swap between sample rows
+            for (int i = 1; i < na; i++)
+            {
+                final int e = act[i];
+                final long v = ax[e];
+                int j = i - 1;
+                while (j >= 0 && ax[act[j]] > v)
+                {
+                    act[j + 1] = act[j];
+                    j--;
+                }
+                act[j + 1] = e;
+            }
+
+            if (this.antialias && s / samples != row)
+            {
+                this.flushCoverage(planes, image.width, clipX1, row, op, color);
+                row = s / samples;
+            }
+
+            // Walk spans
+            if (this.rule == FillRule.EVEN_ODD)
+            {
+                for (int i = 0; i + 1 < na; i += 2)
+                {
+                    final long xl = ax[act[i]], xr = ax[act[i + 1]];
+                    if (this.antialias)
+                        this.cover(image.width, clipX0, clipX1, xl, xr, 1.f / samples);
+                    else
+                    {
+                        fillSpan(planes, image.width, clipX0, clipX1, s, xl, xr, op, color);
+                    }
+                }
+            }
+            else
+            {
+                int w = 0;
+                long xl = 0;
+                for (int i = 0; i < na; i++)
+                {
+                    final int e = act[i];
+                    final int pw = w;
+                    w += this.winding[e];
+                    if (pw == 0 && w != 0)
+                    {
+                        xl = ax[e];
+                    }
+                    else if (pw != 0 && w == 0)
+                    {
+                        final long xr = ax[e];
+                        if (this.antialias)
+                            this.cover(image.width, clipX0, clipX1, xl, xr, 1.f / samples);
+                        else
+                        {
+                            fillSpan(planes, image.width, clipX0, clipX1, s, xl, xr, op, color);
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < na; i++)
+                ax[act[i]] += this.dx[act[i]];
+        }
+
+        if (this.antialias) this.flushCoverage(planes, image.width, clipX1, row, op, color);
+    }
+
+    /**
+     * Fills the pixels of row <code>y</code> whose centres lie in [xl, xr).
+     */
+    private static void fillSpan(final float[][] planes, final int width, final int clipX0, final int clipX1, final int y, final long xl,
+            final long xr, final ColorOp op, final NColor color)
+    {
+        final int x0 = (int)Math.max(clipX0, (xl - FIX_HALF + FIX_ONE - 1) >> FIX_SHIFT);
+        final int x1 = (int)Math.min(clipX1, (xr - FIX_HALF + FIX_ONE - 1) >> FIX_SHIFT);
+        if (x0 >= x1) return;
+
+        final int off = y * width;
+        if (op == ColorOp.SET)
+        {
+            Arrays.fill(planes[0], off + x0, off + x1, color.a);
+            Arrays.fill(planes[1], off + x0, off + x1, color.r);
+            Arrays.fill(planes[2], off + x0, off + x1, color.g);
+            Arrays.fill(planes[3], off + x0, off + x1, color.b);
+        }
+        else
+        {
+            for (int i = off + x0; i < off + x1; i++)
+                NImage.apply(op, planes[0], planes[1], planes[2], planes[3], i, color.a, color.r, color.g, color.b);
+        }
+    }
+
+    /**
+     * Accumulates the exact horizontal coverage of [xl, xr) scaled by
+     * <code>weight</code>. Cells completely inside the span only get a
+     * start/end mark in <code>delta</code>, resolved by a running sum when
+     * flushing. Coverage gets computed against the image bounds and only
+     * stored inside [clipX0, clipX1], so clipping doesn't change the result.
+     */
+    private void cover(final int width, final int clipX0, final int clipX1, final long xl, final long xr, final float weight)
+    {
+        final double a = Math.max(0, xl / (double)FIX_ONE);
+        final double b = Math.min(width, xr / (double)FIX_ONE);
+        if (!(a < b)) return;
+
+        final int ia = (int)a, ib = (int)b;
+        if (ib < clipX0 || ia >= clipX1) return;
+        if (ia == ib)
+        {
+            this.area[ia] += (float)((b - a) * weight);
+        }
+        else
+        {
+            if (ia >= clipX0) this.area[ia] += (float)((ia + 1 - a) * weight);
+            this.delta[Math.max(ia + 1, clipX0)] += weight;
+            if (ib <= clipX1)
+            {
+                this.delta[ib] -= weight;
+                this.area[ib] += (float)((b - ib) * weight);
+            }
+        }
+        this.minX = Math.min(this.minX, Math.max(ia, clipX0));
+        this.maxX = Math.max(this.maxX, Math.min(ib, clipX1));
+    }
+
+    private void flushCoverage(final float[][] planes, final int width, final int clipX1, final int y, final ColorOp op, final NColor color)
+    {
+        final int minX = this.minX, maxX = this.maxX;
+        if (maxX < 0) return;
+        this.minX = Integer.MAX_VALUE;
+        this.maxX = -1;
+
+        final float[] pa = planes[0], pr = planes[1], pg = planes[2], pb = planes[3];
+        final int off = y * width;
+        float acc = 0;
+        for (int x = minX; x <= maxX; x++)
+        {
+            acc += this.delta[x];
+            final float c = this.area[x] + acc;
+            this.area[x] = 0;
+            this.delta[x] = 0;
+            if (x >= clipX1 || c <= 0) continue;
+
+            final int i = off + x;
+            if (c >= 1)
+            {
+                NImage.apply(op, pa, pr, pg, pb, i, color.a, color.r, color.g, color.b);
+            }
+            else
+            {
+                final float da = pa[i], dr = pr[i], dg = pg[i], db = pb[i];
+                NImage.apply(op, pa, pr, pg, pb, i, color.a, color.r, color.g, color.b);
+                pa[i] = da + (pa[i] - da) * c;
+                pr[i] = dr + (pr[i] - dr) * c;
+                pg[i] = dg + (pg[i] - dg) * c;
+                pb[i] = db + (pb[i] - db) * c;
+            }
+        }
+    }
+}
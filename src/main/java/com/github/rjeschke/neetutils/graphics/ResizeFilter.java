@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import com.github.rjeschke.neetutils.math.NMath;
+
+/**
+ * Reconstruction filters for {@link NImage#resize(int, int, ResizeFilter)}.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ */
+public enum ResizeFilter
+{
+    /** Area average, support 0.5. */
+    BOX(0.5),
+    /** Triangle filter, support 1. */
+    BILINEAR(1),
+    /** Catmull-Rom cubic, support 2. */
+    BICUBIC(2),
+    /** Lanczos windowed sinc, support 3. */
+    LANCZOS3(3);
+
+    /** Filter radius in (destination scaled) source pixels. */
+    public final double support;
+
+    private ResizeFilter(final double support)
+    {
+        this.support = support;
+    }
+
+    double weight(final double x)
+    {
+        final double ax = Math.abs(x);
+        switch (this)
+        {
+        case BOX:
+            return x >= -0.5 && x < 0.5 ? 1 : 0;
+        case BILINEAR:
+            return ax < 1 ? 1 - ax : 0;
+        case BICUBIC:
+            if (ax < 1) return (1.5 * ax - 2.5) * ax * ax + 1;
+            if (ax < 2) return ((-0.5 * ax + 2.5) * ax - 4) * ax + 2;
+            return 0;
+        default:
+        case LANCZOS3:
+            return ax < 3 ? NMath.sinc(x) * NMath.sinc(x / 3) : 0;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2012 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import com.github.rjeschke.neetutils.concurrent.Parallel;
+import com.github.rjeschke.neetutils.concurrent.RangeWorker;
+
+/**
+ * Summed-area table (integral image) of an {@link NImage}.
+ *
+ * <p>
+ * Stores the per channel sums of all pixels above and left of each position
+ * in double precision, so box sums of arbitrary size are answered with four
+ * lookups. Building the table costs two passes over the image (rows, then
+ * columns), both run in parallel if the image's thread count is greater than
+ * one. Use this when box filtering or downsampling the same image repeatedly
+ * or with large boxes.
+ * </p>
+ *
+ * <p>
+ * Channels are numbered <code>0</code> (alpha), <code>1</code> (red),
+ * <code>2</code> (green) and <code>3</code> (blue). All rectangles use
+ * exclusive upper bounds and get clipped to the image.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ * @see NImage#summedAreaTable()
+ */
+public class SummedAreaTable
+{
+    public final int         width;
+    public final int         height;
+    private final int        stride;
+    private final int        threads;
+    private final double[][] sums;
+
+    SummedAreaTable(final NImage image)
+    {
+        this.width = image.width;
+        this.height = image.height;
+        this.stride = image.width + 1;
+        this.threads = image.getThreadCount();
+        this.sums = new double[4][this.stride * (this.height + 1)];
+
+        final float[][] planes = image.planes();
+        // Row prefix sums into rows 1 .. height
+        this.run(this.height, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int c = 0; c < 4; c++)
+                {
+                    final float[] p = planes[c];
+                    final double[] t = SummedAreaTable.this.sums[c];
+                    for (int y = from; y < to; y++)
+                    {
+                        final int s = y * SummedAreaTable.this.width;
+                        final int d = (y + 1) * SummedAreaTable.this.stride + 1;
+                        double acc = 0;
+                        for (int x = 0; x < SummedAreaTable.this.width; x++)
+                        {
+                            acc += p[s + x];
+                            t[d + x] = acc;
+                        }
+                    }
+                }
+            }
+        });
+        // Column prefix sums, in column strips
+        this.run(this.stride, new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                final int st = SummedAreaTable.this.stride;
+                for (int c = 0; c < 4; c++)
+                {
+                    final double[] t = SummedAreaTable.this.sums[c];
+                    for (int y = 2; y <= SummedAreaTable.this.height; y++)
+                    {
+                        final int d = y * st;
+                        for (int x = from; x < to; x++)
+                            t[d + x] += t[d - st + x];
+                    }
+                }
+            }
+        });
+    }
+
+    private void run(final int size, final RangeWorker worker)
+    {
+        if (this.threads < 2)
+            worker.run(0, size);
+        else
+            Parallel.forRange(0, size, Math.max(16, (size + this.threads * 4 - 1) / (this.threads * 4)), worker);
+    }
+
+    private static int clip(final int v, final int max)
+    {
+        return v < 0 ? 0 : (v > max ? max : v);
+    }
+
+    private double lookup(final double[] t, final int x0, final int y0, final int x1, final int y1)
+    {
+        return t[y1 * this.stride + x1] - t[y0 * this.stride + x1] - t[y1 * this.stride + x0] + t[y0 * this.stride + x0];
+    }
+
+    /**
+     * Returns the sum of the given channel over the rectangle [x0, x1) x [y0,
+     * y1).
+     *
+     * @param channel
+     *            The channel (0 = a, 1 = r, 2 = g, 3 = b).
+     * @param x0
+     *            Left (inclusive).
+     * @param y0
+     *            Top (inclusive).
+     * @param x1
+     *            Right (exclusive).
+     * @param y1
+     *            Bottom (exclusive).
+     * @return The sum.
+     */
+    public double sum(final int channel, final int x0, final int y0, final int x1, final int y1)
+    {
+        final int cx0 = clip(x0, this.width), cx1 = clip(x1, this.width);
+        final int cy0 = clip(y0, this.height), cy1 = clip(y1, this.height);
+        if (cx1 <= cx0 || cy1 <= cy0) return 0;
+        return this.lookup(this.sums[channel], cx0, cy0, cx1, cy1);
+    }
+
+    /**
+     * Returns the average color of the rectangle [x0, x1) x [y0, y1).
+     *
+     * @param x0
+     *            Left (inclusive).
+     * @param y0
+     *            Top (inclusive).
+     * @param x1
+     *            Right (exclusive).
+     * @param y1
+     *            Bottom (exclusive).
+     * @return The average color, transparent black if the clipped rectangle
+     *         is empty.
+     */
+    public NColor average(final int x0, final int y0, final int x1, final int y1)
+    {
+        final int cx0 = clip(x0, this.width), cx1 = clip(x1, this.width);
+        final int cy0 = clip(y0, this.height), cy1 = clip(y1, this.height);
+        if (cx1 <= cx0 || cy1 <= cy0) return new NColor(0.f, 0.f, 0.f, 0.f);
+        final double div = 1.0 / ((double)(cx1 - cx0) * (cy1 - cy0));
+        return new NColor(this.lookup(this.sums[0], cx0, cy0, cx1, cy1) * div, this.lookup(this.sums[1], cx0, cy0, cx1, cy1) * div,
+                this.lookup(this.sums[2], cx0, cy0, cx1, cy1) * div, this.lookup(this.sums[3], cx0, cy0, cx1, cy1) * div);
+    }
+
+    /**
+     * Same as {@link NImage#boxDownsample(int, int)}, but with constant cost
+     * per destination pixel.
+     *
+     * @param fx
+     *            Horizontal factor.
+     * @param fy
+     *            Vertical factor.
+     * @return A new image.
+     */
+    public NImage boxDownsample(final int fx, final int fy)
+    {
+        final NImage ret = new NImage(this.width / fx, this.height / fy);
+        ret.setThreadCount(this.threads);
+        final float[][] out = ret.planes();
+        final double div = 1.0 / ((double)fx * fy);
+        return ret.runRows(new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                for (int c = 0; c < 4; c++)
+                {
+                    final double[] t = SummedAreaTable.this.sums[c];
+                    final float[] o = out[c];
+                    for (int y = from; y < to; y++)
+                    {
+                        for (int x = 0; x < ret.width; x++)
+                            o[x + y * ret.width] = (float)(SummedAreaTable.this.lookup(t, x * fx, y * fy, x * fx + fx, y * fy + fy) * div);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Box filters the image with a window of <code>(2 * rx + 1) x
+     * (2 * ry + 1)</code> pixels. Unlike {@link NImage#boxBlur(int, int)}
+     * the window gets clipped to the image and normalized by the covered
+     * area, i.e. clamp modes are ignored.
+     *
+     * @param rx
+     *            Horizontal radius.
+     * @param ry
+     *            Vertical radius.
+     * @return A new image.
+     */
+    public NImage boxFilter(final int rx, final int ry)
+    {
+        final NImage ret = new NImage(this.width, this.height);
+        ret.setThreadCount(this.threads);
+        final float[][] out = ret.planes();
+        return ret.runRows(new RangeWorker()
+        {
+            @Override
+            public void run(final int from, final int to)
+            {
+                final int w = SummedAreaTable.this.width, h = SummedAreaTable.this.height;
+                for (int y = from; y < to; y++)
+                {
+                    final int y0 = Math.max(0, y - ry), y1 = Math.min(h, y + ry + 1);
+                    for (int x = 0; x < w; x++)
+                    {
+                        final int x0 = Math.max(0, x - rx), x1 = Math.min(w, x + rx + 1);
+                        final double div = 1.0 / ((double)(x1 - x0) * (y1 - y0));
+                        for (int c = 0; c < 4; c++)
+                            out[c][x + y * w] = (float)(SummedAreaTable.this.lookup(SummedAreaTable.this.sums[c], x0, y0, x1, y1) * div);
+                    }
+                }
+            }
+        });
+    }
+}
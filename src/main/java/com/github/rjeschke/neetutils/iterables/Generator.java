@@ -15,11 +15,36 @@
  */
 package com.github.rjeschke.neetutils.iterables;
 
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Generator base class. Elements get produced by {@link #generate()} calling
+ * {@link #yield(Object)} on a separate producer thread.
+ *
+ * <p>
+ * The producer hands elements over in batches through a small bounded buffer,
+ * so it runs at most <code>batchSize * 4</code> elements ahead of the
+ * consumer. By default every element is handed over as soon as it is
+ * yielded; generators producing many cheap elements should opt into larger
+ * batches using {@link #Generator(int)}, at the cost of elements becoming
+ * visible only once a batch is full (or <code>generate()</code> returns).
+ * Producers run on virtual threads when the runtime supports them, otherwise
+ * on daemon threads. The producer thread gets started on the first call of
+ * <code>hasNext()</code>/<code>next()</code> and terminates when
+ * <code>generate()</code> returns, when the iterator gets closed or when the
+ * iterator becomes unreachable.
+ * </p>
+ *
+ * <p>
+ * Exceptions thrown by <code>generate()</code> get rethrown on the consumer
+ * side.
+ * </p>
  *
  * @author René Jeschke (rene_jeschke@yahoo.de)
  *
@@ -27,11 +52,36 @@ import java.util.concurrent.SynchronousQueue;
  */
 public abstract class Generator<A> implements Iterable<A>
 {
-    final ThreadLocal<GeneratorIterator<A>> generatorIterator = new ThreadLocal<>();
+    public final static int        DEFAULT_BATCH_SIZE = 1;
+    private final static Method    START_VIRTUAL      = findStartVirtual();
+    final ThreadLocal<Producer<A>> producer           = new ThreadLocal<>();
+    private final int              batchSize;
+
+    /**
+     * Creates a generator using {@link #DEFAULT_BATCH_SIZE}, i.e. handing over
+     * every element immediately.
+     */
+    public Generator()
+    {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param batchSize
+     *            Number of elements handed over at once. Use <code>1</code>
+     *            for lowest latency (and lowest throughput), larger values
+     *            (e.g. <code>64</code>) for fast producers.
+     */
+    public Generator(final int batchSize)
+    {
+        this.batchSize = Math.max(1, batchSize);
+    }
 
     protected final void yield(final A element)
     {
-        this.generatorIterator.get().push(element);
+        this.producer.get().push(element);
     }
 
     public abstract void generate();
@@ -39,70 +89,223 @@ public abstract class Generator<A> implements Iterable<A>
     @Override
     public final Iterator<A> iterator()
     {
-        final GeneratorIterator<A> gi = new GeneratorIterator<>(this);
-        final Thread thread = new Thread(gi);
+        return new GeneratorIterator<>(this);
+    }
+
+    /**
+     * Stops the producer of the given generator iterator. Does nothing for
+     * other iterators.
+     *
+     * @param iterator
+     *            The iterator.
+     */
+    public static void close(final Iterator<?> iterator)
+    {
+        if (iterator instanceof GeneratorIterator) ((GeneratorIterator<?>)iterator).close();
+    }
+
+    private static Method findStartVirtual()
+    {
+        try
+        {
+            return Thread.class.getMethod("startVirtualThread", Runnable.class);
+        }
+        catch (final Exception e)
+        {
+            return null;
+        }
+    }
+
+    static void startThread(final Runnable runnable)
+    {
+        if (START_VIRTUAL != null)
+        {
+            try
+            {
+                START_VIRTUAL.invoke(null, runnable);
+                return;
+            }
+            catch (final Exception e)
+            {
+                // Preview feature not enabled, fall through
+            }
+        }
+        final Thread thread = new Thread(runnable);
         thread.setDaemon(true);
         thread.start();
-        return gi;
     }
 
-    private final static class GeneratorIterator<A> implements Iterator<A>, Runnable
+    private final static class Batch
     {
-        private final SynchronousQueue<State<A>> queue = new SynchronousQueue<>();
-        private final Generator<A>               generator;
-        private State<A>                         state;
+        final Object[] elements;
+        int            count = 0;
+        boolean        last  = false;
+        Throwable      error = null;
 
-        public GeneratorIterator(final Generator<A> generator)
+        public Batch(final int size)
+        {
+            this.elements = new Object[size];
+        }
+    }
+
+    private final static class Cancelled extends RuntimeException
+    {
+        private static final long serialVersionUID = -6306713683002001124L;
+
+        public Cancelled()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    private final static class Channel
+    {
+        final ArrayBlockingQueue<Batch> queue  = new ArrayBlockingQueue<>(4);
+        volatile boolean                closed = false;
+
+        public Channel()
+        {
+            // empty
+        }
+    }
+
+    final static class Producer<A> implements Runnable
+    {
+        private final Generator<A>                        generator;
+        private final Channel                             channel;
+        private final WeakReference<GeneratorIterator<A>> consumer;
+        private Batch                                     batch;
+
+        public Producer(final Generator<A> generator, final Channel channel, final GeneratorIterator<A> consumer)
         {
             this.generator = generator;
+            this.channel = channel;
+            this.consumer = new WeakReference<>(consumer);
+            this.batch = new Batch(generator.batchSize);
         }
 
-        public void push(final A element)
+        void push(final A element)
+        {
+            final Batch b = this.batch;
+            b.elements[b.count++] = element;
+            if (b.count == b.elements.length)
+            {
+                this.send(b);
+                this.batch = new Batch(this.generator.batchSize);
+            }
+        }
+
+        private void send(final Batch b)
         {
             try
             {
-                this.queue.put(new State<>(element, true));
+                while (!this.channel.queue.offer(b, 100, TimeUnit.MILLISECONDS))
+                {
+                    if (this.channel.closed || this.consumer.get() == null) throw new Cancelled();
+                }
             }
             catch (final InterruptedException e)
             {
-                //
+                throw new Cancelled();
             }
         }
 
-        public void close()
+        @Override
+        public void run()
         {
+            this.generator.producer.set(this);
             try
             {
-                this.queue.put(new State<A>(null, false));
+                this.generator.generate();
+                this.batch.last = true;
             }
-            catch (final InterruptedException e)
+            catch (final Cancelled e)
+            {
+                return;
+            }
+            catch (final Throwable t)
+            {
+                this.batch.last = true;
+                this.batch.error = t;
+            }
+            finally
+            {
+                this.generator.producer.remove();
+            }
+
+            try
+            {
+                this.send(this.batch);
+            }
+            catch (final Cancelled e)
             {
-                //
+                // consumer is gone
             }
         }
+    }
+
+    private final static class GeneratorIterator<A> implements Iterator<A>, Closeable
+    {
+        private final Generator<A> generator;
+        private final Channel      channel = new Channel();
+        private boolean            started = false;
+        private Batch              batch   = null;
+        private int                pos     = 0;
+
+        public GeneratorIterator(final Generator<A> generator)
+        {
+            this.generator = generator;
+        }
 
         @Override
         public boolean hasNext()
         {
-            try
+            if (this.channel.closed) return false;
+            if (!this.started)
             {
-                this.state = this.queue.take();
+                this.started = true;
+                startThread(new Producer<>(this.generator, this.channel, this));
             }
-            catch (final InterruptedException e)
+
+            while (this.batch == null || this.pos == this.batch.count)
             {
-                return false;
+                if (this.batch != null && this.batch.last)
+                {
+                    final Throwable t = this.batch.error;
+                    if (t != null)
+                    {
+                        this.batch.error = null;
+                        if (t instanceof RuntimeException) throw (RuntimeException)t;
+                        if (t instanceof Error) throw (Error)t;
+                        throw new RuntimeException(t);
+                    }
+                    return false;
+                }
+                try
+                {
+                    this.batch = this.channel.queue.take();
+                    this.pos = 0;
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
             }
-            return this.state.hasNext;
+            return true;
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public A next()
         {
-            if (!this.state.hasNext)
+            if (!this.hasNext())
             {
                 throw new NoSuchElementException();
             }
-            return this.state.element;
+            final A element = (A)this.batch.elements[this.pos];
+            this.batch.elements[this.pos++] = null;
+            return element;
         }
 
         @Override
@@ -112,25 +315,10 @@ public abstract class Generator<A> implements Iterable<A>
         }
 
         @Override
-        public void run()
-        {
-            this.generator.generatorIterator.set(this);
-
-            this.generator.generate();
-
-            this.close();
-        }
-
-        private final static class State<A>
+        public void close()
         {
-            public final A       element;
-            public final boolean hasNext;
-
-            public State(final A element, final boolean hasNext)
-            {
-                this.element = element;
-                this.hasNext = hasNext;
-            }
+            this.channel.closed = true;
+            this.channel.queue.clear();
         }
     }
 }
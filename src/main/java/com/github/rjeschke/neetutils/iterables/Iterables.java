@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 
 import com.github.rjeschke.neetutils.collections.Tuple;
@@ -50,6 +51,27 @@ public final class Iterables
         return new XIterableGeneric<>(iterable);
     }
 
+    /**
+     * Returns a parallel view of the given iterable. Iterables which are not
+     * random access lists get materialized into an ArrayList.
+     *
+     * @param iterable
+     *            The iterable.
+     * @return A ParallelXIterable.
+     */
+    public final static <A> ParallelXIterable<A> parallel(final Iterable<A> iterable)
+    {
+        if (iterable instanceof ParallelXIterable)
+        {
+            return (ParallelXIterable<A>)iterable;
+        }
+        if (iterable instanceof List && iterable instanceof RandomAccess)
+        {
+            return new ParallelXIterable<>((List<A>)iterable, 0);
+        }
+        return new ParallelXIterable<>(asList(iterable), 0);
+    }
+
     public final static <A> String asString(final Iterable<A> iterable)
     {
         final StringBuilder sb = new StringBuilder();
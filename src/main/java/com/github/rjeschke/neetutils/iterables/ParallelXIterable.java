@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.iterables;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.github.rjeschke.neetutils.collections.Colls;
+import com.github.rjeschke.neetutils.concurrent.Scans;
+import com.github.rjeschke.neetutils.fn.FnCombine;
+import com.github.rjeschke.neetutils.fn.FnFoldStep;
+import com.github.rjeschke.neetutils.fn.FnMapping;
+import com.github.rjeschke.neetutils.fn.FnPredicate;
+
+/**
+ * XIterable backed by a materialized random access list, evaluating
+ * {@link #map(FnMapping)}, {@link #filter(FnPredicate)}, the combiner based
+ * reductions and scans eagerly on the shared fork-join pool. All other operations
+ * are inherited sequential ones.
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ *
+ * @param <A>
+ * @see com.github.rjeschke.neetutils.concurrent.Parallel
+ */
+public class ParallelXIterable<A> extends AbstractXIterable<A>
+{
+    private final List<A> list;
+    private final int     grain;
+
+    ParallelXIterable(final List<A> list, final int grain)
+    {
+        this.list = list;
+        this.grain = grain;
+    }
+
+    /**
+     * Returns a ParallelXIterable using the given grain size.
+     *
+     * @param grain
+     *            Maximum number of elements per task, <code>0</code> for
+     *            default.
+     * @return A ParallelXIterable.
+     */
+    public ParallelXIterable<A> grain(final int grain)
+    {
+        return new ParallelXIterable<>(this.list, grain);
+    }
+
+    @Override
+    public ParallelXIterable<A> parallel()
+    {
+        return this;
+    }
+
+    @Override
+    public ParallelXIterable<A> filter(final FnPredicate<? super A> predicate)
+    {
+        return new ParallelXIterable<>(Colls.<A> parFilter(this.list, predicate, this.grain), this.grain);
+    }
+
+    @Override
+    public <B> ParallelXIterable<B> map(final FnMapping<? super A, B> mapping)
+    {
+        return new ParallelXIterable<>(Colls.<A, B> parMap(this.list, mapping, this.grain), this.grain);
+    }
+
+    /**
+     * Parallel reduction.
+     *
+     * @param foldStep
+     *            Fold step used inside a task.
+     * @param combine
+     *            Associative combiner for partial results (lower, upper).
+     * @param initialValue
+     *            Initial value for each task, must be the identity of
+     *            <code>combine</code>.
+     * @return The result.
+     */
+    public <B> B reduce(final FnFoldStep<? super A, B> foldStep, final FnCombine<B, B, B> combine, final B initialValue)
+    {
+        return Colls.<A, B> parReduce(this.list, foldStep, combine, initialValue, this.grain);
+    }
+
+    /**
+     * Parallel map-reduce.
+     *
+     * @param mapping
+     *            The mapping.
+     * @param foldStep
+     *            Fold step used inside a task.
+     * @param combine
+     *            Associative combiner for partial results (lower, upper).
+     * @param initialValue
+     *            Initial value for each task, must be the identity of
+     *            <code>combine</code>.
+     * @return The result.
+     */
+    public <B, C> C mapReduce(final FnMapping<? super A, B> mapping, final FnFoldStep<? super B, C> foldStep, final FnCombine<C, C, C> combine,
+            final C initialValue)
+    {
+        return Colls.<A, B, C> parMapReduce(this.list, mapping, foldStep, combine, initialValue, this.grain);
+    }
+
+    /**
+     * Parallel version of {@link #reductions(FnFoldStep)}, evaluated eagerly.
+     *
+     * @param foldStep
+     *            Associative fold step (element, accumulator).
+     * @return The running folds, starting with the first element.
+     * @see Scans
+     */
+    public ParallelXIterable<A> scan(final FnFoldStep<? super A, A> foldStep)
+    {
+        final Object[] out = new Object[this.list.size()];
+        if (out.length > 0)
+        {
+            out[0] = this.list.get(0);
+            Scans.scan(this.list, 1, out, 1, foldStep, this.list.get(0), this.grain);
+        }
+        return this.wrap(out);
+    }
+
+    /**
+     * Parallel version of {@link #reductions(FnFoldStep, Object)}, evaluated
+     * eagerly.
+     *
+     * @param foldStep
+     *            Associative fold step (element, accumulator).
+     * @param initialValue
+     *            The initial value.
+     * @return The running folds, starting with <code>initialValue</code>.
+     * @see Scans
+     */
+    public ParallelXIterable<A> scan(final FnFoldStep<? super A, A> foldStep, final A initialValue)
+    {
+        final Object[] out = new Object[this.list.size() + 1];
+        out[0] = initialValue;
+        Scans.scan(this.list, 0, out, 1, foldStep, initialValue, this.grain);
+        return this.wrap(out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ParallelXIterable<A> wrap(final Object[] values)
+    {
+        return new ParallelXIterable<>((List<A>)Arrays.asList(values), this.grain);
+    }
+
+    @Override
+    public Iterator<A> iterator()
+    {
+        return this.list.iterator();
+    }
+}
@@ -83,4 +83,6 @@ public interface XIterable<A> extends Iterable<A>
     public <B> Map<? super B, ? super A> asMapVK(Iterable<? extends B> iterable, Map<? super B, ? super A> list);
 
     public String asString();
+
+    public ParallelXIterable<A> parallel();
 }
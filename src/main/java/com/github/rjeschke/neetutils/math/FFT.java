@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.math;
+
+/**
+ * Iterative radix-2 complex FFT with precomputed twiddle factors and bit
+ * reversal table.
+ *
+ * <p>
+ * Data is given as separate real and imaginary arrays and gets transformed in
+ * place. The forward transform uses <code>e^(-2&pi;ijk/n)</code>, the inverse
+ * transform is scaled by <code>1/n</code>. Instances are immutable and may be
+ * shared between threads.
+ * </p>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public final class FFT
+{
+    private final int      size;
+    private final int[]    bitrev;
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * Constructor.
+     *
+     * @param size
+     *            Transform size, must be a power of two.
+     */
+    public FFT(final int size)
+    {
+        if (size < 1 || (size & (size - 1)) != 0) throw new IllegalArgumentException("Size must be a power of two: " + size);
+
+        this.size = size;
+        this.bitrev = new int[size];
+        final int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++)
+            this.bitrev[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+
+        this.cos = new double[Math.max(1, size >> 1)];
+        this.sin = new double[this.cos.length];
+        for (int i = 0; i < this.cos.length; i++)
+        {
+            final double w = 2.0 * Math.PI * i / size;
+            this.cos[i] = Math.cos(w);
+            this.sin[i] = Math.sin(w);
+        }
+    }
+
+    /**
+     * Returns the smallest power of two greater than or equal to the given
+     * value.
+     *
+     * @param value
+     *            The value.
+     * @return The power of two.
+     */
+    public static int sizeFor(final int value)
+    {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Forward transform of <code>size()</code> values starting at
+     * <code>offset</code>.
+     *
+     * @param re
+     *            Real parts.
+     * @param im
+     *            Imaginary parts.
+     * @param offset
+     *            Start offset.
+     */
+    public void forward(final double[] re, final double[] im, final int offset)
+    {
+        this.transform(re, im, offset, -1);
+    }
+
+    /**
+     * Forward transform of the first <code>size()</code> values.
+     *
+     * @param re
+     *            Real parts.
+     * @param im
+     *            Imaginary parts.
+     */
+    public void forward(final double[] re, final double[] im)
+    {
+        this.transform(re, im, 0, -1);
+    }
+
+    /**
+     * Scaled inverse transform of <code>size()</code> values starting at
+     * <code>offset</code>.
+     *
+     * @param re
+     *            Real parts.
+     * @param im
+     *            Imaginary parts.
+     * @param offset
+     *            Start offset.
+     */
+    public void inverse(final double[] re, final double[] im, final int offset)
+    {
+        this.transform(re, im, offset, 1);
+        final double scale = 1.0 / this.size;
+        for (int i = offset; i < offset + this.size; i++)
+        {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    /**
+     * Scaled inverse transform of the first <code>size()</code> values.
+     *
+     * @param re
+     *            Real parts.
+     * @param im
+     *            Imaginary parts.
+     */
+    public void inverse(final double[] re, final double[] im)
+    {
+        this.inverse(re, im, 0);
+    }
+
+    private void transform(final double[] re, final double[] im, final int offset, final int sign)
+    {
+        final int n = this.size;
+
+        for (int i = 0; i < n; i++)
+        {
+            final int j = this.bitrev[i];
+            if (j > i)
+            {
+                final int a = offset + i, b = offset + j;
+                double t = re[a];
+                re[a] = re[b];
+                re[b] = t;
+                t = im[a];
+                im[a] = im[b];
+                im[b] = t;
+            }
+        }
+
+        for (int len = 2; len <= n; len <<= 1)
+        {
+            final int half = len >> 1;
+            final int step = n / len;
+            for (int i = 0; i < n; i += len)
+            {
+                for (int j = 0; j < half; j++)
+                {
+                    final double wr = this.cos[j * step];
+                    final double wi = sign * this.sin[j * step];
+                    final int a = offset + i + j, b = a + half;
+                    final double tr = re[b] * wr - im[b] * wi;
+                    final double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
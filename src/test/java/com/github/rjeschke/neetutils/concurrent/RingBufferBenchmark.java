@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Throughput benchmark comparing the ring buffers against
+ * {@link ConcurrentLinkedQueue}.
+ *
+ * <p>
+ * Each case moves a fixed number of elements from 1, 2 or 4 producer threads
+ * to a single consumer (the calling thread). Object queues transfer cached
+ * Integer instances, so boxing does not get measured. Prints the best of
+ * several runs in million elements per second.
+ * </p>
+ *
+ * <pre>
+ * java -cp ... com.github.rjeschke.neetutils.concurrent.RingBufferBenchmark [elements] [runs]
+ * </pre>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public class RingBufferBenchmark
+{
+    private final static int       CAPACITY = 1 << 14;
+    private final static int       BATCH    = 64;
+    private final static Integer[] VALUES   = new Integer[1024];
+
+    static
+    {
+        for (int i = 0; i < VALUES.length; i++)
+            VALUES[i] = Integer.valueOf(i);
+    }
+
+    private abstract static class Case
+    {
+        final String name;
+        final int    maxProducers;
+
+        public Case(final String name, final int maxProducers)
+        {
+            this.name = name;
+            this.maxProducers = maxProducers;
+        }
+
+        abstract void reset();
+
+        abstract void produce(final int count);
+
+        abstract long consume(final long count);
+    }
+
+    private static long run(final Case c, final int producers, final int elements)
+    {
+        c.reset();
+        final int perProducer = elements / producers;
+        final Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    c.produce(perProducer);
+                }
+            });
+        }
+        final long t0 = System.nanoTime();
+        for (int i = 0; i < producers; i++)
+            threads[i].start();
+        final long sum = c.consume((long)perProducer * producers);
+        final long t1 = System.nanoTime();
+        for (int i = 0; i < producers; i++)
+        {
+            try
+            {
+                threads[i].join();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long expected = 0;
+        for (int i = 0; i < perProducer; i++)
+            expected += i & 1023;
+        if (sum != expected * producers) throw new IllegalStateException(c.name + ": lost or duplicated elements");
+        return t1 - t0;
+    }
+
+    private static Case[] cases()
+    {
+        return new Case[] {
+                new Case("ConcurrentLinkedQueue", 4)
+                {
+                    ConcurrentLinkedQueue<Integer> q;
+
+                    @Override
+                    void reset()
+                    {
+                        this.q = new ConcurrentLinkedQueue<>();
+                    }
+
+                    @Override
+                    void produce(final int count)
+                    {
+                        for (int i = 0; i < count; i++)
+                            this.q.offer(VALUES[i & 1023]);
+                    }
+
+                    @Override
+                    long consume(final long count)
+                    {
+                        long sum = 0;
+                        for (long n = 0; n < count;)
+                        {
+                            final Integer v = this.q.poll();
+                            if (v != null)
+                            {
+                                sum += v.intValue();
+                                n++;
+                            }
+                        }
+                        return sum;
+                    }
+                },
+                new Case("SPSCRingBuffer", 1)
+                {
+                    SPSCRingBuffer<Integer> q;
+
+                    @Override
+                    void reset()
+                    {
+                        this.q = new SPSCRingBuffer<>(CAPACITY, WaitStrategy.YIELD);
+                    }
+
+                    @Override
+                    void produce(final int count)
+                    {
+                        for (int i = 0; i < count; i++)
+                            this.q.put(VALUES[i & 1023]);
+                    }
+
+                    @Override
+                    long consume(final long count)
+                    {
+                        long sum = 0;
+                        for (long n = 0; n < count; n++)
+                            sum += this.q.take().intValue();
+                        return sum;
+                    }
+                },
+                new Case("SPSCIntRingBuffer (batch)", 1)
+                {
+                    SPSCIntRingBuffer q;
+
+                    @Override
+                    void reset()
+                    {
+                        this.q = new SPSCIntRingBuffer(CAPACITY, WaitStrategy.YIELD);
+                    }
+
+                    @Override
+                    void produce(final int count)
+                    {
+                        final int[] batch = new int[BATCH];
+                        for (int i = 0; i < count; i += BATCH)
+                        {
+                            final int n = Math.min(BATCH, count - i);
+                            for (int j = 0; j < n; j++)
+                                batch[j] = (i + j) & 1023;
+                            this.q.putAll(batch, 0, n);
+                        }
+                    }
+
+                    @Override
+                    long consume(final long count)
+                    {
+                        final int[] batch = new int[BATCH];
+                        long sum = 0;
+                        for (long n = 0; n < count;)
+                        {
+                            final int k = this.q.drainTo(batch, 0, BATCH);
+                            for (int j = 0; j < k; j++)
+                                sum += batch[j];
+                            n += k;
+                            if (k == 0) Thread.yield();
+                        }
+                        return sum;
+                    }
+                },
+                new Case("MPSCRingBuffer", 4)
+                {
+                    MPSCRingBuffer<Integer> q;
+
+                    @Override
+                    void reset()
+                    {
+                        this.q = new MPSCRingBuffer<>(CAPACITY, WaitStrategy.YIELD);
+                    }
+
+                    @Override
+                    void produce(final int count)
+                    {
+                        for (int i = 0; i < count; i++)
+                            this.q.put(VALUES[i & 1023]);
+                    }
+
+                    @Override
+                    long consume(final long count)
+                    {
+                        long sum = 0;
+                        for (long n = 0; n < count; n++)
+                            sum += this.q.take().intValue();
+                        return sum;
+                    }
+                },
+                new Case("MPSCIntRingBuffer", 4)
+                {
+                    MPSCIntRingBuffer q;
+
+                    @Override
+                    void reset()
+                    {
+                        this.q = new MPSCIntRingBuffer(CAPACITY, WaitStrategy.YIELD);
+                    }
+
+                    @Override
+                    void produce(final int count)
+                    {
+                        for (int i = 0; i < count; i++)
+                            this.q.put(i & 1023);
+                    }
+
+                    @Override
+                    long consume(final long count)
+                    {
+                        long sum = 0;
+                        for (long n = 0; n < count; n++)
+                            sum += this.q.take();
+                        return sum;
+                    }
+                },
+                new Case("MPSCIntRingBuffer (batch)", 4)
+                {
+                    MPSCIntRingBuffer q;
+
+                    @Override
+                    void reset()
+                    {
+                        this.q = new MPSCIntRingBuffer(CAPACITY, WaitStrategy.YIELD);
+                    }
+
+                    @Override
+                    void produce(final int count)
+                    {
+                        final int[] batch = new int[BATCH];
+                        for (int i = 0; i < count; i += BATCH)
+                        {
+                            final int n = Math.min(BATCH, count - i);
+                            for (int j = 0; j < n; j++)
+                                batch[j] = (i + j) & 1023;
+                            this.q.putAll(batch, 0, n);
+                        }
+                    }
+
+                    @Override
+                    long consume(final long count)
+                    {
+                        final int[] batch = new int[BATCH];
+                        long sum = 0;
+                        for (long n = 0; n < count;)
+                        {
+                            final int k = this.q.drainTo(batch, 0, BATCH);
+                            for (int j = 0; j < k; j++)
+                                sum += batch[j];
+                            n += k;
+                            if (k == 0) Thread.yield();
+                        }
+                        return sum;
+                    }
+                } };
+    }
+
+    public static void main(final String[] args)
+    {
+        final int elements = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        for (final Case c : cases())
+        {
+            for (int producers = 1; producers <= c.maxProducers; producers <<= 1)
+            {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < runs; r++)
+                    best = Math.min(best, run(c, producers, elements));
+                System.out.println(String.format("%-28s %d producer(s): %8.2f M/s", c.name, producers, elements * 1e3 / best));
+            }
+        }
+    }
+}
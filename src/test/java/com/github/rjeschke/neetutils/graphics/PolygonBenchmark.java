@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.neetutils.graphics;
+
+import java.util.Random;
+
+import com.github.rjeschke.neetutils.graphics.NImage.NPoint;
+
+/**
+ * Benchmark filling random polygons into a 1024x1024 image.
+ *
+ * <p>
+ * Each case fills the same set of random, possibly self intersecting polygons
+ * (default: 100000 polygons with 6 vertices inside a 64x64 box) and prints
+ * the best of several runs.
+ * </p>
+ *
+ * <pre>
+ * java -cp ... com.github.rjeschke.neetutils.graphics.PolygonBenchmark [polygons] [runs]
+ * </pre>
+ *
+ * @author René Jeschke (rene_jeschke@yahoo.de)
+ */
+public class PolygonBenchmark
+{
+    private final static int SIZE     = 1024;
+    private final static int VERTICES = 6;
+    private final static int EXTENT   = 64;
+
+    private abstract static class Case
+    {
+        final String name;
+
+        public Case(final String name)
+        {
+            this.name = name;
+        }
+
+        abstract void run(final NImage image);
+    }
+
+    public static void main(final String[] args)
+    {
+        final int polygons = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        final Random rnd = new Random(4711);
+        final NPoint[][] points = new NPoint[polygons][VERTICES];
+        final float[][] xs = new float[polygons][VERTICES], ys = new float[polygons][VERTICES];
+        final NColor[] colors = new NColor[polygons];
+        for (int i = 0; i < polygons; i++)
+        {
+            final int cx = rnd.nextInt(SIZE), cy = rnd.nextInt(SIZE);
+            for (int k = 0; k < VERTICES; k++)
+            {
+                points[i][k] = new NPoint(cx + rnd.nextInt(EXTENT) - EXTENT / 2, cy + rnd.nextInt(EXTENT) - EXTENT / 2);
+                xs[i][k] = points[i][k].x;
+                ys[i][k] = points[i][k].y;
+            }
+            colors[i] = new NColor(1.f, rnd.nextFloat(), rnd.nextFloat(), rnd.nextFloat());
+        }
+
+        final Case[] cases = new Case[] {
+                new Case("fillPolygon(NPoint[])")
+                {
+                    @Override
+                    void run(final NImage image)
+                    {
+                        for (int i = 0; i < polygons; i++)
+                            image.fillPolygon(points[i], colors[i]);
+                    }
+                },
+                new Case("fillPolygon(float[]) non-zero")
+                {
+                    @Override
+                    void run(final NImage image)
+                    {
+                        for (int i = 0; i < polygons; i++)
+                            image.fillPolygon(xs[i], ys[i], VERTICES, FillRule.NON_ZERO, false, colors[i]);
+                    }
+                },
+                new Case("fillPolygon(float[]) even-odd")
+                {
+                    @Override
+                    void run(final NImage image)
+                    {
+                        for (int i = 0; i < polygons; i++)
+                            image.fillPolygon(xs[i], ys[i], VERTICES, FillRule.EVEN_ODD, false, colors[i]);
+                    }
+                },
+                new Case("fillPolygon(float[]) anti-aliased")
+                {
+                    @Override
+                    void run(final NImage image)
+                    {
+                        for (int i = 0; i < polygons; i++)
+                            image.fillPolygon(xs[i], ys[i], VERTICES, FillRule.NON_ZERO, true, colors[i]);
+                    }
+                },
+                new Case("PolygonRasterizer (reused)")
+                {
+                    final PolygonRasterizer pr = new PolygonRasterizer();
+
+                    @Override
+                    void run(final NImage image)
+                    {
+                        for (int i = 0; i < polygons; i++)
+                            this.pr.addPolygon(xs[i], ys[i], VERTICES).fill(image, colors[i]);
+                    }
+                },
+                new Case("DisplayList (float[])")
+                {
+                    @Override
+                    void run(final NImage image)
+                    {
+                        final DisplayList list = new DisplayList();
+                        for (int i = 0; i < polygons; i++)
+                            list.fillPolygon(xs[i], ys[i], VERTICES, FillRule.NON_ZERO, false, colors[i]);
+                        list.render(image);
+                    }
+                } };
+
+        final NImage image = new NImage(SIZE, SIZE);
+        for (final Case c : cases)
+        {
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < runs; r++)
+            {
+                final long t0 = System.nanoTime();
+                c.run(image);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            System.out.println(String.format("%-36s %8.1f ms", c.name, best * 1e-6));
+        }
+    }
+}